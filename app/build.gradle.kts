@@ -35,6 +35,12 @@ java {
 application {
     // Define the main class for the application.
     mainClass = "com.LegMeat.rbo.GUI.App"
+    // SIMD frame distance kernels (see FrameDistance, which falls back to plain loops without the module)
+    applicationDefaultJvmArgs = listOf("--add-modules", "jdk.incubator.vector")
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    options.compilerArgs.addAll(listOf("--add-modules", "jdk.incubator.vector"))
 }
 
 tasks.jar {
@@ -46,4 +52,5 @@ tasks.jar {
 tasks.named<Test>("test") {
     // Use JUnit Platform for unit tests.
     useJUnitPlatform()
+    jvmArgs("--add-modules", "jdk.incubator.vector")
 }
@@ -0,0 +1,189 @@
+package com.LegMeat.rbo.Backend;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * AudioCache remembers the AudioFingerprint read from each video between runs, as FingerprintCache does for
+ * keyframes, so the audio of a video only goes through ffmpeg once. It's a file of its own, since the audio of most
+ * videos is read without their keyframes (see MatchEngine):
+ * <pre>
+ * header:  magic "RBODAC01", entry count (int)
+ * entry:   path (UTF-8, short length prefixed), size (long), last modified (long), duration (double),
+ *          frame count (int, -1 if the video has no audio), then each frame (int)
+ * </pre>
+ * The magic changes whenever AudioFingerprint makes its frames differently, so an outdated cache is ignored.
+ */
+public class AudioCache {
+    private static final byte[] MAGIC = "RBODAC01".getBytes(StandardCharsets.US_ASCII);
+    public static final String CACHE_EXTENSION = ".rbod-audio-cache";
+
+    private final File cacheFile;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Everything remembered about the audio of a single video
+     */
+    public static final class Entry {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final double duration;
+        private final int[] frames; // null if the video has no audio
+
+        public Entry(String path, long size, long lastModified, double duration, int[] frames) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.duration = duration;
+            this.frames = frames;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public double getDuration() {
+            return duration;
+        }
+
+        /**
+         * @return the fingerprint of the video's audio, or null if it has none
+         */
+        public AudioFingerprint getAudioFingerprint() {
+            return frames == null ? null : new AudioFingerprint(frames);
+        }
+
+        /**
+         * Whether the entry still describes the file (i.e. the file hasn't been modified since)
+         */
+        public boolean matches(File file) {
+            return file.length() == size && file.lastModified() == lastModified;
+        }
+    }
+
+    public AudioCache(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * Cache file used for a folder, next to the folder or in the given cache directory (see FingerprintCache)
+     */
+    public static File cacheFileFor(File folder, File cacheDirectory) {
+        return FingerprintCache.fileFor(folder, cacheDirectory, CACHE_EXTENSION);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the remembered entry of a file, or null if it's unknown or has been modified since it was cached
+     */
+    public Entry lookup(File file) {
+        Entry entry = entries.get(file.getAbsolutePath());
+        if (entry != null && entry.matches(file)) {
+            return entry;
+        }
+        return null;
+    }
+
+    public void put(Entry entry) {
+        entries.put(entry.getPath(), entry);
+    }
+
+    /**
+     * Reads the cache file, if there is one. A missing, unreadable or outdated cache simply leaves the cache empty.
+     */
+    public void load() {
+        if (!cacheFile.isFile()) {
+            return;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(cacheFile.toPath()));
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                System.out.println("Audio cache was made differently and will be rebuilt.");
+                return;
+            }
+            int entryCount = buffer.getInt();
+            for (int i = 0; i < entryCount; i++) {
+                put(readEntry(buffer));
+            }
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            // a damaged cache is just thrown away
+            entries.clear();
+            System.out.println("Audio cache could not be read and will be rebuilt.");
+        }
+    }
+
+    /**
+     * Writes the cache file, through a temporary file so a crash never leaves a half-written cache behind
+     */
+    public void save() throws IOException {
+        Path target = cacheFile.toPath();
+        Path temporary = target.resolveSibling(cacheFile.getName() + ".tmp");
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        // videos which have since been deleted are forgotten
+        entries.values().removeIf(entry -> !new File(entry.getPath()).exists());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.write(MAGIC);
+            ArrayList<Entry> toWrite = new ArrayList<>(entries.values());
+            out.writeInt(toWrite.size());
+            for (Entry entry : toWrite) {
+                writeEntry(out, entry);
+            }
+        }
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static Entry readEntry(ByteBuffer buffer) {
+        String path = FingerprintCache.readString(buffer);
+        long size = buffer.getLong();
+        long lastModified = buffer.getLong();
+        double duration = buffer.getDouble();
+        int frameCount = buffer.getInt();
+        // a damaged count mustn't allocate more than the bytes left could hold
+        if (frameCount < -1 || frameCount > buffer.remaining() / Integer.BYTES) {
+            throw new IllegalArgumentException("Invalid audio frame count " + frameCount + ".");
+        }
+        int[] frames = null;
+        if (frameCount >= 0) {
+            frames = new int[frameCount];
+            buffer.asIntBuffer().get(frames);
+            buffer.position(buffer.position() + frameCount * Integer.BYTES);
+        }
+        return new Entry(path, size, lastModified, duration, frames);
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        FingerprintCache.writeString(out, entry.path);
+        out.writeLong(entry.size);
+        out.writeLong(entry.lastModified);
+        out.writeDouble(entry.duration);
+        out.writeInt(entry.frames == null ? -1 : entry.frames.length);
+        if (entry.frames != null) {
+            for (int frame : entry.frames) {
+                out.writeInt(frame);
+            }
+        }
+    }
+}
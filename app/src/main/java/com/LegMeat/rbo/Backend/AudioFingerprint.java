@@ -0,0 +1,194 @@
+package com.LegMeat.rbo.Backend;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * AudioFingerprint is a compact fingerprint of a video's audio track. ffmpeg hands the audio over as low sample rate
+ * mono samples, which are cut into short overlapping frames. Each frame is summed into 33 frequency bands, and turns
+ * into 32 bits: whether the energy difference between each pair of neighbouring bands grew or shrank since the
+ * previous frame. Recordings of the same moment share their audio, so they share long runs of (nearly) equal frames
+ * too, and finding where those runs line up gives the offset between the recordings.
+ *
+ * Reading the audio is far cheaper than decoding keyframes, as no video is decoded at all (see MatchEngine).
+ */
+public class AudioFingerprint {
+    // frames are cached (see AudioCache), so changing how they're made needs a new AudioCache magic
+    public static final int SAMPLE_RATE = 5512;
+    private static final int FRAME_SIZE = 1024; // samples per frame (about 0.19s)
+    private static final int HOP = 256; // samples between the start of two frames (about 46ms)
+    private static final int BANDS = 33;
+    private static final double LOWEST_FREQUENCY = 300;
+    private static final double HIGHEST_FREQUENCY = 2000;
+    private static final double SILENCE = 1e-6; // mean squared amplitude below which a frame counts as silent
+
+    private static final double[] WINDOW = new double[FRAME_SIZE]; // Hann window
+    private static final int[] BAND_EDGES = new int[BANDS + 1]; // first FFT bin of each band (and end of the last)
+
+    static {
+        for (int i = 0; i < FRAME_SIZE; i++) {
+            WINDOW[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / (FRAME_SIZE - 1));
+        }
+        // bands are spaced logarithmically, like hearing
+        for (int band = 0; band <= BANDS; band++) {
+            double frequency = LOWEST_FREQUENCY * Math.pow(HIGHEST_FREQUENCY / LOWEST_FREQUENCY, (double) band / BANDS);
+            BAND_EDGES[band] = (int) Math.round(frequency * FRAME_SIZE / SAMPLE_RATE);
+        }
+    }
+
+    private final int[] frames; // 32 bit fingerprint of each frame, 0 if the frame is silent
+
+    public AudioFingerprint(int[] frames) {
+        this.frames = frames;
+    }
+
+    public int length() {
+        return frames.length;
+    }
+
+    public int getFrame(int index) {
+        return frames[index];
+    }
+
+    /**
+     * Where a frame starts in the audio, in seconds
+     */
+    public static double getTimestamp(int frameIndex) {
+        return (double) frameIndex * HOP / SAMPLE_RATE;
+    }
+
+    /**
+     * Number of frames covering the given number of seconds
+     */
+    public static int framesIn(double seconds) {
+        return (int) Math.ceil(seconds * SAMPLE_RATE / HOP);
+    }
+
+    public double getDuration() {
+        return frames.length == 0 ? 0 : getTimestamp(frames.length - 1) + (double) FRAME_SIZE / SAMPLE_RATE;
+    }
+
+    /**
+     * Number of bits which differ between two runs of frames
+     */
+    public static int bitErrors(AudioFingerprint one, int startOne, AudioFingerprint two, int startTwo, int length) {
+        int errors = 0;
+        for (int i = 0; i < length; i++) {
+            errors += Integer.bitCount(one.frames[startOne + i] ^ two.frames[startTwo + i]);
+        }
+        return errors;
+    }
+
+    /**
+     * Fingerprints audio as it's read, without keeping the samples
+     * @param samples signed 16-bit little-endian mono samples at SAMPLE_RATE
+     */
+    public static AudioFingerprint read(InputStream samples) throws IOException {
+        DataInputStream in = new DataInputStream(samples);
+        double[] window = new double[FRAME_SIZE]; // the latest FRAME_SIZE samples, oldest first
+        double[] real = new double[FRAME_SIZE];
+        double[] imaginary = new double[FRAME_SIZE];
+        double[] energies = new double[BANDS];
+        double[] previousEnergies = new double[BANDS];
+        byte[] hop = new byte[HOP * 2];
+        int[] frames = new int[1024];
+        int frameCount = 0;
+        int filled = 0;
+        while (true) {
+            try {
+                in.readFully(hop);
+            } catch (EOFException e) {
+                // a final partial hop is dropped
+                break;
+            }
+            System.arraycopy(window, HOP, window, 0, FRAME_SIZE - HOP);
+            for (int i = 0; i < HOP; i++) {
+                short sample = (short) ((hop[2 * i] & 0xFF) | (hop[2 * i + 1] << 8));
+                window[FRAME_SIZE - HOP + i] = sample / 32768.0;
+            }
+            filled = Math.min(FRAME_SIZE, filled + HOP);
+            if (filled < FRAME_SIZE) {
+                continue;
+            }
+            double power = 0;
+            for (int i = 0; i < FRAME_SIZE; i++) {
+                power += window[i] * window[i];
+                real[i] = window[i] * WINDOW[i];
+            }
+            Arrays.fill(imaginary, 0);
+            fft(real, imaginary);
+            for (int band = 0; band < BANDS; band++) {
+                double energy = 0;
+                for (int bin = BAND_EDGES[band]; bin < Math.max(BAND_EDGES[band] + 1, BAND_EDGES[band + 1]); bin++) {
+                    energy += real[bin] * real[bin] + imaginary[bin] * imaginary[bin];
+                }
+                energies[band] = energy;
+            }
+            int bits = 0;
+            if (power / FRAME_SIZE >= SILENCE) {
+                for (int band = 0; band < BANDS - 1; band++) {
+                    double difference = (energies[band] - energies[band + 1]) -
+                            (previousEnergies[band] - previousEnergies[band + 1]);
+                    if (difference > 0) {
+                        bits |= 1 << band;
+                    }
+                }
+            }
+            double[] swap = previousEnergies;
+            previousEnergies = energies;
+            energies = swap;
+            if (frameCount == frames.length) {
+                frames = Arrays.copyOf(frames, frames.length * 2);
+            }
+            frames[frameCount++] = bits;
+        }
+        return new AudioFingerprint(Arrays.copyOf(frames, frameCount));
+    }
+
+    /**
+     * In place radix-2 FFT (the length must be a power of 2)
+     */
+    private static void fft(double[] real, double[] imaginary) {
+        int n = real.length;
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                double swap = real[i];
+                real[i] = real[j];
+                real[j] = swap;
+                swap = imaginary[i];
+                imaginary[i] = imaginary[j];
+                imaginary[j] = swap;
+            }
+        }
+        for (int length = 2; length <= n; length <<= 1) {
+            double angle = -2 * Math.PI / length;
+            double stepReal = Math.cos(angle);
+            double stepImaginary = Math.sin(angle);
+            for (int start = 0; start < n; start += length) {
+                double twiddleReal = 1;
+                double twiddleImaginary = 0;
+                for (int k = 0; k < length / 2; k++) {
+                    int even = start + k;
+                    int odd = even + length / 2;
+                    double oddReal = real[odd] * twiddleReal - imaginary[odd] * twiddleImaginary;
+                    double oddImaginary = real[odd] * twiddleImaginary + imaginary[odd] * twiddleReal;
+                    real[odd] = real[even] - oddReal;
+                    imaginary[odd] = imaginary[even] - oddImaginary;
+                    real[even] += oddReal;
+                    imaginary[even] += oddImaginary;
+                    double nextReal = twiddleReal * stepReal - twiddleImaginary * stepImaginary;
+                    twiddleImaginary = twiddleReal * stepImaginary + twiddleImaginary * stepReal;
+                    twiddleReal = nextReal;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.LegMeat.rbo.Backend;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AudioIndex finds overlapping videos by their AudioFingerprints. Every audio frame of every video is indexed by its
+ * 32 bits. The start of a video is looked up frame by frame, and every lead video sharing a frame (or one a single bit
+ * away) votes for the offset at which the two videos would line up. The offsets with the most votes are then
+ * confirmed by comparing the whole overlap bit by bit, which rules out the chance matches a single frame can give.
+ */
+public class AudioIndex {
+    private static final double PROBE_SECONDS = 20; // start of each video looked up in the index
+    private static final double VERIFY_SECONDS = 60; // longest stretch compared bit by bit to confirm an offset
+    private static final double MIN_OVERLAP_SECONDS = 2;
+    private static final double MAX_BIT_ERROR_RATE = 0.35; // unrelated audio differs in about half its bits
+    private static final int MIN_VOTES = 3;
+    private static final int CANDIDATES = 5; // offsets confirmed per video, most votes first
+
+    private final HashMap<Integer, ArrayList<Long>> postings = new HashMap<>(); // frame -> (video << 32 | position)
+    private final ArrayList<Video> videos = new ArrayList<>();
+    private RecordingTimeline timeline = null;
+
+    /**
+     * Only lets videos match videos recorded at around the same time
+     * @param timeline timeline of the indexed videos, or null to match every pair of videos
+     */
+    public void setTimeline(RecordingTimeline timeline) {
+        this.timeline = timeline;
+    }
+
+    /**
+     * Whether a video's audio says enough to find its overlaps: both its start (looked up in the index) and its end
+     * (where a later video would be found) need a few frames which aren't silent. A silent or muted track gives a
+     * fingerprint all the same, but can never match anything.
+     */
+    public static boolean canMatchByAudio(Video video) {
+        AudioFingerprint audio = video.getAudioFingerprint();
+        if (audio == null) {
+            return false;
+        }
+        int probeFrames = Math.min(audio.length(), AudioFingerprint.framesIn(PROBE_SECONDS));
+        return countAudible(audio, 0, probeFrames) >= MIN_VOTES &&
+                countAudible(audio, audio.length() - probeFrames, audio.length()) >= MIN_VOTES;
+    }
+
+    private static int countAudible(AudioFingerprint audio, int start, int end) {
+        int audible = 0;
+        for (int i = start; i < end; i++) {
+            if (audio.getFrame(i) != 0) {
+                audible++;
+            }
+        }
+        return audible;
+    }
+
+    /**
+     * Adds a video's audio to the index. Videos without audio are left out, and never match.
+     */
+    public void insert(Video video) {
+        AudioFingerprint audio = video.getAudioFingerprint();
+        if (audio == null || audio.length() == 0) {
+            return;
+        }
+        long videoIndex = videos.size();
+        videos.add(video);
+        for (int i = 0; i < audio.length(); i++) {
+            // silent frames say nothing about where they are
+            if (audio.getFrame(i) != 0) {
+                postings.computeIfAbsent(audio.getFrame(i), frame -> new ArrayList<>()).add(videoIndex << 32 | i);
+            }
+        }
+    }
+
+    /**
+     * Finds the lead video whose audio continues into the start of the given video
+     * @return the overlap, whose secondary timestamp is 0 (the start of the given video), or null if there's none
+     */
+    public Overlap findLeadOverlap(Video secondary) {
+        AudioFingerprint secondaryAudio = secondary.getAudioFingerprint();
+        if (secondaryAudio == null || secondaryAudio.length() == 0) {
+            return null;
+        }
+        // votes per (lead video, offset of the secondary video's start in the lead video)
+        LinkedHashMap<Long, Integer> votes = new LinkedHashMap<>();
+        int probeFrames = Math.min(secondaryAudio.length(), AudioFingerprint.framesIn(PROBE_SECONDS));
+        for (int i = 0; i < probeFrames; i++) {
+            int frame = secondaryAudio.getFrame(i);
+            if (frame == 0) {
+                continue;
+            }
+            // recordings rarely line up to the sample, so frames one bit away are looked up too
+            for (int flip = -1; flip < 32; flip++) {
+                ArrayList<Long> matches = postings.get(flip < 0 ? frame : frame ^ (1 << flip));
+                if (matches == null) {
+                    continue;
+                }
+                for (long posting : matches) {
+                    Video lead = videos.get((int) (posting >>> 32));
+                    int offset = (int) posting - i;
+                    // a negative offset means the other video starts later, so it's the secondary video instead
+                    if (lead != secondary && offset >= 0 &&
+                            (timeline == null || timeline.couldOverlap(lead, secondary))) {
+                        votes.merge(posting - i, 1, Integer::sum);
+                    }
+                }
+            }
+        }
+        ArrayList<Map.Entry<Long, Integer>> candidates = new ArrayList<>();
+        for (Map.Entry<Long, Integer> vote : votes.entrySet()) {
+            if (vote.getValue() >= MIN_VOTES) {
+                candidates.add(vote);
+            }
+        }
+        candidates.sort((one, two) -> Integer.compare(two.getValue(), one.getValue()));
+        Overlap best = null;
+        double bestErrorRate = MAX_BIT_ERROR_RATE;
+        for (Map.Entry<Long, Integer> candidate : candidates.subList(0, Math.min(CANDIDATES, candidates.size()))) {
+            Video lead = videos.get((int) (candidate.getKey() >>> 32));
+            int offset = (int) (long) candidate.getKey();
+            AudioFingerprint leadAudio = lead.getAudioFingerprint();
+            int overlap = Math.min(secondaryAudio.length(), leadAudio.length() - offset);
+            if (overlap < AudioFingerprint.framesIn(MIN_OVERLAP_SECONDS)) {
+                continue;
+            }
+            int compared = Math.min(overlap, AudioFingerprint.framesIn(VERIFY_SECONDS));
+            double errorRate = AudioFingerprint.bitErrors(leadAudio, offset, secondaryAudio, 0, compared) /
+                    (32.0 * compared);
+            if (errorRate < bestErrorRate) {
+                bestErrorRate = errorRate;
+                best = new Overlap(lead, secondary, AudioFingerprint.getTimestamp(offset), 0);
+            }
+        }
+        if (best != null) {
+            double confirmed = bestErrorRate;
+            Video lead = best.getLeadVideo();
+            Log.verbose(() -> secondary.getFileName() + " continues " + lead.getFileName() +
+                    " (audio bit error rate " + String.format("%.2f", confirmed) + ").");
+        }
+        return best;
+    }
+
+    /**
+     * Finds the overlap each lead video is cut against: of all videos continuing a lead video, the one which starts
+     * earliest in it (like FingerprintIndex.findEarliestOverlap)
+     * @return the overlap of each lead video, in the order of the given videos
+     */
+    public ArrayList<Overlap> findLeadOverlaps(List<Video> secondaries) {
+        LinkedHashMap<Video, Overlap> leadOverlaps = new LinkedHashMap<>();
+        for (Video secondary : secondaries) {
+            Overlap overlap = findLeadOverlap(secondary);
+            if (overlap == null) {
+                continue;
+            }
+            Overlap current = leadOverlaps.get(overlap.getLeadVideo());
+            if (current == null || overlap.getLeadTimestamp() < current.getLeadTimestamp()) {
+                leadOverlaps.put(overlap.getLeadVideo(), overlap);
+            }
+        }
+        return new ArrayList<>(leadOverlaps.values());
+    }
+}
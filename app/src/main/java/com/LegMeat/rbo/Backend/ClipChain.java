@@ -0,0 +1,119 @@
+package com.LegMeat.rbo.Backend;
+
+import com.LegMeat.rbo.Exceptions.ExternalCommandException;
+import com.LegMeat.rbo.Exceptions.InvalidFileException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ClipChain is a run of overlapping recordings: a lead video, its secondary video, that video's secondary video and
+ * so on. Each video after the first starts at its cut point (its in point), so playing the chain through gives one
+ * continuous recording without any repeated footage.
+ *
+ * A chain is merged into a single file by ffmpeg's concat demuxer in one stream copy, without writing a trimmed
+ * copy of each video first.
+ */
+public class ClipChain {
+    private final ArrayList<Video> videos = new ArrayList<>();
+    private final ArrayList<Double> inpoints = new ArrayList<>();
+
+    /**
+     * Adds a video to the end of the chain
+     * @param inpoint where the video starts playing from (its cut point, or 0 for the first video)
+     */
+    public void add(Video video, double inpoint) {
+        videos.add(video);
+        inpoints.add(inpoint);
+    }
+
+    public List<Video> getVideos() {
+        return videos;
+    }
+
+    public Video getFirstVideo() {
+        return videos.get(0);
+    }
+
+    public double getInpoint(int index) {
+        return inpoints.get(index);
+    }
+
+    public int size() {
+        return videos.size();
+    }
+
+    /**
+     * The chain as an ffconcat script for ffmpeg's concat demuxer
+     */
+    public String toConcatList() {
+        StringBuilder list = new StringBuilder("ffconcat version 1.0\n");
+        for (int i = 0; i < videos.size(); i++) {
+            // single quotes can't be escaped inside a quoted string, so they're closed, escaped and reopened
+            list.append("file '").append(videos.get(i).getAbsolutePath().replace("'", "'\\''")).append("'\n");
+            if (inpoints.get(i) > 0) {
+                list.append("inpoint ").append(inpoints.get(i)).append('\n');
+            }
+        }
+        return list.toString();
+    }
+
+    /**
+     * Stream copies the whole chain into a single file. Like a cut, ffmpeg writes to a partial file which is only
+     * moved into place once it's complete.
+     */
+    public void merge(Path outputPath) throws IOException {
+        Path listPath = outputPath.resolveSibling(outputPath.getFileName() + ".ffconcat");
+        Path partialPath = outputPath.resolveSibling(outputPath.getFileName() + Video.PARTIAL_EXTENSION);
+        Files.writeString(listPath, toConcatList(), StandardCharsets.UTF_8);
+        // -safe 0 allows absolute paths in the list
+        ProcessBuilder pbMpeg = new ProcessBuilder("ffmpeg", "-y", "-f", "concat", "-safe", "0", "-i",
+                listPath.toString(), "-map", "0", "-c", "copy", "-f", "matroska", partialPath.toString());
+        pbMpeg.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        pbMpeg.redirectError(ProcessBuilder.Redirect.DISCARD);
+        long timeout = 0;
+        for (Video video : videos) {
+            timeout += ProcessSupervisor.scaledTimeout(video, 30, 60);
+        }
+        try (ProcessSupervisor.SupervisedProcess process = ProcessSupervisor.global().start(pbMpeg)) {
+            if (!process.waitFor(timeout)) {
+                throw new InvalidFileException("Videos are either too large or corrupt and timed out.");
+            } else if (process.exitValue() != 0) {
+                throw new ExternalCommandException("Unable to merge videos. Ensure ffmpeg is installed to system " +
+                        "path and has write permissions.");
+            }
+            // the merged video ends when the last recording did (see RecordingTimeline)
+            Files.setLastModifiedTime(partialPath, Files.getLastModifiedTime(videos.get(videos.size() - 1).toPath()));
+            try {
+                Files.move(partialPath, outputPath, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(partialPath, outputPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Process cancelled by user.");
+        } finally {
+            Files.deleteIfExists(partialPath);
+            Files.deleteIfExists(listPath);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < videos.size(); i++) {
+            description.append(i == 0 ? "" : " -> ").append(videos.get(i).getFileName());
+            if (inpoints.get(i) > 0) {
+                description.append(" (from ").append(inpoints.get(i)).append("s)");
+            }
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,200 @@
+package com.LegMeat.rbo.Backend;
+
+import com.LegMeat.rbo.Exceptions.ExternalCommandException;
+import com.LegMeat.rbo.Exceptions.InvalidFileException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * CutExecutor cuts many videos at once. Cuts are stream copies, so are mostly waiting on the disk and run well in
+ * parallel, but only up to a limited number at a time.
+ */
+public class CutExecutor {
+    private final int threads;
+    private final OutputStrategy uncutStrategy; // how videos with no cut point are copied over
+
+    /**
+     * @param threads maximum number of videos cut at once
+     */
+    public CutExecutor(int threads) {
+        this(threads, OutputStrategy.HARD_LINK);
+    }
+
+    /**
+     * @param threads maximum number of videos cut at once
+     * @param uncutStrategy how videos with no cut point are placed in the new directory when not overwriting
+     */
+    public CutExecutor(int threads, OutputStrategy uncutStrategy) {
+        this.threads = Math.max(1, threads);
+        this.uncutStrategy = uncutStrategy;
+    }
+
+    /**
+     * Cuts every video, reporting what happened to each
+     * @param newDirectory where cut videos are written to (the videos' own directory when overwriting)
+     * @return one report per video, in the same order as the videos
+     */
+    public ArrayList<CutReport> execute(List<Video> videos, String newDirectory, boolean overwrite) {
+        return execute(videos, null, newDirectory, overwrite);
+    }
+
+    /**
+     * Cuts every video, reporting what happened to each. When copying, videos from folders beneath the source root
+     * are written to the same folders beneath the new directory.
+     * @param sourceRoot folder the videos were found in (or beneath), or null to write every video straight into the
+     *                   new directory
+     * @param newDirectory where cut videos are written to (the videos' own directory when overwriting)
+     * @return one report per video, in the same order as the videos
+     */
+    public ArrayList<CutReport> execute(List<Video> videos, File sourceRoot, String newDirectory, boolean overwrite) {
+        return execute(videos, sourceRoot, newDirectory, overwrite, report -> { });
+    }
+
+    /**
+     * Cuts every video, reporting what happened to each
+     * @param onCut told about each video as soon as it's been cut, on the thread which cut it (e.g. to journal it)
+     * @return one report per video, in the same order as the videos
+     */
+    public ArrayList<CutReport> execute(List<Video> videos, File sourceRoot, String newDirectory, boolean overwrite,
+                                        Consumer<CutReport> onCut) {
+        ArrayList<Callable<CutReport>> cuts = new ArrayList<>();
+        for (Video video : videos) {
+            String videoDirectory = overwrite ? newDirectory : mirroredDirectory(video, sourceRoot, newDirectory);
+            cuts.add(() -> {
+                CutReport report = cut(video, videoDirectory, overwrite);
+                onCut.accept(report);
+                return report;
+            });
+        }
+        return run(cuts, videos, "Video");
+    }
+
+    /**
+     * Merges every chain of overlapping videos into a single video each (see ClipChain), reporting what happened to
+     * the first video of each chain. Merged videos are written to the folder of their first video, mirrored beneath
+     * the new directory.
+     * @return one report per chain, in the same order as the chains
+     */
+    public ArrayList<CutReport> merge(List<ClipChain> chains, File sourceRoot, String newDirectory) {
+        ArrayList<Callable<CutReport>> merges = new ArrayList<>();
+        ArrayList<Video> firstVideos = new ArrayList<>();
+        for (ClipChain chain : chains) {
+            String chainDirectory = mirroredDirectory(chain.getFirstVideo(), sourceRoot, newDirectory);
+            merges.add(() -> merge(chain, chainDirectory));
+            firstVideos.add(chain.getFirstVideo());
+        }
+        return run(merges, firstVideos, "Chain");
+    }
+
+    /**
+     * Runs the jobs on the worker threads, collecting their reports in order
+     * @param videos the video each job reports on (used if the job fails unexpectedly)
+     */
+    private ArrayList<CutReport> run(List<Callable<CutReport>> jobs, List<Video> videos, String jobName) {
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<CutReport>> pending = new ArrayList<>();
+        ArrayList<CutReport> reports = new ArrayList<>();
+        try {
+            for (Callable<CutReport> job : jobs) {
+                pending.add(workers.submit(job));
+            }
+            for (int i = 0; i < pending.size(); i++) {
+                CutReport report;
+                try {
+                    report = pending.get(i).get();
+                } catch (ExecutionException e) {
+                    report = new CutReport(videos.get(i), CutResult.IO_FAILURE, e.getCause().getMessage());
+                }
+                reports.add(report);
+                System.out.println(jobName + " " + (i + 1) + " out of " + jobs.size() + ": " + report);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Process cancelled by user.");
+        } finally {
+            workers.shutdownNow();
+        }
+        return reports;
+    }
+
+    /**
+     * Folder beneath the new directory matching the folder the video is in beneath the source root
+     */
+    private static String mirroredDirectory(Video video, File sourceRoot, String newDirectory) {
+        if (sourceRoot == null) {
+            return newDirectory;
+        }
+        Path relative = sourceRoot.getAbsoluteFile().toPath().relativize(video.getAbsoluteFile().getParentFile()
+                .toPath());
+        return Paths.get(newDirectory).resolve(relative).toString();
+    }
+
+    /**
+     * Merges a single chain, turning whatever happens into a report on its first video
+     */
+    private CutReport merge(ClipChain chain, String directory) {
+        for (Video video : chain.getVideos()) {
+            if (video.isCorrupted()) {
+                return new CutReport(chain.getFirstVideo(), CutResult.CORRUPTED, video.getFileName());
+            }
+        }
+        Video firstVideo = chain.getFirstVideo();
+        String firstName = firstVideo.getFileName();
+        Path outputPath = Paths.get(directory, firstName.substring(0, firstName.length() - 3) + "_merged.mkv");
+        try (Metrics.Timer timer = Metrics.global().time(Metrics.Stage.CUT, firstVideo.getAbsolutePath())) {
+            Files.createDirectories(outputPath.getParent());
+            if (chain.size() == 1) {
+                // a video overlapping nothing is placed like any uncut video, rather than remuxed through ffmpeg
+                OutputStrategy used = firstVideo.copyUncut(directory, uncutStrategy);
+                return new CutReport(firstVideo, CutResult.NO_CUT_POINT, used == OutputStrategy.HARD_LINK ?
+                        "linked over uncut" : "copied over uncut");
+            }
+            chain.merge(outputPath);
+            return new CutReport(firstVideo, CutResult.SUCCESS, chain.toString());
+        } catch (InvalidFileException e) {
+            return new CutReport(firstVideo, CutResult.CORRUPTED, e.getMessage());
+        } catch (IOException | ExternalCommandException e) {
+            return new CutReport(firstVideo, CutResult.IO_FAILURE, e.getMessage());
+        }
+    }
+
+    /**
+     * Cuts a single video, turning whatever happens into a report
+     */
+    private CutReport cut(Video video, String newDirectory, boolean overwrite) {
+        if (video.isCorrupted()) {
+            return new CutReport(video, CutResult.CORRUPTED, null);
+        }
+        if (video.getCutPoint() == -1.0 && overwrite) {
+            // an uncut video is left exactly as it is
+            return new CutReport(video, CutResult.NO_CUT_POINT, null);
+        }
+        try (Metrics.Timer timer = Metrics.global().time(Metrics.Stage.CUT, video.getAbsolutePath())) {
+            Files.createDirectories(Paths.get(newDirectory));
+            if (video.getCutPoint() == -1.0) {
+                // nothing to trim, so the video is placed as it is, without ffmpeg unless remuxing
+                OutputStrategy used = video.copyUncut(newDirectory, uncutStrategy);
+                return new CutReport(video, CutResult.NO_CUT_POINT, used == OutputStrategy.HARD_LINK ?
+                        "linked over uncut" : "copied over uncut");
+            }
+            video.cut(newDirectory, overwrite);
+            return new CutReport(video, CutResult.SUCCESS, null);
+        } catch (InvalidFileException e) {
+            return new CutReport(video, CutResult.CORRUPTED, e.getMessage());
+        } catch (IOException | ExternalCommandException e) {
+            return new CutReport(video, CutResult.IO_FAILURE, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.LegMeat.rbo.Backend;
+
+/**
+ * CutReport represents the outcome of cutting a single video
+ */
+public class CutReport {
+    private final Video video;
+    private final CutResult result;
+    private final String message;
+
+    public CutReport(Video video, CutResult result, String message) {
+        this.video = video;
+        this.result = result;
+        this.message = message;
+    }
+
+    public Video getVideo() {
+        return video;
+    }
+
+    public CutResult getResult() {
+        return result;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return video.getFileName() + ": " + result + (message == null ? "" : " (" + message + ")");
+    }
+}
@@ -0,0 +1,11 @@
+package com.LegMeat.rbo.Backend;
+
+/**
+ * CutResult represents what happened to a single video when the cuts were executed
+ */
+public enum CutResult {
+    SUCCESS, // video was cut (or copied over when not overwriting)
+    CORRUPTED, // video is corrupt, or ffmpeg timed out on it
+    NO_CUT_POINT, // video doesn't overlap a lead video, so wasn't cut
+    IO_FAILURE; // ffmpeg or the file system failed to write the video
+}
@@ -6,6 +6,9 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.io.File;
 
 /**
@@ -15,45 +18,329 @@ import java.io.File;
 public class Directory {
     private ArrayList<Video> videoList = new ArrayList<>();
     private File directoryFolder;
+    private FingerprintIndex fingerprintIndex;
+    private ScanOptions options;
+    private FingerprintCache cache = null;
+    private AudioCache audioCache = null; // only used when matching audio (see MatchEngine)
+    private JobJournal journal = null; // null if the job isn't journaled
+    private HashMap<Video, Overlap> leadOverlaps = new HashMap<>(); // current overlap of each lead video
+
+    public ArrayList<Video> getVideoList() {
+        return videoList;
+    }
+
+    public File getDirectoryFolder() {
+        return directoryFolder;
+    }
+
+    public ScanOptions getOptions() {
+        return options;
+    }
+
+    public FingerprintIndex getFingerprintIndex() {
+        return fingerprintIndex;
+    }
+
+    /**
+     * Every pair of overlapping videos which will be cut, in the order of their lead videos
+     */
+    public ArrayList<Overlap> getLeadOverlaps() {
+        ArrayList<Overlap> overlaps = new ArrayList<>();
+        for (Video video : videoList) {
+            Overlap overlap = leadOverlaps.get(video);
+            // a secondary video claimed by a later lead video is cut against that one instead
+            if (overlap != null && video.getSecondaryVideo() == overlap.getSecondaryVideo() &&
+                    overlap.getSecondaryVideo().getCutPoint() == overlap.getCutPoint()) {
+                overlaps.add(overlap);
+            }
+        }
+        return overlaps;
+    }
+
+    /**
+     * Drops a pair of videos found to overlap (e.g. rejected on review), so its secondary video is left uncut. The
+     * journaled plan is updated to match.
+     */
+    public void rejectOverlap(Overlap overlap) {
+        Video leadVideo = overlap.getLeadVideo();
+        if (leadOverlaps.get(leadVideo) != overlap) {
+            return;
+        }
+        leadOverlaps.remove(leadVideo);
+        Video secondaryVideo = overlap.getSecondaryVideo();
+        if (leadVideo.getSecondaryVideo() == secondaryVideo) {
+            // unless a later lead video claimed it, the secondary video's cut point is this pair's
+            if (secondaryVideo.getCutPoint() == overlap.getCutPoint()) {
+                secondaryVideo.setCutPoint(-1.0);
+            }
+            leadVideo.setSecondaryVideo(null);
+        }
+        if (journal != null) {
+            journal.recordPlan(videoList, leadOverlaps);
+        }
+        Log.verbose(() -> "Overlap rejected: " + secondaryVideo.getFileName() + " is left uncut.");
+    }
 
     /**
      * When the application is ready, this method will execute all the video cuts, according to each individul videos
-     * cut points.
+     * cut points. Several videos are cut at once (see ScanOptions.setCutThreads).
+     * @return what happened to each video, in the same order as the video list
      */
-    public void executeCuts(boolean overwrite) {
-        // if we're not overwriting, create a new directory to copy over to
-        String newDirectory;
-        if (!overwrite) {
-            newDirectory = directoryFolder + " - Overlap Removed";
-        } else {
-            newDirectory = directoryFolder.toString();
+    public ArrayList<CutReport> executeCuts(boolean overwrite) {
+        if (options.isPlanOnly()) {
+            int planned = 0;
+            for (Video video : videoList) {
+                if (video.getCutPoint() != -1.0) {
+                    planned++;
+                }
+            }
+            // a directory made from an existing video list has no journal to record the plan in
+            String recorded = journal == null ? ", not recorded (no journal)" : ", recorded in " +
+                    journal.getJournalFile();
+            System.out.println("Planned " + planned + " cuts out of " + videoList.size() + " videos" + recorded +
+                    ". Nothing was cut.");
+            return new ArrayList<>();
         }
+        // a resumed job carries on writing into the directory it started
+        boolean resuming = journal != null && journal.hasCuts();
+        // if we're not overwriting, create a new directory to copy over to
+        String newDirectory = getOutputDirectory(overwrite);
         try {
-            if (!overwrite) {
+            if (!overwrite && resuming) {
+                Files.createDirectories(Paths.get(newDirectory));
+            } else if (!overwrite) {
                 // Create a new directory for cut videos if we're not overwriting
                 Files.createDirectory(Paths.get(newDirectory));
             }
-            int videoNum = 1;
-            for (Video video : this.videoList) {
-                System.out.println("Attempting to cut video " + videoNum + " out of " + videoList.size() + " .");
-                if (video.isCorrupted()) {
-                    System.out.println("Video " + videoNum + " is corrupted.");
-                } else {
-                    try {
-                        video.cut(newDirectory, overwrite);
-                        System.out.println("Successfully cut video " + videoNum + "!");
-                    } catch (InvalidFileException e) {
-                        System.out.println("Video has no cutpoint yet.");
-                    } catch (IOException e) {
-                        System.out.println("IO Error cutting or overwriting video " + videoNum + "! Ensure ffmpeg is" +
-                                "installed to system path and has write permissions. Ensure File.nio.file.Files has " +
-                                "overwrite permissions. Origianl message: " + e.getMessage());
-                    }
+        } catch (IOException e) {
+            System.out.println("Could not create new file directory. 'Cut' directory already exists!");
+            return new ArrayList<>();
+        }
+        ArrayList<Video> toCut = new ArrayList<>();
+        HashSet<Video> alreadyCut = new HashSet<>();
+        for (Video video : videoList) {
+            if (journal != null && journal.isCut(video)) {
+                alreadyCut.add(video);
+            } else {
+                toCut.add(video);
+            }
+        }
+        if (!alreadyCut.isEmpty()) {
+            System.out.println("Resuming job: " + alreadyCut.size() + " videos were already cut.");
+        }
+        if (journal != null && overwrite) {
+            // written before any video is replaced, so a video replaced just before a crash is known to be cut
+            for (Video video : toCut) {
+                if (video.getCutPoint() != -1.0) {
+                    journal.recordCutIntent(video);
                 }
-                videoNum++;
             }
+        }
+        System.out.println("Attempting to cut " + toCut.size() + " videos...");
+        CutExecutor cutExecutor = new CutExecutor(options.getCutThreads(), options.getUncutStrategy());
+        ArrayList<CutReport> cutReports = cutExecutor.execute(toCut, directoryFolder, newDirectory, overwrite,
+                report -> {
+                    // corrupt videos aren't recorded as cut, so a resumed job reports them again
+                    if (journal != null && isFinished(report) && report.getResult() != CutResult.CORRUPTED) {
+                        journal.recordCut(report);
+                    }
+                });
+        // reports in the same order as the video list, videos cut by an earlier run included
+        ArrayList<CutReport> reports = new ArrayList<>();
+        int next = 0;
+        for (Video video : videoList) {
+            if (alreadyCut.contains(video)) {
+                reports.add(new CutReport(video, CutResult.SUCCESS, "already cut"));
+            } else if (next < cutReports.size()) {
+                reports.add(cutReports.get(next++));
+            }
+        }
+        int successes = 0;
+        boolean finished = reports.size() == videoList.size();
+        for (CutReport report : reports) {
+            if (report.getResult() == CutResult.SUCCESS) {
+                successes++;
+            }
+            finished &= isFinished(report);
+        }
+        System.out.println("Successfully cut " + successes + " out of " + videoList.size() + " videos.");
+        if (journal != null && finished) {
+            // the job is done, so the next run starts afresh
+            journal.delete();
+        }
+        System.out.println(Metrics.global().summary());
+        return reports;
+    }
+
+    /**
+     * Whether nothing's left to do for a video. A corrupt video stays corrupt, so it's finished too, otherwise the
+     * journal (and its plan) would outlive the job. Failed writes are tried again when the job is resumed.
+     */
+    private static boolean isFinished(CutReport report) {
+        return report.getResult() != CutResult.IO_FAILURE;
+    }
+
+    /**
+     * Instead of cutting each video, merges each chain of overlapping videos (see findChains) into a single
+     * continuous video, written to a new directory next to this one. Each chain is a single stream copy, so no
+     * trimmed copies are written along the way.
+     * @return what happened to each chain, reported on its first video
+     */
+    public ArrayList<CutReport> executeMerges() {
+        String newDirectory = getOutputDirectory(false);
+        try {
+            Files.createDirectory(Paths.get(newDirectory));
         } catch (IOException e) {
             System.out.println("Could not create new file directory. 'Cut' directory already exists!");
+            return new ArrayList<>();
+        }
+        ArrayList<ClipChain> chains = findChains();
+        System.out.println("Attempting to merge " + videoList.size() + " videos into " + chains.size() + " videos...");
+        CutExecutor cutExecutor = new CutExecutor(options.getCutThreads(), options.getUncutStrategy());
+        ArrayList<CutReport> reports = cutExecutor.merge(chains, directoryFolder, newDirectory);
+        int successes = 0;
+        for (CutReport report : reports) {
+            // a chain of a single video is placed uncut
+            if (report.getResult() == CutResult.SUCCESS || report.getResult() == CutResult.NO_CUT_POINT) {
+                successes++;
+            }
+        }
+        System.out.println("Successfully merged " + successes + " out of " + chains.size() + " videos.");
+        System.out.println(Metrics.global().summary());
+        return reports;
+    }
+
+    /**
+     * Follows each lead video to its secondary video, and so on, giving the chains of overlapping videos. Every
+     * (non-corrupt) video is in exactly one chain, videos which don't overlap any other being chains of their own.
+     * @return the chains, in the order of their first videos in the video list
+     */
+    public ArrayList<ClipChain> findChains() {
+        // the lead video each secondary video is currently cut against
+        HashMap<Video, Video> leadOf = new HashMap<>();
+        for (Video video : videoList) {
+            Overlap overlap = leadOverlaps.get(video);
+            if (overlap == null || video.isCorrupted()) {
+                continue;
+            }
+            Video secondary = overlap.getSecondaryVideo();
+            // a video can be claimed by several leads, but is only cut against the last one to update it
+            if (video.getSecondaryVideo() == secondary && !secondary.isCorrupted() &&
+                    secondary.getCutPoint() == overlap.getCutPoint() && !leadOf.containsKey(secondary)) {
+                leadOf.put(secondary, video);
+            }
+        }
+        ArrayList<ClipChain> chains = new ArrayList<>();
+        HashSet<Video> chained = new HashSet<>();
+        for (boolean breakCycles : new boolean[] {false, true}) {
+            for (Video video : videoList) {
+                // chains start at videos which aren't cut against a lead (unless the leads go round in a circle)
+                if (video.isCorrupted() || chained.contains(video) || (!breakCycles && leadOf.containsKey(video))) {
+                    continue;
+                }
+                ClipChain chain = new ClipChain();
+                Video current = video;
+                double inpoint = 0;
+                while (current != null && chained.add(current)) {
+                    chain.add(current, inpoint);
+                    Video next = current.getSecondaryVideo();
+                    if (next == null || leadOf.get(next) != current) {
+                        break;
+                    }
+                    inpoint = next.getCutPoint();
+                    current = next;
+                }
+                chains.add(chain);
+            }
+        }
+        return chains;
+    }
+
+    /**
+     * Where cut videos are written to: the directory itself when overwriting, otherwise a new directory next to it
+     */
+    public String getOutputDirectory(boolean overwrite) {
+        if (!overwrite) {
+            return directoryFolder + " - Overlap Removed";
+        } else {
+            return directoryFolder.toString();
+        }
+    }
+
+    /**
+     * Reads a single new video (e.g. one which has just finished recording) and matches it against the videos
+     * already in the directory. Only the new video is read and matched, so this takes the same time no matter how
+     * many videos the directory already has.
+     * @return the videos whose cut point changed (the new video, and/or an existing video it now leads)
+     */
+    public ArrayList<Video> addVideo(File file) {
+        ArrayList<Video> changed = new ArrayList<>();
+        ArrayList<Video> read = new IngestionPipeline(options, cache).run(List.of(file), fingerprintIndex);
+        if (read.isEmpty()) {
+            return changed;
+        }
+        Video video = read.get(0);
+        videoList.add(video);
+        if (fingerprintIndex.getTimeline() != null) {
+            fingerprintIndex.getTimeline().add(video);
+        }
+        try (Metrics.Timer timer = Metrics.global().time(Metrics.Stage.MATCH, video.getAbsolutePath())) {
+            matchNewVideo(video, changed);
+        }
+        return changed;
+    }
+
+    /**
+     * Matches a video just added to the index both ways, adding the videos whose cut point changed
+     */
+    private void matchNewVideo(Video video, ArrayList<Video> changed) {
+        // the new video as a lead video
+        Overlap earliestOverlap = fingerprintIndex.findEarliestOverlap(video);
+        if (earliestOverlap != null) {
+            updateLeadOverlap(earliestOverlap);
+            changed.add(earliestOverlap.getSecondaryVideo());
+        }
+        // the new video as the secondary video of a video already in the directory, if it overlaps that video
+        // earlier than its current secondary video does
+        for (Overlap overlap : fingerprintIndex.findOverlapsAsSecondary(video)) {
+            Overlap current = leadOverlaps.get(overlap.getLeadVideo());
+            if (overlap.isLeadOverlap() && (current == null ||
+                    overlap.getLeadTimestamp() < current.getLeadTimestamp())) {
+                updateLeadOverlap(overlap);
+                if (!changed.contains(video)) {
+                    changed.add(video);
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes the overlap the current overlap of its lead video, updating the cut point of its secondary video
+     */
+    private void updateLeadOverlap(Overlap overlap) {
+        Video leadVideo = overlap.getLeadVideo();
+        leadVideo.updateSecondaryVideo(overlap.getSecondaryVideo(), overlap.getCutPoint());
+        leadOverlaps.put(leadVideo, overlap);
+        Log.verbose(() -> "Cut point updated: " + overlap.getSecondaryVideo().getCutPoint());
+    }
+
+    /**
+     * Writes the fingerprint (and audio) cache, so the videos read so far aren't read again next time
+     */
+    public void saveCache() {
+        if (cache != null && options.isCacheEnabled()) {
+            try {
+                cache.save();
+            } catch (IOException e) {
+                System.out.println("Could not save fingerprint cache: " + e.getMessage());
+            }
+        }
+        if (audioCache != null) {
+            try {
+                audioCache.save();
+            } catch (IOException e) {
+                System.out.println("Could not save audio cache: " + e.getMessage());
+            }
         }
     }
 
@@ -61,53 +348,274 @@ public class Directory {
      * Adds all applicable videos to list and calculates cut points of each video
      */
     public Directory(String directoryPath) {
-        this.directoryFolder = new File(directoryPath);
-        String[] fileList = directoryFolder.list();
-        int videoNumber = 0;
-        if (fileList != null) {
-            System.out.println("Directory contains " + fileList.length + " files. Beginning read...");
-            for (String filename : fileList) {
-                videoNumber += 1;
-                System.out.println("Attempting to add video: " + videoNumber);
-                try {
-                    videoList.add(new Video(filename, directoryPath + "\\" + filename));
-                } catch (InvalidFileException e) {
-                    System.out.println("File not added (non-video, unsupported format or corrupt video): " +
-                            e.getMessage());
+        this(directoryPath, new ScanOptions());
+    }
+
+    /**
+     * Adds all applicable videos to list and calculates cut points of each video
+     * @param options how the videos are read (e.g. how many are read at once)
+     */
+    public Directory(String directoryPath, ScanOptions options) {
+        setUp(directoryPath, options);
+        if (directoryFolder.isDirectory()) {
+            LibraryScanner scanner = new LibraryScanner(options.getScanThreads());
+            ArrayList<File> files = scanner.scan(directoryFolder, options.isRecursive());
+            System.out.println("Directory contains " + files.size() + " videos (" + scanner.getSkippedFiles() +
+                    " other files skipped). Beginning read...");
+            if (options.isCacheEnabled()) {
+                cache = new FingerprintCache(FingerprintCache.cacheFileFor(directoryFolder,
+                        options.getCacheDirectory()), options.getFingerprintSettings());
+                cache.load();
+                if (options.getMatchEngine() != MatchEngine.KEYFRAMES) {
+                    audioCache = new AudioCache(AudioCache.cacheFileFor(directoryFolder,
+                            options.getCacheDirectory()));
+                    audioCache.load();
                 }
             }
-            System.out.println("Directory contains " + videoList.size() + " files. Ending read...");
-            if (videoList.size() > 1) {
-                int videoNum = 1;
-                System.out.println("Finding cut points...");
-                for (Video video : videoList) {
-                    System.out.println("Video " + videoNum + " out of " + videoList.size() + ".");
-                    videoNum++;
-                    // sentinel used for finding earliest overlapping video
-                    double earliestOverlap = 9999999999.0;
-                    Video secondaryVideo = null;
-                    for (Video video2 : videoList) {
-                        if (video != video2) {
-                            Double overlap = video.findOverlap(video2);
-                            if (overlap != -1.0 && overlap < earliestOverlap ) {
-                                earliestOverlap = overlap;
-                                secondaryVideo = video2;
-                            }
-                        }
-                    }
-                    if (earliestOverlap != 9999999999.0) {
-                        video.updateSecondaryVideo(secondaryVideo);
-                        System.out.println("Cut point updated: " + secondaryVideo.getCutPoint());
-                    } else {
-                        System.out.println("No cut point found!");
-                    }
+            if (options.isJournalEnabled() || options.isPlanOnly()) {
+                journal = new JobJournal(JobJournal.journalFileFor(directoryFolder, options.getCacheDirectory()),
+                        options.getFingerprintSettings() + " " + options.getMatchSettings());
+                journal.load();
+                if (journal.getAnalysisCount() > 0) {
+                    System.out.println("Resuming job: " + journal.getAnalysisCount() + " videos were already read.");
                 }
+            }
+            if (options.getMatchEngine() == MatchEngine.AUDIO) {
+                IngestionPipeline audioPipeline = new IngestionPipeline(options);
+                audioPipeline.setAudioOnly(true);
+                audioPipeline.setAudioCache(audioCache);
+                videoList = audioPipeline.run(files, fingerprintIndex);
+            } else if (options.getMatchEngine() == MatchEngine.AUDIO_PREFILTER) {
+                videoList = readWithAudioPrefilter(files);
             } else {
-                System.out.println("No cut points found.");
+                videoList = readKeyFrames(files);
             }
-
+            saveCache();
+            System.out.println("Directory contains " + videoList.size() + " files. Ending read...");
+            if (journal != null && journal.hasPlanFor(videoList)) {
+                System.out.println("Resuming job: using the cut plan in " + journal.getJournalFile() + ".");
+                restorePlan();
+            } else {
+                if (options.getMatchEngine() == MatchEngine.AUDIO) {
+                    findAudioCutPoints();
+                } else {
+                    findCutPoints();
+                }
+                if (journal != null) {
+                    journal.recordPlan(videoList, leadOverlaps);
+                }
+            }
+            System.out.println(Metrics.global().summary());
         } else {
             throw new InvalidFileException("Directory empty.");
         }
     }
+
+    /**
+     * Creates a directory of videos which have already been read (e.g. synthetic videos, or videos read elsewhere),
+     * and calculates cut points of each video
+     * @param directoryPath folder the videos belong to (cut videos are written next to it)
+     */
+    public Directory(String directoryPath, List<Video> videos, ScanOptions options) {
+        setUp(directoryPath, options);
+        for (Video video : videos) {
+            videoList.add(video);
+            fingerprintIndex.insert(video);
+        }
+        findCutPoints();
+    }
+
+    /**
+     * Set up shared by every way of making a directory: the index, and the settings the options apply process wide
+     * (logging, the low-information threshold and the ffmpeg process limits). The timeline is set up by
+     * findCutPoints.
+     */
+    private void setUp(String directoryPath, ScanOptions options) {
+        this.directoryFolder = new File(directoryPath);
+        this.options = options;
+        this.fingerprintIndex = new FingerprintIndex(options.getMatchDistance());
+        fingerprintIndex.setStopList(options.getStopListShare(), options.getStopListPerVideo());
+        Log.setVerbose(options.isVerbose());
+        Fingerprint.setLowInformationThreshold(options.getLowInformationThreshold());
+        ProcessSupervisor.global().setLimits(options.getMaxProcesses(), options.getProcessThreads());
+    }
+
+    /**
+     * Reads (and indexes) the keyframes of many videos at once
+     */
+    private ArrayList<Video> readKeyFrames(List<File> files) {
+        if (options.getShardWorkers() > 1) {
+            readInShards(files);
+        }
+        return new IngestionPipeline(options, cache, journal).run(files, fingerprintIndex);
+    }
+
+    /**
+     * Reads the audio of every video, and then only reads the keyframes of the videos whose audio overlaps another
+     * video's (or which have no audio to tell by, see AudioIndex.canMatchByAudio). The other videos don't overlap anything, so are only probed.
+     * @return the videos, in the same order as the files
+     */
+    private ArrayList<Video> readWithAudioPrefilter(List<File> files) {
+        IngestionPipeline audioPipeline = new IngestionPipeline(options);
+        audioPipeline.setAudioOnly(true);
+        audioPipeline.setAudioCache(audioCache);
+        ArrayList<Video> audioVideos = audioPipeline.run(files, new FingerprintIndex());
+        AudioIndex audioIndex = new AudioIndex();
+        if (options.isTimelinePruning()) {
+            audioIndex.setTimeline(new RecordingTimeline(audioVideos, options.getTimelineSlack()));
+        }
+        for (Video video : audioVideos) {
+            audioIndex.insert(video);
+        }
+        HashSet<Video> candidates = new HashSet<>();
+        for (Video video : audioVideos) {
+            Overlap overlap = audioIndex.findLeadOverlap(video);
+            if (overlap != null) {
+                candidates.add(overlap.getLeadVideo());
+                candidates.add(video);
+            } else if (!AudioIndex.canMatchByAudio(video)) {
+                // no audio, or silent audio, can't rule an overlap out
+                candidates.add(video);
+            }
+        }
+        ArrayList<File> toDecode = new ArrayList<>();
+        for (Video video : audioVideos) {
+            if (candidates.contains(video)) {
+                toDecode.add(video);
+            }
+        }
+        System.out.println("Audio overlaps found: reading the keyframes of " + toDecode.size() + " out of " +
+                audioVideos.size() + " videos.");
+        HashMap<String, Video> decoded = new HashMap<>();
+        for (Video video : readKeyFrames(toDecode)) {
+            decoded.put(video.getAbsolutePath(), video);
+        }
+        ArrayList<Video> videos = new ArrayList<>();
+        for (Video video : audioVideos) {
+            if (!candidates.contains(video)) {
+                videos.add(video);
+            } else if (decoded.containsKey(video.getAbsolutePath())) {
+                videos.add(decoded.get(video.getAbsolutePath()));
+            }
+        }
+        return videos;
+    }
+
+    /**
+     * Reads the videos which aren't cached (or journaled) yet in worker processes (see ShardedIngestion), adding what
+     * they read to the cache, so the pipeline only has to load and index them
+     */
+    private void readInShards(List<File> files) {
+        ArrayList<File> unread = new ArrayList<>();
+        for (File file : files) {
+            if ((cache == null || cache.lookup(file) == null) && (journal == null || journal.lookup(file) == null)) {
+                unread.add(file);
+            }
+        }
+        if (unread.isEmpty()) {
+            return;
+        }
+        if (cache == null) {
+            // only holds the segments for the pipeline, and is never saved (see saveCache)
+            cache = new FingerprintCache(FingerprintCache.cacheFileFor(directoryFolder, options.getCacheDirectory()),
+                    options.getFingerprintSettings());
+        }
+        try {
+            FingerprintCache segments = new ShardedIngestion(options, options.getShardWorkers()).run(unread);
+            for (FingerprintCache.Entry entry : segments.getEntries()) {
+                cache.put(entry);
+                if (journal != null) {
+                    journal.recordAnalysis(entry);
+                }
+            }
+        } catch (IOException e) {
+            // the pipeline reads whatever the workers didn't
+            System.out.println("Could not read videos in worker processes: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Takes the cut point of every video from the plan in the journal, instead of finding them again. The journal
+     * keeps what was read from videos before they were overwritten by their cut, so the plan stays the same.
+     */
+    private void restorePlan() {
+        if (options.isTimelinePruning()) {
+            fingerprintIndex.setTimeline(new RecordingTimeline(videoList, options.getTimelineSlack()));
+        }
+        HashMap<String, Video> videosByPath = new HashMap<>();
+        for (Video video : videoList) {
+            videosByPath.put(video.getAbsolutePath(), video);
+        }
+        for (Video video : videoList) {
+            JobJournal.PlannedCut planned = journal.getPlannedCut(video);
+            Video leadVideo = planned.getLeadPath() == null ? null : videosByPath.get(planned.getLeadPath());
+            if (leadVideo != null) {
+                updateLeadOverlap(new Overlap(leadVideo, video, planned.getLeadTimestamp(),
+                        planned.getSecondaryTimestamp()));
+            }
+        }
+    }
+
+    /**
+     * Finds the cut point of every video in the list by its audio alone (see AudioIndex)
+     */
+    private void findAudioCutPoints() {
+        AudioIndex audioIndex = new AudioIndex();
+        if (options.isTimelinePruning()) {
+            RecordingTimeline timeline = new RecordingTimeline(videoList, options.getTimelineSlack());
+            fingerprintIndex.setTimeline(timeline);
+            audioIndex.setTimeline(timeline);
+        }
+        for (Video video : videoList) {
+            audioIndex.insert(video);
+        }
+        System.out.println("Finding cut points by audio...");
+        try (Metrics.Timer timer = Metrics.global().time(Metrics.Stage.MATCH,
+                directoryFolder.getAbsolutePath())) {
+            for (Overlap overlap : audioIndex.findLeadOverlaps(videoList)) {
+                updateLeadOverlap(overlap);
+            }
+        }
+    }
+
+    /**
+     * Finds the cut point of every video in the list, each lead video cutting its closest overlapping video
+     */
+    private void findCutPoints() {
+        if (options.isTimelinePruning()) {
+            RecordingTimeline timeline = new RecordingTimeline(videoList, options.getTimelineSlack());
+            fingerprintIndex.setTimeline(timeline);
+            if (timeline.isReliable()) {
+                long allPairs = (long) videoList.size() * (videoList.size() - 1) / 2;
+                System.out.println("Matching " + timeline.countCandidatePairs() + " out of " + allPairs +
+                        " pairs of videos recorded at around the same time.");
+            } else {
+                System.out.println("Recording times are unreliable, so every pair of videos is matched.");
+            }
+        }
+        if (videoList.size() > 1) {
+            int videoNum = 1;
+            int stopped = fingerprintIndex.countStopped();
+            if (stopped > 0) {
+                System.out.println("Ignoring " + stopped + " keyframes found in too many videos (or too often in one).");
+            }
+            System.out.println("Finding cut points...");
+            for (Video video : videoList) {
+                int current = videoNum;
+                Log.verbose(() -> "Video " + current + " out of " + videoList.size() + ".");
+                videoNum++;
+                Overlap earliestOverlap;
+                try (Metrics.Timer timer = Metrics.global().time(Metrics.Stage.MATCH, video.getAbsolutePath())) {
+                    earliestOverlap = fingerprintIndex.findEarliestOverlap(video);
+                }
+                if (earliestOverlap != null) {
+                    updateLeadOverlap(earliestOverlap);
+                } else {
+                    Log.verbose(() -> "No cut point found for " + video.getFileName() + ".");
+                }
+            }
+        } else {
+            System.out.println("No cut points found.");
+        }
+    }
 }
@@ -0,0 +1,198 @@
+package com.LegMeat.rbo.Backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DirectoryWatcher keeps watching a Directory's folder for new recordings. Once a new video has finished being written
+ * (its size and last modified time stop changing), only that video is read and matched against the videos already in
+ * the Directory, and it can optionally be cut straight away.
+ */
+public class DirectoryWatcher {
+    private final Directory directory;
+    private final long settleMillis;
+    private final boolean cutImmediately;
+    private final boolean overwrite;
+    private final HashSet<Path> knownFiles = new HashSet<>(); // already read (changes to these are our own cuts)
+    private final HashMap<Path, PendingFile> pendingFiles = new HashMap<>();
+    private final HashSet<Video> cutVideos = new HashSet<>(); // videos already cut by this watcher
+    private volatile boolean running = false;
+    private WatchService watchService;
+
+    /**
+     * A new file which may still be being written
+     */
+    private static final class PendingFile {
+        private long size = -1;
+        private long lastModified = -1;
+        private long stableSince; // when the size and last modified time were last seen changing
+    }
+
+    /**
+     * @param settleMillis how long a file's size and last modified time must stay the same before it's read
+     * @param cutImmediately whether to cut new videos as soon as their cut point is found
+     * @param overwrite whether cuts overwrite the original videos (see Directory.executeCuts)
+     */
+    public DirectoryWatcher(Directory directory, long settleMillis, boolean cutImmediately, boolean overwrite) {
+        this.directory = directory;
+        this.settleMillis = settleMillis;
+        this.cutImmediately = cutImmediately;
+        this.overwrite = overwrite;
+        for (Video video : directory.getVideoList()) {
+            knownFiles.add(video.toPath().toAbsolutePath());
+        }
+    }
+
+    /**
+     * Watches the folder until stop is called (or the thread is interrupted)
+     */
+    public void run() throws IOException {
+        Path folder = directory.getDirectoryFolder().toPath().toAbsolutePath();
+        watchService = folder.getFileSystem().newWatchService();
+        folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        running = true;
+        System.out.println("Watching " + folder + " for new recordings...");
+        try {
+            while (running) {
+                WatchKey key = watchService.poll(Math.max(100, settleMillis / 4), TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() != StandardWatchEventKinds.OVERFLOW) {
+                            Path file = folder.resolve((Path) event.context());
+                            if (!knownFiles.contains(file) && isVideoName(file)) {
+                                pendingFiles.putIfAbsent(file, new PendingFile());
+                            }
+                        }
+                    }
+                    key.reset();
+                }
+                readSettledFiles();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Process cancelled by user.");
+        } catch (ClosedWatchServiceException e) {
+            // stopped
+        } finally {
+            running = false;
+            watchService.close();
+            directory.saveCache();
+        }
+    }
+
+    /**
+     * Stops watching (can be called from any thread)
+     */
+    public void stop() {
+        running = false;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Reads every pending file which has stopped changing
+     */
+    private void readSettledFiles() {
+        long now = System.currentTimeMillis();
+        ArrayList<Path> settled = new ArrayList<>();
+        Iterator<Map.Entry<Path, PendingFile>> pending = pendingFiles.entrySet().iterator();
+        while (pending.hasNext()) {
+            Map.Entry<Path, PendingFile> entry = pending.next();
+            File file = entry.getKey().toFile();
+            PendingFile pendingFile = entry.getValue();
+            if (!file.exists()) {
+                pending.remove();
+            } else if (file.length() != pendingFile.size || file.lastModified() != pendingFile.lastModified) {
+                pendingFile.size = file.length();
+                pendingFile.lastModified = file.lastModified();
+                pendingFile.stableSince = now;
+            } else if (now - pendingFile.stableSince >= settleMillis && isReadable(entry.getKey())) {
+                settled.add(entry.getKey());
+                pending.remove();
+            }
+        }
+        for (Path file : settled) {
+            knownFiles.add(file);
+            System.out.println("New recording: " + file.getFileName());
+            ArrayList<Video> changed = directory.addVideo(file.toFile());
+            if (cutImmediately) {
+                cut(changed);
+            }
+        }
+    }
+
+    /**
+     * Cuts the videos whose cut point has changed. Cuts overwriting a video change it, so it's marked as known first
+     * (so its change isn't mistaken for a new recording).
+     */
+    private void cut(ArrayList<Video> changed) {
+        ArrayList<Video> toCut = new ArrayList<>();
+        for (Video video : changed) {
+            if (overwrite && cutVideos.contains(video)) {
+                // cutting an overwritten video again would cut it from the wrong point
+                System.out.println(video.getFileName() + " has already been cut, its new cut point is " +
+                        video.getCutPoint());
+            } else if (video.getCutPoint() != -1.0 && !video.isCorrupted()) {
+                toCut.add(video);
+            }
+        }
+        if (toCut.isEmpty()) {
+            return;
+        }
+        String newDirectory = directory.getOutputDirectory(overwrite);
+        try {
+            Files.createDirectories(Paths.get(newDirectory));
+        } catch (IOException e) {
+            System.out.println("Could not create new file directory: " + e.getMessage());
+            return;
+        }
+        for (CutReport report : new CutExecutor(directory.getOptions().getCutThreads()).execute(toCut,
+                directory.getDirectoryFolder(), newDirectory, overwrite)) {
+            if (report.getResult() == CutResult.SUCCESS) {
+                cutVideos.add(report.getVideo());
+            }
+        }
+    }
+
+    /**
+     * Cheap check that a file could be a video, before waiting for it to settle
+     */
+    private static boolean isVideoName(Path file) {
+        return FileType.fromFileName(file.getFileName().toString()) != null;
+    }
+
+    /**
+     * Whether the file can be opened (on Windows, files still being recorded to usually can't be)
+     */
+    private static boolean isReadable(Path file) {
+        try {
+            Files.newInputStream(file).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
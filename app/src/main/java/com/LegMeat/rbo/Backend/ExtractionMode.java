@@ -0,0 +1,28 @@
+package com.LegMeat.rbo.Backend;
+
+/**
+ * ExtractionMode dictates how ffmpeg hands keyframes over to the program
+ */
+public enum ExtractionMode {
+    PNG, // every keyframe is PNG encoded, then found in the pipe by its magic bytes and decoded by ImageIO
+    RAW_RGB, // fixed size uncompressed colour frames (bgr24, the byte order of a TYPE_3BYTE_BGR image)
+    RAW_GRAY; // fixed size uncompressed 8-bit grayscale frames
+
+    public boolean isRaw() {
+        return this != PNG;
+    }
+
+    /**
+     * ffmpeg pixel format the frames are requested in
+     */
+    public String getPixelFormat() {
+        return this == RAW_GRAY ? "gray" : "bgr24";
+    }
+
+    /**
+     * bytes used by a single pixel of a raw frame
+     */
+    public int getBytesPerPixel() {
+        return this == RAW_GRAY ? 1 : 3;
+    }
+}
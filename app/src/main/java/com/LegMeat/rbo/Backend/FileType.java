@@ -1,5 +1,8 @@
 package com.LegMeat.rbo.Backend;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 /**
  * File represents a simple file. Videos may be files of different types.
  */
@@ -8,4 +11,48 @@ public enum FileType {
     MP4,
     MOV,
     FLV;
+
+    // bytes needed from the start of a file to recognise its type
+    public static final int HEADER_LENGTH = 8;
+    private static final byte[] EBML_MAGIC = {(byte) 0x1A, (byte) 0x45, (byte) 0xDF, (byte) 0xA3};
+    private static final byte[] FLV_MAGIC = "FLV".getBytes(StandardCharsets.US_ASCII);
+    // first box of an MP4/MOV file (MOV files don't always start with "ftyp")
+    private static final String[] QUICKTIME_BOXES = {"ftyp", "moov", "mdat", "free", "skip", "wide", "pnot"};
+
+    /**
+     * @return the type of a file going by its extension, or null if it isn't a supported video
+     */
+    public static FileType fromFileName(String fileName) {
+        if (fileName.length() < 3) {
+            return null;
+        }
+        try {
+            return FileType.valueOf(fileName.substring(fileName.length() - 3).toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Whether the first bytes of a file look like the start of a file of this type
+     * @param header the first bytes of the file (up to HEADER_LENGTH)
+     */
+    public boolean matchesHeader(byte[] header, int length) {
+        switch (this) {
+            case MKV:
+                return startsWith(header, length, EBML_MAGIC);
+            case FLV:
+                return startsWith(header, length, FLV_MAGIC);
+            default:
+                if (length < 8) {
+                    return false;
+                }
+                String box = new String(header, 4, 4, StandardCharsets.US_ASCII);
+                return Arrays.asList(QUICKTIME_BOXES).contains(box);
+        }
+    }
+
+    private static boolean startsWith(byte[] header, int length, byte[] magic) {
+        return length >= magic.length && Arrays.equals(header, 0, magic.length, magic, 0, magic.length);
+    }
 }
@@ -0,0 +1,152 @@
+package com.LegMeat.rbo.Backend;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+/**
+ * Fingerprint produces compact perceptual hashes of keyframes, so two keyframes can be compared with a couple of
+ * XOR/popcount operations instead of walking every pixel.
+ *
+ * The hash used is a 64-bit difference hash (dHash): the frame is shrunk to a 9x8 grid of average brightness, and
+ * each bit records whether a cell is brighter than its right-hand neighbour.
+ */
+public final class Fingerprint {
+    public static final int GRID_WIDTH = 9;
+    public static final int GRID_HEIGHT = 8;
+    /**
+     * Fingerprint of low-information frames (black frames, fades, blank screens), which never match anything. Frames
+     * only hash to it by themselves when no cell is brighter than its right-hand neighbour, which means a blank or
+     * evenly graded frame anyway.
+     */
+    public static final long LOW_INFORMATION = 0L;
+
+    // frames whose brightest and darkest cells are closer than this (0 to 255) get the LOW_INFORMATION fingerprint
+    private static volatile int lowInformationThreshold = 0;
+
+    private Fingerprint() {
+    }
+
+    public static int getLowInformationThreshold() {
+        return lowInformationThreshold;
+    }
+
+    /**
+     * Makes near-uniform frames (whose grid cells are all within the given brightness of each other) fingerprint as
+     * LOW_INFORMATION, so they're never matched. 0 only rejects frames which hash to it by themselves.
+     */
+    public static void setLowInformationThreshold(int lowInformationThreshold) {
+        Fingerprint.lowInformationThreshold = Math.max(0, lowInformationThreshold);
+    }
+
+    /**
+     * Computes the dHash of an image. Every pixel is read exactly once (a row at a time), so this is only ever run
+     * once per keyframe when it's decoded.
+     */
+    public static long dHash(BufferedImage image) {
+        // images straight from a raw frame (or most PNGs) can have their bytes read directly
+        if (image.getRaster().getParent() == null && image.getRaster().getDataBuffer() instanceof DataBufferByte) {
+            byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+                return dHash(pixels, image.getWidth(), image.getHeight(), 1);
+            } else if (image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+                return dHash(pixels, image.getWidth(), image.getHeight(), 3);
+            }
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long[] cellSums = new long[GRID_WIDTH * GRID_HEIGHT];
+        long[] cellCounts = new long[GRID_WIDTH * GRID_HEIGHT];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            int cellY = (int) ((long) y * GRID_HEIGHT / height);
+            for (int x = 0; x < width; x++) {
+                int cellX = (int) ((long) x * GRID_WIDTH / width);
+                int cell = cellY * GRID_WIDTH + cellX;
+                cellSums[cell] += luma(row[x]);
+                cellCounts[cell]++;
+            }
+        }
+        return hashCells(cellSums, cellCounts);
+    }
+
+    /**
+     * Computes the dHash of packed raw pixels, either 8-bit gray (1 byte per pixel) or bgr24 (3 bytes per pixel)
+     */
+    public static long dHash(byte[] pixels, int width, int height, int bytesPerPixel) {
+        long[] cellSums = new long[GRID_WIDTH * GRID_HEIGHT];
+        long[] cellCounts = new long[GRID_WIDTH * GRID_HEIGHT];
+        int[] cellOfColumn = new int[width];
+        for (int x = 0; x < width; x++) {
+            cellOfColumn[x] = (int) ((long) x * GRID_WIDTH / width);
+        }
+        int offset = 0;
+        for (int y = 0; y < height; y++) {
+            int rowCell = (int) ((long) y * GRID_HEIGHT / height) * GRID_WIDTH;
+            for (int x = 0; x < width; x++) {
+                int cell = rowCell + cellOfColumn[x];
+                if (bytesPerPixel == 1) {
+                    cellSums[cell] += pixels[offset] & 0xFF;
+                } else {
+                    int b = pixels[offset] & 0xFF;
+                    int g = pixels[offset + 1] & 0xFF;
+                    int r = pixels[offset + 2] & 0xFF;
+                    cellSums[cell] += (r * 299 + g * 587 + b * 114) / 1000;
+                }
+                cellCounts[cell]++;
+                offset += bytesPerPixel;
+            }
+        }
+        return hashCells(cellSums, cellCounts);
+    }
+
+    /**
+     * Number of bits that differ between two fingerprints (0 means the frames are perceptually identical).
+     */
+    public static int hammingDistance(long fingerprintOne, long fingerprintTwo) {
+        return Long.bitCount(fingerprintOne ^ fingerprintTwo);
+    }
+
+    /**
+     * Turns the summed brightness of each grid cell into the 64 hash bits
+     */
+    static long hashCells(long[] cellSums, long[] cellCounts) {
+        int threshold = lowInformationThreshold;
+        if (threshold > 0) {
+            double darkest = Double.MAX_VALUE;
+            double brightest = 0;
+            for (int cell = 0; cell < cellSums.length; cell++) {
+                double average = (double) cellSums[cell] / Math.max(1, cellCounts[cell]);
+                darkest = Math.min(darkest, average);
+                brightest = Math.max(brightest, average);
+            }
+            if (brightest - darkest < threshold) {
+                return LOW_INFORMATION;
+            }
+        }
+        long hash = 0L;
+        for (int y = 0; y < GRID_HEIGHT; y++) {
+            for (int x = 0; x < GRID_WIDTH - 1; x++) {
+                int cell = y * GRID_WIDTH + x;
+                // compare averages without dividing (cross multiply the counts instead)
+                long left = cellSums[cell] * Math.max(1, cellCounts[cell + 1]);
+                long right = cellSums[cell + 1] * Math.max(1, cellCounts[cell]);
+                hash <<= 1;
+                if (left > right) {
+                    hash |= 1L;
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Integer approximation of ITU-R BT.601 luma from a packed RGB pixel
+     */
+    static int luma(int rgb) {
+        int r = (rgb >> 16) & 0xFF;
+        int g = (rgb >> 8) & 0xFF;
+        int b = rgb & 0xFF;
+        return (r * 299 + g * 587 + b * 114) / 1000;
+    }
+}
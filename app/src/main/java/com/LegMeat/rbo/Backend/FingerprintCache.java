@@ -0,0 +1,274 @@
+package com.LegMeat.rbo.Backend;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * FingerprintCache remembers what was read from each video (keyframe timestamps, fingerprints and duration) between
+ * runs, so only new or modified videos have to go through ffmpeg again.
+ *
+ * Videos are identified by their path, size and last modified time. The cache is a single compact binary file:
+ * <pre>
+ * header:  magic "RBODFC01", settings (UTF-8, short length prefixed), entry count (int)
+ * entry:   path (UTF-8, short length prefixed), size (long), last modified (long), duration (double),
+ *          keyframe count (int), then per keyframe: id (long), timestamp (double), fingerprint (long)
+ * </pre>
+ * The settings string records how the fingerprints were made (e.g. the extraction mode), and a cache made with other
+ * settings is ignored.
+ */
+public class FingerprintCache {
+    private static final byte[] MAGIC = "RBODFC01".getBytes(StandardCharsets.US_ASCII);
+    public static final String CACHE_EXTENSION = ".rbod-cache";
+
+    private final File cacheFile;
+    private final String settings;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Everything remembered about a single video
+     */
+    public static final class Entry {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final double duration;
+        private final long[] ids;
+        private final double[] timestamps;
+        private final long[] fingerprints;
+
+        public Entry(String path, long size, long lastModified, double duration, long[] ids, double[] timestamps,
+                     long[] fingerprints) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.duration = duration;
+            this.ids = ids;
+            this.timestamps = timestamps;
+            this.fingerprints = fingerprints;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public double getDuration() {
+            return duration;
+        }
+
+        public int getKeyFrameCount() {
+            return timestamps.length;
+        }
+
+        public long getId(int keyFrame) {
+            return ids[keyFrame];
+        }
+
+        public double getTimestamp(int keyFrame) {
+            return timestamps[keyFrame];
+        }
+
+        public long getFingerprint(int keyFrame) {
+            return fingerprints[keyFrame];
+        }
+
+        /**
+         * The same entry, for the file with a different size and last modified time
+         */
+        Entry withFileState(long size, long lastModified) {
+            return new Entry(path, size, lastModified, duration, ids, timestamps, fingerprints);
+        }
+
+        /**
+         * Whether the entry still describes the file (i.e. the file hasn't been modified since)
+         */
+        public boolean matches(File file) {
+            return file.length() == size && file.lastModified() == lastModified;
+        }
+    }
+
+    /**
+     * @param cacheFile where the cache is stored
+     * @param settings description of how the fingerprints are made. Entries made with other settings aren't used.
+     */
+    public FingerprintCache(File cacheFile, String settings) {
+        this.cacheFile = cacheFile;
+        this.settings = settings;
+    }
+
+    /**
+     * Cache file used for a folder. By default, it sits next to the folder (so it's never mistaken for a video in the
+     * folder itself), otherwise it's kept in the given cache directory.
+     */
+    public static File cacheFileFor(File folder, File cacheDirectory) {
+        return fileFor(folder, cacheDirectory, CACHE_EXTENSION);
+    }
+
+    /**
+     * File with the given extension kept for a folder, next to the folder or in the given directory
+     */
+    static File fileFor(File folder, File directory, String extension) {
+        File absoluteFolder = folder.getAbsoluteFile();
+        if (directory == null) {
+            return new File(absoluteFolder.getParentFile(), absoluteFolder.getName() + extension);
+        }
+        // folders with the same name in different places mustn't share a file
+        String uniqueName = absoluteFolder.getName() + "-" +
+                Integer.toHexString(absoluteFolder.getPath().hashCode());
+        return new File(directory, uniqueName + extension);
+    }
+
+    public File getCacheFile() {
+        return cacheFile;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public Collection<Entry> getEntries() {
+        return entries.values();
+    }
+
+    /**
+     * @return the remembered entry of a file, or null if it's unknown or has been modified since it was cached
+     */
+    public Entry lookup(File file) {
+        Entry entry = entries.get(file.getAbsolutePath());
+        if (entry != null && entry.matches(file)) {
+            return entry;
+        }
+        return null;
+    }
+
+    public void put(Entry entry) {
+        entries.put(entry.getPath(), entry);
+    }
+
+    /**
+     * Reads the cache file, if there is one. A missing, unreadable or outdated cache simply leaves the cache empty.
+     */
+    public void load() {
+        if (!cacheFile.isFile()) {
+            return;
+        }
+        try {
+            // read onto the heap rather than mapped: a mapping outlives the read, and Windows won't let save() move a
+            // new cache over a mapped file
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(cacheFile.toPath()));
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || !settings.equals(readString(buffer))) {
+                System.out.println("Fingerprint cache was made differently and will be rebuilt.");
+                return;
+            }
+            int entryCount = buffer.getInt();
+            for (int i = 0; i < entryCount; i++) {
+                put(readEntry(buffer));
+            }
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            // a damaged cache is just thrown away
+            entries.clear();
+            System.out.println("Fingerprint cache could not be read and will be rebuilt.");
+        }
+    }
+
+    /**
+     * Writes the cache file. It's written to a temporary file first, then moved over the old cache, so a crash
+     * never leaves a half-written cache behind.
+     */
+    public void save() throws IOException {
+        Path target = cacheFile.toPath();
+        Path temporary = target.resolveSibling(cacheFile.getName() + ".tmp");
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        // videos which have since been deleted are forgotten
+        entries.values().removeIf(entry -> !new File(entry.getPath()).exists());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.write(MAGIC);
+            writeString(out, settings);
+            ArrayList<Entry> toWrite = new ArrayList<>(entries.values());
+            out.writeInt(toWrite.size());
+            for (Entry entry : toWrite) {
+                writeEntry(out, entry);
+            }
+        }
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads a single entry, laid out as described above (also used by JobJournal)
+     */
+    static Entry readEntry(ByteBuffer buffer) {
+        String path = readString(buffer);
+        long size = buffer.getLong();
+        long lastModified = buffer.getLong();
+        double duration = buffer.getDouble();
+        int keyFrameCount = buffer.getInt();
+        // a damaged count mustn't allocate more than the bytes left could hold (each keyframe takes 24 bytes)
+        if (keyFrameCount < 0 || keyFrameCount > buffer.remaining() / 24) {
+            throw new IllegalArgumentException("Invalid keyframe count " + keyFrameCount + ".");
+        }
+        long[] ids = new long[keyFrameCount];
+        double[] timestamps = new double[keyFrameCount];
+        long[] fingerprints = new long[keyFrameCount];
+        for (int j = 0; j < keyFrameCount; j++) {
+            ids[j] = buffer.getLong();
+            timestamps[j] = buffer.getDouble();
+            fingerprints[j] = buffer.getLong();
+        }
+        return new Entry(path, size, lastModified, duration, ids, timestamps, fingerprints);
+    }
+
+    /**
+     * Writes a single entry, laid out as described above (also used by JobJournal)
+     */
+    static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        writeString(out, entry.getPath());
+        out.writeLong(entry.getSize());
+        out.writeLong(entry.getLastModified());
+        out.writeDouble(entry.getDuration());
+        out.writeInt(entry.getKeyFrameCount());
+        for (int j = 0; j < entry.getKeyFrameCount(); j++) {
+            out.writeLong(entry.getId(j));
+            out.writeDouble(entry.getTimestamp(j));
+            out.writeLong(entry.getFingerprint(j));
+        }
+    }
+
+    static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+}
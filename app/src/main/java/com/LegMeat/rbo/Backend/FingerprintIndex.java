@@ -0,0 +1,398 @@
+package com.LegMeat.rbo.Backend;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * FingerprintIndex maps every keyframe fingerprint in a directory to the (video, timestamp) postings it appears at.
+ * Each video is inserted once and probed once, so finding every overlapping pair scales with the total number of
+ * keyframes instead of comparing every video's keyframes against every other video's keyframes.
+ *
+ * Keyframes match when their fingerprints are at most a given number of bits apart (0 by default, i.e. identical).
+ * Recordings of the same moment often don't produce bit-identical keyframes, so allowing a few bits lets those match
+ * too. Near matches are found through a HammingIndex of the distinct fingerprints.
+ *
+ * Static screens (loading screens, menus, black frames) give the same keyframe in almost every recording, and would
+ * match everywhere. Fingerprints found too often within one video are put on a stop-list and ignored when matching,
+ * and so (if enabled, in a large library) are fingerprints found in too large a share of the videos.
+ *
+ * With a reliable RecordingTimeline, only the postings of videos recorded at around the same time as the probed video
+ * are looked at: each fingerprint's postings are sorted by when their video finished recording, so the rest are
+ * skipped by a binary search instead of being walked.
+ */
+public class FingerprintIndex {
+    // below this many videos, a frame in many of them is far more likely a moment they all recorded than a static
+    // screen, so the share rule only applies to large libraries
+    private static final int MIN_VIDEOS_FOR_SHARE = 50;
+
+    // postings of each fingerprint, sorted by when their video finished recording
+    private final HashMap<Long, ArrayList<Posting>> postings = new HashMap<>();
+    private final ArrayList<Video> videos = new ArrayList<>();
+    // latest timestamp each fingerprint appears at. Safe to read while videos are being inserted, for streaming.
+    private final ConcurrentHashMap<Long, Double> latestTimestamps = new ConcurrentHashMap<>();
+    private final int maxDistance; // largest Hamming distance between matching fingerprints
+    private final HammingIndex hammingIndex = new HammingIndex(); // only used when maxDistance > 0
+    private RecordingTimeline timeline = null; // if set, only videos recorded around the same time are matched
+    private final ConcurrentHashMap<Long, Integer> videoCounts = new ConcurrentHashMap<>(); // videos per fingerprint
+    private final Set<Long> stopList = ConcurrentHashMap.newKeySet(); // fingerprints repeated too often in a video
+    private volatile int indexedVideos = 0; // readable while videos are being inserted, for streaming
+    private double maxVideoShare = 1; // fingerprints in more than this share of the videos are ignored
+    private int maxPerVideo = 0; // fingerprints found more often within a single video are ignored. 0 = no limit.
+
+    /**
+     * A single occurrence of a fingerprint: which video, which keyframe and where in that video it sits
+     */
+    public static final class Posting {
+        private final Video video;
+        private final KeyFrame keyFrame;
+        private final int frameIndex;
+        private final double recordedUntil; // when the video finished recording, see RecordingTimeline
+
+        public Posting(Video video, KeyFrame keyFrame, int frameIndex) {
+            this(video, keyFrame, frameIndex, RecordingTimeline.end(video));
+        }
+
+        private Posting(Video video, KeyFrame keyFrame, int frameIndex, double recordedUntil) {
+            this.video = video;
+            this.keyFrame = keyFrame;
+            this.frameIndex = frameIndex;
+            this.recordedUntil = recordedUntil;
+        }
+
+        public Video getVideo() {
+            return video;
+        }
+
+        public KeyFrame getKeyFrame() {
+            return keyFrame;
+        }
+
+        public int getFrameIndex() {
+            return frameIndex;
+        }
+
+        public Double getTimestamp() {
+            return keyFrame.getTimestamp();
+        }
+    }
+
+    public FingerprintIndex() {
+        this(0);
+    }
+
+    /**
+     * @param maxDistance largest number of bits two keyframe fingerprints may differ by and still match
+     */
+    public FingerprintIndex(int maxDistance) {
+        this.maxDistance = Math.max(0, maxDistance);
+    }
+
+    public int getMaxDistance() {
+        return maxDistance;
+    }
+
+    public RecordingTimeline getTimeline() {
+        return timeline;
+    }
+
+    /**
+     * Only lets videos match videos recorded at around the same time
+     * @param timeline timeline of the indexed videos, or null to match every pair of videos
+     */
+    public void setTimeline(RecordingTimeline timeline) {
+        this.timeline = timeline;
+    }
+
+    /**
+     * Sets how common a fingerprint may be before it's ignored
+     * @param maxVideoShare largest share of the videos (0 to 1) a fingerprint may appear in. 1 never ignores any.
+     * @param maxPerVideo most times a fingerprint may appear within a single video. 0 never ignores any.
+     */
+    public void setStopList(double maxVideoShare, int maxPerVideo) {
+        this.maxVideoShare = maxVideoShare;
+        this.maxPerVideo = Math.max(0, maxPerVideo);
+    }
+
+    /**
+     * Whether a fingerprint is too common (or shows too little) to tell where in a recording it is, so is ignored
+     */
+    public boolean isStopped(long fingerprint) {
+        if (fingerprint == Fingerprint.LOW_INFORMATION || stopList.contains(fingerprint)) {
+            return true;
+        }
+        int videoTotal = indexedVideos;
+        if (maxVideoShare >= 1 || videoTotal < MIN_VIDEOS_FOR_SHARE) {
+            return false;
+        }
+        Integer count = videoCounts.get(fingerprint);
+        return count != null && count > maxVideoShare * videoTotal;
+    }
+
+    /**
+     * Number of distinct fingerprints currently ignored (not counting LOW_INFORMATION)
+     */
+    public int countStopped() {
+        int stopped = stopList.size();
+        for (long fingerprint : videoCounts.keySet()) {
+            if (!stopList.contains(fingerprint) && isStopped(fingerprint)) {
+                stopped++;
+            }
+        }
+        return stopped;
+    }
+
+    public ArrayList<Video> getVideos() {
+        return videos;
+    }
+
+    public int size() {
+        return videos.size();
+    }
+
+    /**
+     * Adds all (non-corrupt) keyframes of a video to the index. Postings of a fingerprint are kept in insertion
+     * order, so each video's postings are always in keyframe order.
+     */
+    public void insert(Video video) {
+        videos.add(video);
+        ArrayList<KeyFrame> keyFrames = video.getKeyFrames();
+        HashMap<Long, Integer> occurrences = new HashMap<>();
+        double recordedUntil = RecordingTimeline.end(video);
+        for (int i = 0; i < keyFrames.size(); i++) {
+            KeyFrame keyFrame = keyFrames.get(i);
+            if (keyFrame == null || keyFrame.isLowInformation()) {
+                continue;
+            }
+            long fingerprint = keyFrame.getFingerprint();
+            int count = occurrences.merge(fingerprint, 1, Integer::sum);
+            if (maxPerVideo > 0 && count > maxPerVideo && stopList.add(fingerprint)) {
+                // a static screen repeats endlessly, so its postings are dropped rather than scanned on every lookup
+                postings.remove(fingerprint);
+                Log.verbose(() -> "Ignoring keyframe " + Long.toHexString(fingerprint) + ", repeated throughout " +
+                        video.getFileName() + ".");
+            }
+            if (stopList.contains(fingerprint)) {
+                continue;
+            }
+            ArrayList<Posting> fingerprintPostings = postings.computeIfAbsent(fingerprint, k -> new ArrayList<>());
+            // after every posting recorded no later, so the postings of a video stay in keyframe order
+            fingerprintPostings.add(firstRecordedAfter(fingerprintPostings, recordedUntil, true),
+                    new Posting(video, keyFrame, i, recordedUntil));
+            latestTimestamps.merge(fingerprint, keyFrame.getTimestamp(), Math::max);
+            if (maxDistance > 0) {
+                hammingIndex.add(fingerprint);
+            }
+        }
+        for (long fingerprint : occurrences.keySet()) {
+            videoCounts.merge(fingerprint, 1, Integer::sum);
+        }
+        indexedVideos = videos.size();
+    }
+
+    /**
+     * Postings of every fingerprint within maxDistance of the given fingerprint, of videos which finished recording
+     * between the given times. Postings are sorted by that time, so the others are skipped without being looked at.
+     * @param earliestEnd earliest time (in seconds) the video of a posting may have finished recording
+     * @param latestEnd latest time (in seconds) the video of a posting may have finished recording
+     */
+    private List<Posting> matchingPostings(long fingerprint, double earliestEnd, double latestEnd) {
+        if (maxDistance == 0) {
+            ArrayList<Posting> matches = postings.get(fingerprint);
+            return matches == null || isStopped(fingerprint) ? List.of() :
+                    recordedBetween(matches, earliestEnd, latestEnd);
+        }
+        ArrayList<Posting> matches = new ArrayList<>();
+        if (fingerprint == Fingerprint.LOW_INFORMATION) {
+            return matches;
+        }
+        for (Long match : hammingIndex.search(fingerprint, maxDistance)) {
+            ArrayList<Posting> matchPostings = postings.get(match);
+            if (matchPostings != null && !isStopped(match)) {
+                matches.addAll(recordedBetween(matchPostings, earliestEnd, latestEnd));
+            }
+        }
+        return matches;
+    }
+
+    private static List<Posting> recordedBetween(ArrayList<Posting> postings, double earliestEnd, double latestEnd) {
+        if (earliestEnd == Double.NEGATIVE_INFINITY && latestEnd == Double.POSITIVE_INFINITY) {
+            return postings;
+        }
+        return postings.subList(firstRecordedAfter(postings, earliestEnd, false),
+                firstRecordedAfter(postings, latestEnd, true));
+    }
+
+    /**
+     * Index of the first posting whose video finished recording at or after the given time (strictly after, if strict)
+     * @param postings postings sorted by when their video finished recording
+     */
+    private static int firstRecordedAfter(List<Posting> postings, double time, boolean strict) {
+        int low = 0;
+        int high = postings.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            double recordedUntil = postings.get(middle).recordedUntil;
+            if (recordedUntil < time || (strict && recordedUntil == time)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Whether an indexed video has a keyframe with the given fingerprint at (or after) the given timestamp, meaning
+     * it could be the lead video of the given video, which has that keyframe. Without a timeline this can be called
+     * while other threads insert videos. With one, only videos recorded at around the same time as the given video
+     * count, which means looking at the postings themselves, so no video may be inserted at the same time.
+     */
+    public boolean couldLead(Video video, long fingerprint, double timestamp) {
+        if (timeline != null) {
+            double earliestEnd = timeline.earliestOverlappingEnd(video);
+            double latestEnd = timeline.latestOverlappingEnd(video);
+            for (Posting posting : matchingPostings(fingerprint, earliestEnd, latestEnd)) {
+                Video other = posting.getVideo();
+                if (other != video && posting.getTimestamp() >= timestamp && timeline.couldOverlap(video, other)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (maxDistance == 0) {
+            Double latestTimestamp = latestTimestamps.get(fingerprint);
+            return latestTimestamp != null && latestTimestamp >= timestamp && !isStopped(fingerprint);
+        }
+        if (fingerprint == Fingerprint.LOW_INFORMATION) {
+            return false;
+        }
+        for (Long match : hammingIndex.search(fingerprint, maxDistance)) {
+            Double latestTimestamp = latestTimestamps.get(match);
+            if (latestTimestamp != null && latestTimestamp >= timestamp && !isStopped(match)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds, for every other indexed video, the first overlapping keyframe pair with the given lead video. This gives
+     * exactly the pair Video.findOverlap would find: the earliest keyframe of the other video that matches any
+     * keyframe of the lead, paired with the earliest lead keyframe it matches.
+     * @param lead the video being treated as the lead video
+     * @return one overlap per matching video, in the order the videos were inserted
+     */
+    public ArrayList<Overlap> findOverlaps(Video lead) {
+        // indexes of the lead keyframes grouped by fingerprint, kept in keyframe order
+        ArrayList<KeyFrame> leadKeyFrames = lead.getKeyFrames();
+        LinkedHashMap<Long, ArrayList<Integer>> leadFrames = new LinkedHashMap<>();
+        for (int i = 0; i < leadKeyFrames.size(); i++) {
+            KeyFrame keyFrame = leadKeyFrames.get(i);
+            if (keyFrame != null) {
+                leadFrames.computeIfAbsent(keyFrame.getFingerprint(), k -> new ArrayList<>()).add(i);
+            }
+        }
+        HashMap<Video, Posting> earliestPosting = new HashMap<>();
+        HashMap<Video, Integer> earliestLeadFrame = new HashMap<>();
+        double earliestEnd = timeline == null ? Double.NEGATIVE_INFINITY : timeline.earliestOverlappingEnd(lead);
+        double latestEnd = timeline == null ? Double.POSITIVE_INFINITY : timeline.latestOverlappingEnd(lead);
+        for (Map.Entry<Long, ArrayList<Integer>> group : leadFrames.entrySet()) {
+            for (Posting posting : matchingPostings(group.getKey(), earliestEnd, latestEnd)) {
+                Video other = posting.getVideo();
+                if (other == lead || (timeline != null && !timeline.couldOverlap(lead, other))) {
+                    continue;
+                }
+                Posting current = earliestPosting.get(other);
+                if (current != null && current.getFrameIndex() < posting.getFrameIndex()) {
+                    continue;
+                }
+                // first lead frame that really matches (only differs from the fingerprint when pixels are confirmed)
+                for (int leadIndex : group.getValue()) {
+                    if (current == posting && earliestLeadFrame.get(other) <= leadIndex) {
+                        // a near match already paired this posting with an earlier lead frame
+                        break;
+                    }
+                    if (leadKeyFrames.get(leadIndex).matches(posting.getKeyFrame(), maxDistance)) {
+                        earliestPosting.put(other, posting);
+                        earliestLeadFrame.put(other, leadIndex);
+                        break;
+                    }
+                }
+            }
+        }
+        ArrayList<Overlap> overlaps = new ArrayList<>();
+        for (Video other : videos) {
+            Posting posting = earliestPosting.get(other);
+            if (posting != null) {
+                overlaps.add(new Overlap(lead, other, leadKeyFrames.get(earliestLeadFrame.get(other)).getTimestamp(),
+                        posting.getTimestamp()));
+            }
+        }
+        return overlaps;
+    }
+
+    /**
+     * Finds the closest overlapping video of a lead video (the one whose overlap starts earliest in the lead video)
+     * @param lead the video being treated as the lead video
+     * @return the earliest overlap where the given video is the lead, or null if it doesn't lead any video
+     */
+    public Overlap findEarliestOverlap(Video lead) {
+        Overlap earliestOverlap = null;
+        for (Overlap overlap : findOverlaps(lead)) {
+            if (overlap.isLeadOverlap() && (earliestOverlap == null ||
+                    overlap.getLeadTimestamp() < earliestOverlap.getLeadTimestamp())) {
+                earliestOverlap = overlap;
+            }
+        }
+        return earliestOverlap;
+    }
+
+    /**
+     * Finds, for every other indexed video, the first overlapping keyframe pair where the given video is the
+     * secondary video: the earliest keyframe of the given video that matches any keyframe of the other video, paired
+     * with the earliest keyframe of the other video it matches (what otherVideo.findOverlap(secondary) would find).
+     * Used to match a newly added video against the videos already indexed, without re-matching those videos.
+     * @param secondary the video being treated as the secondary video
+     * @return one overlap per matching video (with that video as the lead), in the order the videos were inserted
+     */
+    public ArrayList<Overlap> findOverlapsAsSecondary(Video secondary) {
+        HashMap<Video, Overlap> found = new HashMap<>();
+        double earliestEnd = timeline == null ? Double.NEGATIVE_INFINITY : timeline.earliestOverlappingEnd(secondary);
+        double latestEnd = timeline == null ? Double.POSITIVE_INFINITY : timeline.latestOverlappingEnd(secondary);
+        for (KeyFrame keyFrame : secondary.getKeyFrames()) {
+            if (keyFrame == null) {
+                continue;
+            }
+            // earliest matching posting of each video not matched yet (postings of different fingerprints aren't
+            // in keyframe order, so the earliest has to be looked for)
+            HashMap<Video, Posting> earliest = new HashMap<>();
+            for (Posting posting : matchingPostings(keyFrame.getFingerprint(), earliestEnd, latestEnd)) {
+                Video other = posting.getVideo();
+                Posting current = earliest.get(other);
+                if (other != secondary && !found.containsKey(other) &&
+                        (timeline == null || timeline.couldOverlap(secondary, other)) &&
+                        (current == null || posting.getFrameIndex() < current.getFrameIndex()) &&
+                        posting.getKeyFrame().matches(keyFrame, maxDistance)) {
+                    earliest.put(other, posting);
+                }
+            }
+            for (Posting posting : earliest.values()) {
+                found.put(posting.getVideo(), new Overlap(posting.getVideo(), secondary, posting.getTimestamp(),
+                        keyFrame.getTimestamp()));
+            }
+        }
+        ArrayList<Overlap> overlaps = new ArrayList<>();
+        for (Video other : videos) {
+            Overlap overlap = found.get(other);
+            if (overlap != null) {
+                overlaps.add(overlap);
+            }
+        }
+        return overlaps;
+    }
+}
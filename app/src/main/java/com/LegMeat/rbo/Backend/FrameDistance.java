@@ -0,0 +1,130 @@
+package com.LegMeat.rbo.Backend;
+
+import java.nio.ByteBuffer;
+
+/**
+ * FrameDistance measures how far apart two packed frames (or thumbnails) are, byte by byte: the sum of absolute
+ * differences (SAD) or the sum of squared differences (SSD), each byte being an unsigned sample. Both stop early once
+ * the distance is past a limit, as confirming a candidate pair only needs to know whether the frames are close enough.
+ *
+ * The distances are worked out with SIMD instructions through the Vector API (see VectorFrameDistance) when the
+ * jdk.incubator.vector module is available (started with --add-modules jdk.incubator.vector), and by a plain loop
+ * otherwise.
+ */
+public final class FrameDistance {
+    private static final Kernel SCALAR = new ScalarKernel();
+    private static final Kernel KERNEL = loadKernel();
+
+    /**
+     * A way of working out the distances. Each returns a distance above the limit (not necessarily the full
+     * distance) as soon as the limit is passed.
+     */
+    interface Kernel {
+        long sad(ByteBuffer one, int offsetOne, ByteBuffer two, int offsetTwo, int length, long limit);
+
+        long ssd(ByteBuffer one, int offsetOne, ByteBuffer two, int offsetTwo, int length, long limit);
+    }
+
+    private FrameDistance() {
+    }
+
+    /**
+     * Sum of absolute differences of two runs of bytes
+     * @param limit distance past which the frames are too far apart to matter (Long.MAX_VALUE for the full distance)
+     * @return the distance, or some distance above the limit if the limit was passed
+     */
+    public static long sad(ByteBuffer one, int offsetOne, ByteBuffer two, int offsetTwo, int length, long limit) {
+        return KERNEL.sad(one, offsetOne, two, offsetTwo, length, limit);
+    }
+
+    public static long sad(byte[] one, byte[] two, long limit) {
+        return sad(ByteBuffer.wrap(one), 0, ByteBuffer.wrap(two), 0, Math.min(one.length, two.length), limit);
+    }
+
+    /**
+     * Sum of squared differences of two runs of bytes
+     * @param limit distance past which the frames are too far apart to matter (Long.MAX_VALUE for the full distance)
+     * @return the distance, or some distance above the limit if the limit was passed
+     */
+    public static long ssd(ByteBuffer one, int offsetOne, ByteBuffer two, int offsetTwo, int length, long limit) {
+        return KERNEL.ssd(one, offsetOne, two, offsetTwo, length, limit);
+    }
+
+    public static long ssd(byte[] one, byte[] two, long limit) {
+        return ssd(ByteBuffer.wrap(one), 0, ByteBuffer.wrap(two), 0, Math.min(one.length, two.length), limit);
+    }
+
+    /**
+     * Sum of absolute differences worked out by the plain loop, even when SIMD is available (to compare the two)
+     */
+    public static long scalarSad(ByteBuffer one, int offsetOne, ByteBuffer two, int offsetTwo, int length,
+                                 long limit) {
+        return SCALAR.sad(one, offsetOne, two, offsetTwo, length, limit);
+    }
+
+    /**
+     * Sum of squared differences worked out by the plain loop, even when SIMD is available (to compare the two)
+     */
+    public static long scalarSsd(ByteBuffer one, int offsetOne, ByteBuffer two, int offsetTwo, int length,
+                                 long limit) {
+        return SCALAR.ssd(one, offsetOne, two, offsetTwo, length, limit);
+    }
+
+    /**
+     * Whether the distances are worked out with SIMD instructions
+     */
+    public static boolean isVectorized() {
+        return KERNEL != SCALAR;
+    }
+
+    private static Kernel loadKernel() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                // only loaded by name, so this class still loads without the module
+                return (Kernel) Class.forName(FrameDistance.class.getPackageName() + ".VectorFrameDistance")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                Log.verbose(() -> "Vector API unavailable, frame distances are worked out without SIMD.");
+            }
+        }
+        return SCALAR;
+    }
+
+    /**
+     * Plain loop, checking the limit every block of bytes
+     */
+    static final class ScalarKernel implements Kernel {
+        private static final int BLOCK = 64;
+
+        @Override
+        public long sad(ByteBuffer one, int offsetOne, ByteBuffer two, int offsetTwo, int length, long limit) {
+            long distance = 0;
+            for (int start = 0; start < length; start += BLOCK) {
+                int end = Math.min(length, start + BLOCK);
+                for (int i = start; i < end; i++) {
+                    distance += Math.abs((one.get(offsetOne + i) & 0xFF) - (two.get(offsetTwo + i) & 0xFF));
+                }
+                if (distance > limit) {
+                    return distance;
+                }
+            }
+            return distance;
+        }
+
+        @Override
+        public long ssd(ByteBuffer one, int offsetOne, ByteBuffer two, int offsetTwo, int length, long limit) {
+            long distance = 0;
+            for (int start = 0; start < length; start += BLOCK) {
+                int end = Math.min(length, start + BLOCK);
+                for (int i = start; i < end; i++) {
+                    int difference = (one.get(offsetOne + i) & 0xFF) - (two.get(offsetTwo + i) & 0xFF);
+                    distance += difference * difference;
+                }
+                if (distance > limit) {
+                    return distance;
+                }
+            }
+            return distance;
+        }
+    }
+}
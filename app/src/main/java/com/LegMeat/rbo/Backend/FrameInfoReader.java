@@ -0,0 +1,128 @@
+package com.LegMeat.rbo.Backend;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * FrameInfoReader reads the log ffmpeg writes to its error stream while extracting keyframes with a "showinfo"
+ * filter. It finds the container duration and start time (from the input's "Duration:" line), and the pts time and
+ * size of every keyframe (one showinfo line per frame, in the same order the frames arrive through stdout). This lets
+ * a single ffmpeg pass replace separate ffprobe calls for the timestamps and duration.
+ *
+ * ffmpeg is run with -copyts, so pts times are those of the input whether or not it seeked. The start time is taken
+ * off each of them, giving timestamps from the start of the video in every pass.
+ *
+ * Runs on its own thread, as the error stream must be emptied while stdout is being read.
+ */
+public class FrameInfoReader implements Runnable {
+    private static final Pattern DURATION = Pattern.compile("Duration: (\\d+):(\\d{2}):(\\d{2}(?:\\.\\d+)?)");
+    private static final Pattern START = Pattern.compile("start: (-?\\d+(?:\\.\\d+)?)");
+    private static final Pattern PTS_TIME = Pattern.compile("pts_time:\\s*(\\S+)");
+    private static final Pattern FRAME_SIZE = Pattern.compile("\\ss:(\\d+)x(\\d+)\\s");
+
+    private final InputStream errorStream;
+    private final LinkedBlockingQueue<Double> timestamps = new LinkedBlockingQueue<>();
+    private final CountDownLatch firstFrame = new CountDownLatch(1); // released once the frame size is known
+    private volatile Double duration = null;
+    private double start = 0; // only read and written by the thread running this
+    private boolean startFound = false;
+    private volatile int[] frameSize = null;
+    private volatile boolean finished = false;
+
+    public FrameInfoReader(InputStream errorStream) {
+        this.errorStream = errorStream;
+    }
+
+    @Override
+    public void run() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(errorStream))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.contains("showinfo")) {
+                    readFrameLine(line);
+                } else if (duration == null || !startFound) {
+                    readInputLine(line);
+                }
+            }
+        } catch (IOException e) {
+            // stream closed (process killed), nothing more to read
+        } finally {
+            finished = true;
+            firstFrame.countDown();
+        }
+    }
+
+    /**
+     * The "Duration:" line states the start time too, even when the duration itself is N/A
+     */
+    private void readInputLine(String line) {
+        Matcher matcher = DURATION.matcher(line);
+        if (duration == null && matcher.find()) {
+            duration = Integer.parseInt(matcher.group(1)) * 3600 +
+                    Integer.parseInt(matcher.group(2)) * 60 + Double.parseDouble(matcher.group(3));
+        }
+        Matcher startMatcher = START.matcher(line);
+        if (!startFound && line.contains("Duration:") && startMatcher.find()) {
+            start = Double.parseDouble(startMatcher.group(1));
+            startFound = true;
+        }
+    }
+
+    private void readFrameLine(String line) {
+        Matcher ptsTime = PTS_TIME.matcher(line);
+        if (!ptsTime.find()) {
+            return;
+        }
+        if (frameSize == null) {
+            Matcher size = FRAME_SIZE.matcher(line);
+            if (size.find()) {
+                frameSize = new int[] {Integer.parseInt(size.group(1)), Integer.parseInt(size.group(2))};
+            }
+            firstFrame.countDown();
+        }
+        try {
+            timestamps.add(Double.parseDouble(ptsTime.group(1)) - start);
+        } catch (NumberFormatException e) {
+            // frame without a pts (NOPTS), still has to be counted so later frames keep their timestamps
+            timestamps.add(Double.NaN);
+        }
+    }
+
+    /**
+     * @return duration of the video, or null if the container doesn't state one
+     */
+    public Double getDuration() {
+        return duration;
+    }
+
+    /**
+     * Waits for the timestamp of the next keyframe
+     * @return the timestamp from the start of the video, or null if ffmpeg has finished without reporting another keyframe
+     */
+    public Double takeTimestamp() throws InterruptedException {
+        while (true) {
+            Double timestamp = timestamps.poll(100, TimeUnit.MILLISECONDS);
+            if (timestamp != null) {
+                return timestamp;
+            } else if (finished) {
+                return timestamps.poll();
+            }
+        }
+    }
+
+    /**
+     * Waits until the first keyframe is reported
+     * @return width and height of the keyframes, or null if ffmpeg finished without reporting any
+     */
+    public int[] awaitFrameSize() throws InterruptedException {
+        firstFrame.await();
+        return frameSize;
+    }
+}
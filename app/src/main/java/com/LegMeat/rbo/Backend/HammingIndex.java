@@ -0,0 +1,104 @@
+package com.LegMeat.rbo.Backend;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * HammingIndex finds every stored fingerprint within a given Hamming distance of a fingerprint, without comparing it
+ * against every stored fingerprint (multi-index hashing).
+ *
+ * Each 64-bit fingerprint is split into four 16-bit chunks, and each chunk has its own table. Two fingerprints at most
+ * d bits apart must have at least one chunk at most d / 4 bits apart, so a search only has to look up the chunks
+ * within d / 4 bits of each of the query's chunks (one lookup per chunk when d < 4), then check the few candidates
+ * found against the full distance.
+ *
+ * Safe to search while other threads add fingerprints.
+ */
+public class HammingIndex {
+    private static final int CHUNKS = 4;
+    private static final int CHUNK_BITS = Long.SIZE / CHUNKS;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
+    private final HashSet<Long> fingerprints = new HashSet<>();
+    private final List<HashMap<Integer, ArrayList<Long>>> tables = new ArrayList<>(CHUNKS);
+
+    public HammingIndex() {
+        for (int i = 0; i < CHUNKS; i++) {
+            tables.add(new HashMap<>());
+        }
+    }
+
+    public synchronized int size() {
+        return fingerprints.size();
+    }
+
+    /**
+     * Adds a fingerprint (adding one that's already stored does nothing)
+     */
+    public synchronized void add(long fingerprint) {
+        if (fingerprints.add(fingerprint)) {
+            for (int i = 0; i < CHUNKS; i++) {
+                tables.get(i).computeIfAbsent(chunk(fingerprint, i), k -> new ArrayList<>()).add(fingerprint);
+            }
+        }
+    }
+
+    /**
+     * Finds every stored fingerprint within the given distance of a fingerprint
+     * @param maxDistance largest number of differing bits allowed
+     * @return the matching fingerprints (each only once, in no particular order)
+     */
+    public synchronized ArrayList<Long> search(long fingerprint, int maxDistance) {
+        ArrayList<Long> found = new ArrayList<>();
+        if (maxDistance <= 0) {
+            if (fingerprints.contains(fingerprint)) {
+                found.add(fingerprint);
+            }
+            return found;
+        }
+        HashSet<Long> checked = new HashSet<>();
+        int chunkDistance = maxDistance / CHUNKS;
+        for (int i = 0; i < CHUNKS; i++) {
+            HashMap<Integer, ArrayList<Long>> table = tables.get(i);
+            for (int neighbour : neighbours(chunk(fingerprint, i), chunkDistance)) {
+                ArrayList<Long> candidates = table.get(neighbour);
+                if (candidates == null) {
+                    continue;
+                }
+                for (Long candidate : candidates) {
+                    if (checked.add(candidate) &&
+                            Fingerprint.hammingDistance(fingerprint, candidate) <= maxDistance) {
+                        found.add(candidate);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    private static int chunk(long fingerprint, int index) {
+        return (int) (fingerprint >>> (index * CHUNK_BITS)) & CHUNK_MASK;
+    }
+
+    /**
+     * Every chunk value within the given number of bits of a chunk (including the chunk itself)
+     */
+    private static ArrayList<Integer> neighbours(int chunk, int distance) {
+        ArrayList<Integer> neighbours = new ArrayList<>();
+        addNeighbours(chunk, distance, 0, neighbours);
+        return neighbours;
+    }
+
+    private static void addNeighbours(int chunk, int distance, int firstBit, ArrayList<Integer> neighbours) {
+        neighbours.add(chunk);
+        if (distance == 0) {
+            return;
+        }
+        // flip each later bit in turn, so every combination of flipped bits is only made once
+        for (int bit = firstBit; bit < CHUNK_BITS; bit++) {
+            addNeighbours(chunk ^ (1 << bit), distance - 1, bit + 1, neighbours);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.LegMeat.rbo.Backend;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * IngestionPipeline reads many videos at once. Each video goes through the stages
+ * probe -> keyframe decode -> fingerprint -> index insert, each stage having its own number of worker threads, and
+ * the stages being connected by bounded queues. A full queue blocks the stage in front of it, so only a limited
+ * number of videos are ever held in memory mid-read.
+ *
+ * Videos can finish in any order, but they're always inserted into the index (and returned) in the order they were
+ * given, so the results of a Directory never depend on which ffmpeg call happened to finish first. Only a limited
+ * window of files is let into the pipeline past the oldest one not yet inserted, so a single slow file never has every
+ * later video pile up in memory behind it.
+ */
+public class IngestionPipeline {
+    private final ScanOptions options;
+    private final FingerprintCache cache; // null if videos aren't cached
+    private final JobJournal journal; // null if the job isn't journaled
+    private boolean audioOnly = false; // read the audio of each video instead of its keyframes
+    private AudioCache audioCache = null; // null if audio isn't cached
+
+    /**
+     * A single file travelling through the pipeline
+     */
+    private static final class Item {
+        private final int sequence; // position of the file in the given list
+        private final File file;
+        private Video video;
+        private String error; // set if a stage failed, in which case the later stages skip the item
+        private boolean cached = false; // loaded from the cache, so needs no decoding or fingerprinting
+
+        private Item(int sequence, File file) {
+            this.sequence = sequence;
+            this.file = file;
+        }
+    }
+
+    // Sent down the queues after the last file, to tell each stage to finish
+    private static final Item END = new Item(-1, null);
+
+    public IngestionPipeline(ScanOptions options) {
+        this(options, null);
+    }
+
+    /**
+     * @param cache videos found in the cache skip ffmpeg completely, and newly read videos are added to it
+     */
+    public IngestionPipeline(ScanOptions options, FingerprintCache cache) {
+        this(options, cache, null);
+    }
+
+    /**
+     * @param cache videos found in the cache skip ffmpeg completely, and newly read videos are added to it
+     * @param journal newly read videos are recorded in it as soon as they're inserted (see JobJournal)
+     */
+    public IngestionPipeline(ScanOptions options, FingerprintCache cache, JobJournal journal) {
+        this.options = options;
+        this.cache = cache;
+        this.journal = journal;
+    }
+
+    /**
+     * Makes the decode stage read each video's audio (see Video.readAudio) instead of its keyframes. Audio is cached
+     * in an AudioCache rather than the keyframe cache, so the pipeline should be given no cache or journal.
+     */
+    public void setAudioOnly(boolean audioOnly) {
+        this.audioOnly = audioOnly;
+    }
+
+    /**
+     * @param audioCache when reading audio, videos found in it skip ffmpeg completely, and newly read ones are added
+     */
+    public void setAudioCache(AudioCache audioCache) {
+        this.audioCache = audioCache;
+    }
+
+    /**
+     * Reads all given files and inserts each successfully read video into the index
+     * @param files the video files to read
+     * @param index the index every read video is inserted into
+     * @return the read videos, in the same order as the given files (files which aren't videos are left out)
+     */
+    public ArrayList<Video> run(List<File> files, FingerprintIndex index) {
+        int capacity = options.getQueueCapacity();
+        BlockingQueue<Item> toProbe = new ArrayBlockingQueue<>(capacity);
+        BlockingQueue<Item> toDecode = new ArrayBlockingQueue<>(capacity);
+        BlockingQueue<Item> toFingerprint = new ArrayBlockingQueue<>(capacity);
+        BlockingQueue<Item> toIndex = new ArrayBlockingQueue<>(capacity);
+        ExecutorService workers = Executors.newFixedThreadPool(1 + options.getProbeThreads() +
+                options.getDecodeThreads() + options.getFingerprintThreads());
+        // files let in but not yet inserted: enough to keep every decode and fingerprint worker busy, plus a queue's
+        // worth of finished videos waiting on a slower one
+        Semaphore inFlight = new Semaphore(capacity + options.getDecodeThreads() + options.getFingerprintThreads());
+        AtomicInteger inserted = new AtomicInteger(0); // files before this sequence number are done with
+        // when streaming, keyframes are only matched against videos recorded at around the same time
+        RecordingTimeline streamingTimeline = null;
+        if (!audioOnly && options.isStreaming() && options.isTimelinePruning() && index.getTimeline() == null) {
+            streamingTimeline = new RecordingTimeline(index.getVideos(), options.getTimelineSlack());
+            index.setTimeline(streamingTimeline);
+        }
+        ArrayList<Video> videos = new ArrayList<>();
+        try {
+            // feeder (blocks once the probe queue is full, or too many files are in flight)
+            workers.submit(() -> {
+                try {
+                    for (int i = 0; i < files.size(); i++) {
+                        inFlight.acquire();
+                        toProbe.put(new Item(i, files.get(i)));
+                    }
+                    toProbe.put(END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            startStage(workers, toProbe, toDecode, options.getProbeThreads(), item -> {
+                item.video = new Video(item.file.getName(), item.file.getPath(), options, false);
+                AudioCache.Entry audioEntry = audioOnly && audioCache != null ? audioCache.lookup(item.video) : null;
+                if (audioEntry != null) {
+                    item.video.loadAudioFromCache(audioEntry);
+                    item.cached = true;
+                    Metrics.global().increment(Metrics.Counter.CACHE_HITS);
+                    return;
+                }
+                FingerprintCache.Entry entry = cache == null ? null : cache.lookup(item.video);
+                if (entry == null && journal != null) {
+                    // read by an earlier run of a job which was stopped
+                    entry = journal.lookup(item.video);
+                    if (entry != null && cache != null && !journal.isCut(item.video)) {
+                        cache.put(entry);
+                    }
+                }
+                if (entry != null) {
+                    item.video.loadFromCache(entry);
+                    item.cached = true;
+                    Metrics.global().increment(Metrics.Counter.CACHE_HITS);
+                } else {
+                    try (Metrics.Timer timer = Metrics.global().time(Metrics.Stage.PROBE,
+                            item.file.getAbsolutePath())) {
+                        item.video.probe();
+                    }
+                }
+            });
+            startStage(workers, toDecode, toFingerprint, options.getDecodeThreads(), item -> {
+                if (!item.cached) {
+                    // when streaming, keyframes are matched against the videos before this one as they're read
+                    try (Metrics.Timer timer = Metrics.global().time(Metrics.Stage.DECODE,
+                            item.file.getAbsolutePath())) {
+                        if (audioOnly) {
+                            item.video.readAudio();
+                        } else {
+                            item.video.decode(index, () -> inserted.get() >= item.sequence);
+                        }
+                    }
+                }
+            });
+            startStage(workers, toFingerprint, toIndex, options.getFingerprintThreads(), item -> {
+                if (!item.cached) {
+                    try (Metrics.Timer timer = Metrics.global().time(Metrics.Stage.FINGERPRINT,
+                            item.file.getAbsolutePath())) {
+                        item.video.fingerprintKeyFrames();
+                    }
+                }
+            });
+
+            // index insert stage, run on this thread. Finished videos wait here until every file before them is done.
+            TreeMap<Integer, Item> waiting = new TreeMap<>();
+            int nextSequence = 0;
+            Item item;
+            while ((item = toIndex.take()) != END) {
+                waiting.put(item.sequence, item);
+                while (!waiting.isEmpty() && waiting.firstKey() == nextSequence) {
+                    Item next = waiting.pollFirstEntry().getValue();
+                    nextSequence++;
+                    inFlight.release();
+                    if (next.error == null) {
+                        if (!next.cached) {
+                            next.video.settleStreamedOverlap(index);
+                        }
+                        index.insert(next.video);
+                        if (streamingTimeline != null) {
+                            streamingTimeline.add(next.video);
+                        }
+                        videos.add(next.video);
+                        if ((cache != null || journal != null) && !next.cached) {
+                            FingerprintCache.Entry entry = next.video.toCacheEntry();
+                            if (entry != null && cache != null) {
+                                cache.put(entry);
+                            }
+                            if (entry != null && journal != null) {
+                                journal.recordAnalysis(entry);
+                            }
+                        }
+                        if (audioOnly && audioCache != null && !next.cached) {
+                            AudioCache.Entry entry = next.video.toAudioCacheEntry();
+                            if (entry != null) {
+                                audioCache.put(entry);
+                            }
+                        }
+                        int added = nextSequence;
+                        boolean cached = next.cached;
+                        Log.verbose(() -> "Added video " + added + " out of " + files.size() +
+                                (cached ? " (from cache)." : "."));
+                    } else {
+                        System.out.println("File not added (non-video, unsupported format or corrupt video): " +
+                                next.error);
+                    }
+                    inserted.set(nextSequence);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // workers blocked reading from ffmpeg can't be interrupted, so their processes are killed instead
+            ProcessSupervisor.global().cancelAll();
+            System.out.println("Process cancelled by user.");
+        } finally {
+            workers.shutdownNow();
+        }
+        return videos;
+    }
+
+    /**
+     * Starts the worker threads of one stage. Each worker takes items from the input queue, works on them and passes
+     * them to the output queue. The last worker to see the END marker passes it on to the next stage.
+     */
+    private void startStage(ExecutorService workers, BlockingQueue<Item> input, BlockingQueue<Item> output,
+                            int threads, Consumer<Item> work) {
+        AtomicInteger runningWorkers = new AtomicInteger(threads);
+        for (int i = 0; i < threads; i++) {
+            workers.submit(() -> {
+                try {
+                    Item item;
+                    while ((item = input.take()) != END) {
+                        if (item.error == null) {
+                            try {
+                                work.accept(item);
+                            } catch (Throwable e) {
+                                // errors too (e.g. out of memory), so the item and the END marker are still passed on
+                                item.error = e.getMessage() == null ? e.toString() : e.getMessage();
+                            }
+                        }
+                        output.put(item);
+                    }
+                    // put the marker back so the other workers of this stage also see it
+                    input.put(END);
+                    if (runningWorkers.decrementAndGet() == 0) {
+                        output.put(END);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package com.LegMeat.rbo.Backend;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * JobJournal records the progress of a job as it happens, so a job which was stopped (crashed, cancelled or
+ * switched off) carries on where it stopped instead of starting over. It records what was read from each video,
+ * the cut plan (which video each video is cut against, and where), and each cut once it's done.
+ *
+ * The journal is only ever appended to, one record at a time, and each record is flushed as soon as it's written:
+ * <pre>
+ * header:  magic "RBODJN01", settings (UTF-8, short length prefixed)
+ * record:  type (byte), payload length (int), payload, CRC32 of the payload (int)
+ * ANALYSIS payload:  a FingerprintCache entry
+ * PLAN payload:      video count (int), then per video: path, lead path ("" if none), lead timestamp (double),
+ *                    secondary timestamp (double)
+ * INTENT payload:    path, size (long) and last modified (long) of the video before its cut, last modified (long)
+ *                    it will have after the cut
+ * CUT payload:       path, result, size (long) and last modified (long) of the video after the cut
+ * </pre>
+ * A record cut short by a crash fails its length or checksum, and is dropped along with anything after it.
+ *
+ * A video cut in place is replaced before its CUT record can be written, so an INTENT record is written before the
+ * cut starts. If the job stops in between, a video which no longer looks like it did before its cut, but has the
+ * last modified time its cut gives it, was replaced by its cut and isn't cut (or read) again.
+ */
+public class JobJournal {
+    private static final byte[] MAGIC = "RBODJN01".getBytes(StandardCharsets.US_ASCII);
+    public static final String JOURNAL_EXTENSION = ".rbod-journal";
+
+    private static final byte ANALYSIS = 1;
+    private static final byte PLAN = 2;
+    private static final byte CUT = 3;
+    private static final byte INTENT = 4;
+
+    private final File journalFile;
+    private final String settings;
+    private final LinkedHashMap<String, FingerprintCache.Entry> analyses = new LinkedHashMap<>();
+    private final LinkedHashMap<String, PlannedCut> plan = new LinkedHashMap<>(); // empty until a plan is recorded
+    private final HashMap<String, FingerprintCache.Entry> cuts = new HashMap<>(); // path -> the video after its cut
+    private final HashMap<String, CutIntent> intents = new HashMap<>(); // path -> cut started in place
+    private DataOutputStream out = null; // opened by the first record written
+
+    /**
+     * Where a single video is cut, as decided by the plan
+     */
+    public static final class PlannedCut {
+        private final String leadPath; // null if the video isn't cut
+        private final double leadTimestamp;
+        private final double secondaryTimestamp;
+
+        private PlannedCut(String leadPath, double leadTimestamp, double secondaryTimestamp) {
+            this.leadPath = leadPath;
+            this.leadTimestamp = leadTimestamp;
+            this.secondaryTimestamp = secondaryTimestamp;
+        }
+
+        public String getLeadPath() {
+            return leadPath;
+        }
+
+        public double getLeadTimestamp() {
+            return leadTimestamp;
+        }
+
+        public double getSecondaryTimestamp() {
+            return secondaryTimestamp;
+        }
+    }
+
+    /**
+     * A video about to be replaced by its cut
+     */
+    private static final class CutIntent {
+        private final long size;
+        private final long lastModified;
+        private final long cutLastModified; // the cut keeps the original's last modified time (see Video.streamCopy)
+
+        private CutIntent(long size, long lastModified, long cutLastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.cutLastModified = cutLastModified;
+        }
+
+        /**
+         * Whether the file has been replaced by its cut
+         */
+        private boolean isDone(File file) {
+            boolean unchanged = file.length() == size && file.lastModified() == lastModified;
+            return file.isFile() && !unchanged && file.lastModified() == cutLastModified;
+        }
+    }
+
+    /**
+     * @param journalFile where the journal is kept
+     * @param settings description of how the fingerprints are made. A journal made with other settings is discarded.
+     */
+    public JobJournal(File journalFile, String settings) {
+        this.journalFile = journalFile;
+        this.settings = settings;
+    }
+
+    /**
+     * Journal file used for a folder, kept next to its fingerprint cache (see FingerprintCache.cacheFileFor)
+     */
+    public static File journalFileFor(File folder, File cacheDirectory) {
+        return FingerprintCache.fileFor(folder, cacheDirectory, JOURNAL_EXTENSION);
+    }
+
+    public File getJournalFile() {
+        return journalFile;
+    }
+
+    /**
+     * Reads the journal of a previous run, if there is one. A journal made with other settings is discarded, and a
+     * damaged tail is cut off so new records follow straight on from the last complete one.
+     */
+    public synchronized void load() {
+        if (!journalFile.isFile()) {
+            return;
+        }
+        try {
+            // read onto the heap rather than mapped, so the file can still be truncated afterwards
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(journalFile.toPath()));
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || !settings.equals(FingerprintCache.readString(buffer))) {
+                System.out.println("Job journal was made differently and will be discarded.");
+                Files.delete(journalFile.toPath());
+                return;
+            }
+            long validLength = buffer.position();
+            while (buffer.remaining() >= 5) {
+                byte type = buffer.get();
+                int length = buffer.getInt();
+                if (length < 0 || buffer.remaining() < length + 4) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if (buffer.getInt() != (int) crc.getValue()) {
+                    break;
+                }
+                readRecord(type, ByteBuffer.wrap(payload));
+                validLength = buffer.position();
+            }
+            if (validLength < buffer.limit()) {
+                System.out.println("Job journal ends in an incomplete record, which was dropped.");
+                try (FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE)) {
+                    channel.truncate(validLength);
+                }
+            }
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            System.out.println("Job journal could not be read and will be discarded.");
+            analyses.clear();
+            plan.clear();
+            cuts.clear();
+            intents.clear();
+            try {
+                Files.deleteIfExists(journalFile.toPath());
+            } catch (IOException ignored) {
+                // the next record written replaces it anyway
+            }
+        }
+    }
+
+    private void readRecord(byte type, ByteBuffer payload) {
+        if (type == ANALYSIS) {
+            FingerprintCache.Entry entry = FingerprintCache.readEntry(payload);
+            analyses.put(entry.getPath(), entry);
+        } else if (type == PLAN) {
+            // a later plan replaces an earlier one
+            plan.clear();
+            int count = payload.getInt();
+            for (int i = 0; i < count; i++) {
+                String path = FingerprintCache.readString(payload);
+                String leadPath = FingerprintCache.readString(payload);
+                double leadTimestamp = payload.getDouble();
+                double secondaryTimestamp = payload.getDouble();
+                plan.put(path, new PlannedCut(leadPath.isEmpty() ? null : leadPath, leadTimestamp,
+                        secondaryTimestamp));
+            }
+        } else if (type == CUT) {
+            String path = FingerprintCache.readString(payload);
+            FingerprintCache.readString(payload); // result, only kept for people reading the journal
+            long size = payload.getLong();
+            long lastModified = payload.getLong();
+            cuts.put(path, new FingerprintCache.Entry(path, size, lastModified, 0, new long[0], new double[0],
+                    new long[0]));
+        } else if (type == INTENT) {
+            String path = FingerprintCache.readString(payload);
+            intents.put(path, new CutIntent(payload.getLong(), payload.getLong(), payload.getLong()));
+        }
+    }
+
+    /**
+     * @return what was read from a file in an earlier run, or null if it wasn't read (or has since been modified).
+     * A video overwritten by its cut is still found, under its size and last modified time after the cut, so it isn't
+     * mistaken for a new video and read again. That includes a video replaced just before the job stopped, whose cut
+     * was never recorded.
+     */
+    public synchronized FingerprintCache.Entry lookup(File file) {
+        FingerprintCache.Entry entry = analyses.get(file.getAbsolutePath());
+        if (entry == null) {
+            return null;
+        }
+        FingerprintCache.Entry cut = cuts.get(entry.getPath());
+        if (cut != null && cut.matches(file)) {
+            return entry.withFileState(cut.getSize(), cut.getLastModified());
+        }
+        CutIntent intent = intents.get(entry.getPath());
+        if (intent != null && intent.isDone(file)) {
+            return entry.withFileState(file.length(), file.lastModified());
+        }
+        return entry.matches(file) ? entry : null;
+    }
+
+    public synchronized int getAnalysisCount() {
+        return analyses.size();
+    }
+
+    /**
+     * Whether a plan was recorded for exactly the given videos (a plan for other videos is out of date)
+     */
+    public synchronized boolean hasPlanFor(List<Video> videos) {
+        if (plan.isEmpty() || plan.size() != videos.size()) {
+            return false;
+        }
+        for (Video video : videos) {
+            if (!plan.containsKey(video.getAbsolutePath())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the planned cut of a video, or null if it isn't in the plan
+     */
+    public synchronized PlannedCut getPlannedCut(Video video) {
+        return plan.get(video.getAbsolutePath());
+    }
+
+    /**
+     * Whether the video's cut was finished in an earlier run (and the video hasn't been modified since), including a
+     * video replaced by its cut before the cut could be recorded
+     */
+    public synchronized boolean isCut(Video video) {
+        FingerprintCache.Entry cut = cuts.get(video.getAbsolutePath());
+        if (cut != null) {
+            return cut.matches(video);
+        }
+        CutIntent intent = intents.get(video.getAbsolutePath());
+        return intent != null && intent.isDone(video);
+    }
+
+    public synchronized boolean hasCuts() {
+        return !cuts.isEmpty() || !intents.isEmpty();
+    }
+
+    /**
+     * Records what was read from a video
+     */
+    public synchronized void recordAnalysis(FingerprintCache.Entry entry) {
+        append(ANALYSIS, payload -> FingerprintCache.writeEntry(payload, entry));
+        analyses.put(entry.getPath(), entry);
+    }
+
+    /**
+     * Records the cut plan of every video
+     * @param leadOverlaps the overlap each lead video is cut against
+     */
+    public synchronized void recordPlan(List<Video> videos, Map<Video, Overlap> leadOverlaps) {
+        HashMap<Video, Overlap> overlapOf = new HashMap<>(); // secondary video -> the overlap it's cut against
+        for (Overlap overlap : leadOverlaps.values()) {
+            Video secondary = overlap.getSecondaryVideo();
+            if (overlap.getLeadVideo().getSecondaryVideo() == secondary &&
+                    secondary.getCutPoint() == overlap.getCutPoint()) {
+                overlapOf.put(secondary, overlap);
+            }
+        }
+        plan.clear();
+        for (Video video : videos) {
+            Overlap overlap = overlapOf.get(video);
+            plan.put(video.getAbsolutePath(), overlap == null ? new PlannedCut(null, 0, 0) :
+                    new PlannedCut(overlap.getLeadVideo().getAbsolutePath(), overlap.getLeadTimestamp(),
+                            overlap.getSecondaryTimestamp()));
+        }
+        append(PLAN, payload -> {
+            payload.writeInt(plan.size());
+            for (Map.Entry<String, PlannedCut> planned : plan.entrySet()) {
+                PlannedCut cut = planned.getValue();
+                FingerprintCache.writeString(payload, planned.getKey());
+                FingerprintCache.writeString(payload, cut.getLeadPath() == null ? "" : cut.getLeadPath());
+                payload.writeDouble(cut.getLeadTimestamp());
+                payload.writeDouble(cut.getSecondaryTimestamp());
+            }
+        });
+    }
+
+    /**
+     * Records that a video is about to be replaced by its cut, before anything is written over it
+     */
+    public synchronized void recordCutIntent(Video video) {
+        String path = video.getAbsolutePath();
+        long size = video.length();
+        long lastModified = video.lastModified();
+        append(INTENT, payload -> {
+            FingerprintCache.writeString(payload, path);
+            payload.writeLong(size);
+            payload.writeLong(lastModified);
+            payload.writeLong(lastModified);
+        });
+        intents.put(path, new CutIntent(size, lastModified, lastModified));
+    }
+
+    /**
+     * Records a finished cut, along with the size and last modified time of the video afterwards
+     */
+    public synchronized void recordCut(CutReport report) {
+        Video video = report.getVideo();
+        String path = video.getAbsolutePath();
+        long size = video.length();
+        long lastModified = video.lastModified();
+        append(CUT, payload -> {
+            FingerprintCache.writeString(payload, path);
+            FingerprintCache.writeString(payload, report.getResult().name());
+            payload.writeLong(size);
+            payload.writeLong(lastModified);
+        });
+        cuts.put(path, new FingerprintCache.Entry(path, size, lastModified, 0, new long[0], new double[0],
+                new long[0]));
+    }
+
+    /**
+     * Deletes the journal once its job is complete, so the next run starts afresh
+     */
+    public synchronized void delete() {
+        close();
+        analyses.clear();
+        plan.clear();
+        cuts.clear();
+        intents.clear();
+        try {
+            Files.deleteIfExists(journalFile.toPath());
+        } catch (IOException e) {
+            System.out.println("Could not delete job journal: " + e.getMessage());
+        }
+    }
+
+    public synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // every record was already flushed
+            }
+            out = null;
+        }
+    }
+
+    private interface PayloadWriter {
+        void write(DataOutputStream payload) throws IOException;
+    }
+
+    /**
+     * Appends a single record and flushes it. A journal which can't be written only costs the ability to resume,
+     * so the job itself carries on.
+     */
+    private void append(byte type, PayloadWriter writer) {
+        try {
+            if (out == null) {
+                boolean isNew = !journalFile.isFile() || journalFile.length() == 0;
+                if (journalFile.getAbsoluteFile().getParentFile() != null) {
+                    Files.createDirectories(journalFile.getAbsoluteFile().getParentFile().toPath());
+                }
+                out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(journalFile.toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+                if (isNew) {
+                    out.write(MAGIC);
+                    FingerprintCache.writeString(out, settings);
+                }
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            writer.write(new DataOutputStream(bytes));
+            byte[] payload = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            out.writeByte(type);
+            out.writeInt(payload.length);
+            out.write(payload);
+            out.writeInt((int) crc.getValue());
+            out.flush();
+        } catch (IOException e) {
+            System.out.println("Could not write job journal: " + e.getMessage());
+        }
+    }
+}
@@ -1,25 +1,65 @@
 package com.LegMeat.rbo.Backend;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
 
+/**
+ * KeyFrame is a single keyframe of a video: its id, timestamp and fingerprint, and its image. A compactly stored
+ * keyframe (see KeyFrameStore) is only a view of its slot in the store, so its id, timestamp and fingerprint are read
+ * from the store's arrays rather than copied into the keyframe.
+ */
 public class KeyFrame {
-    private long id;
+    // when true, frames with matching fingerprints are also compared pixel by pixel before being called equal
+    private static boolean pixelConfirmation = false;
+    private static double pixelTolerance = 0; // mean difference per sample confirmed frames may have (0 = identical)
+    private long id; // unused for stored keyframes, like timestamp and fingerprint
     private Double timestamp;
     private BufferedImage keyframeData;
+    private long fingerprint; // perceptual hash of keyframeData, computed once (on first use)
+    private boolean fingerprinted = false;
+    private KeyFrameStore store = null; // where the keyframe's thumbnail is kept, if it's compactly stored
+    private int storeIndex;
+
+    public static boolean isPixelConfirmation() {
+        return pixelConfirmation;
+    }
+
+    public static void setPixelConfirmation(boolean pixelConfirmation) {
+        KeyFrame.pixelConfirmation = pixelConfirmation;
+    }
+
+    public static double getPixelTolerance() {
+        return pixelTolerance;
+    }
+
+    /**
+     * Lets pixel confirmation accept frames whose samples differ by at most the given amount on average (0 to 255),
+     * e.g. frames of the same moment encoded twice
+     */
+    public static void setPixelTolerance(double pixelTolerance) {
+        KeyFrame.pixelTolerance = Math.max(0, pixelTolerance);
+    }
 
     public long getId() {
-        return id;
+        return store == null ? id : store.getId(storeIndex);
     }
 
+    /**
+     * Only for keyframes which aren't stored in a KeyFrameStore
+     */
     public void setId(int id) {
         this.id = id;
     }
 
     public Double getTimestamp() {
-        return timestamp;
+        return store == null ? timestamp : store.getTimestamp(storeIndex);
     }
 
+    /**
+     * Only for keyframes which aren't stored in a KeyFrameStore
+     */
     public void setTimestamp(Double timestamp) {
         this.timestamp = timestamp;
     }
@@ -30,33 +70,155 @@ public class KeyFrame {
 
      public void setKeyframeData(BufferedImage keyframeData) {
          this.keyframeData = keyframeData;
+         this.fingerprinted = false;
      }
 
+    public long getFingerprint() {
+        if (store != null) {
+            return store.getFingerprint(storeIndex);
+        }
+        if (!fingerprinted) {
+            fingerprint = Fingerprint.dHash(keyframeData);
+            fingerprinted = true;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Two keyframes are equal when their fingerprints are. Only if pixel confirmation is switched on do we fall back
+     * to the (very slow) full pixel comparison, and then only for frames whose fingerprints already match.
+     */
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof KeyFrame)) {
             return false;
         } else {
-            BufferedImage frameOne = this.getKeyframeData();
-            BufferedImage frameTwo = ((KeyFrame) obj).getKeyframeData();
-            if (frameOne.getWidth() == frameTwo.getWidth() && frameOne.getHeight() == frameTwo.getHeight()) {
-                for (int x = 0; x < frameOne.getWidth(); x++) {
-                    for (int y = 0; y < frameOne.getHeight(); y++) {
-                        if (frameOne.getRGB(x, y) != frameTwo.getRGB(x, y)) {
-                            return false;
-                        }
-                    }
+            KeyFrame other = (KeyFrame) obj;
+            if (this.getFingerprint() != other.getFingerprint()) {
+                return false;
+            }
+            if (!pixelConfirmation) {
+                return true;
+            }
+            // compactly stored frames are confirmed by their thumbnails
+            if (store != null && other.store != null) {
+                return store.thumbnailMatches(storeIndex, other.store, other.storeIndex, pixelTolerance);
+            }
+            // frames loaded from a FingerprintCache have no pixels to confirm with, so the fingerprint has to do
+            if (keyframeData == null || other.getKeyframeData() == null) {
+                return true;
+            }
+            return pixelMatches(other, pixelTolerance);
+        }
+    }
+
+    /**
+     * Grayscale thumbnail of a compactly stored keyframe, or null if the keyframe isn't stored in a KeyFrameStore
+     */
+    public BufferedImage getThumbnail() {
+        return store == null ? null : store.getThumbnail(storeIndex);
+    }
+
+    /**
+     * Whether the keyframe shows next to nothing (e.g. a black frame), so can't tell where in a recording it is (see
+     * Fingerprint.setLowInformationThreshold)
+     */
+    public boolean isLowInformation() {
+        return getFingerprint() == Fingerprint.LOW_INFORMATION;
+    }
+
+    /**
+     * Whether two keyframes are the same frame, allowing their fingerprints to differ by a few bits (two recordings
+     * of the same moment are rarely bit-identical). Near matches aren't confirmed by pixels, as their pixels differ.
+     * Low-information keyframes never match.
+     * @param maxDistance largest number of bits the fingerprints may differ by (0 is the same as equals)
+     */
+    public boolean matches(KeyFrame other, int maxDistance) {
+        if (this.isLowInformation() || other.isLowInformation()) {
+            return false;
+        }
+        if (maxDistance <= 0 || this.getFingerprint() == other.getFingerprint()) {
+            return equals(other);
+        }
+        return Fingerprint.hammingDistance(this.getFingerprint(), other.getFingerprint()) <= maxDistance;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(getFingerprint());
+    }
+
+    /**
+     * Exact comparison of every pixel of both frames. Used as an optional confirmation step after the fingerprints
+     * match.
+     */
+    public boolean pixelEquals(KeyFrame other) {
+        return pixelMatches(other, 0);
+    }
+
+    /**
+     * Compares every pixel of both frames, allowing each sample to be off by the given amount on average. Frames
+     * whose samples are packed bytes (as ffmpeg's frames are) are compared straight from their rasters by a
+     * FrameDistance kernel, which stops as soon as the frames are too far apart.
+     * @param tolerance mean absolute difference allowed per sample (0 to 255)
+     */
+    public boolean pixelMatches(KeyFrame other, double tolerance) {
+        BufferedImage frameOne = this.getKeyframeData();
+        BufferedImage frameTwo = other.getKeyframeData();
+        if (frameOne.getWidth() != frameTwo.getWidth() || frameOne.getHeight() != frameTwo.getHeight()) {
+            return false;
+        }
+        byte[] samplesOne = packedSamples(frameOne);
+        byte[] samplesTwo = packedSamples(frameTwo);
+        if (samplesOne != null && samplesTwo != null && frameOne.getType() == frameTwo.getType() &&
+                samplesOne.length == samplesTwo.length) {
+            long limit = (long) (tolerance * samplesOne.length);
+            return FrameDistance.sad(samplesOne, samplesTwo, limit) <= limit;
+        }
+        // any other image type goes through the (slow) colour model, row by row
+        int width = frameOne.getWidth();
+        int[] rowOne = new int[width];
+        int[] rowTwo = new int[width];
+        long limit = (long) (tolerance * width * frameOne.getHeight() * 3);
+        long distance = 0;
+        for (int y = 0; y < frameOne.getHeight(); y++) {
+            frameOne.getRGB(0, y, width, 1, rowOne, 0, width);
+            frameTwo.getRGB(0, y, width, 1, rowTwo, 0, width);
+            if (limit == 0) {
+                if (!Arrays.equals(rowOne, rowTwo)) {
+                    return false;
                 }
-            } else {
+                continue;
+            }
+            for (int x = 0; x < width; x++) {
+                for (int shift = 0; shift < 24; shift += 8) {
+                    distance += Math.abs((rowOne[x] >> shift & 0xFF) - (rowTwo[x] >> shift & 0xFF));
+                }
+            }
+            if (distance > limit) {
                 return false;
             }
-            return true;
         }
+        return true;
+    }
+
+    /**
+     * The samples of an image whose pixels are packed bytes (8-bit gray or 24-bit colour), or null otherwise
+     */
+    private static byte[] packedSamples(BufferedImage image) {
+        int type = image.getType();
+        if ((type == BufferedImage.TYPE_BYTE_GRAY || type == BufferedImage.TYPE_3BYTE_BGR) &&
+                image.getRaster().getDataBuffer() instanceof DataBufferByte &&
+                image.getRaster().getDataBuffer().getNumBanks() == 1 && image.getRaster().getParent() == null) {
+            return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        }
+        return null;
     }
 
     @Override
     public String toString() {
-        return "KeyFrame: " + id + " timestamp: " + timestamp + " Buffered Image: " + keyframeData;
+        return "KeyFrame: " + getId() + " timestamp: " + getTimestamp() + " fingerprint: " + Long.toHexString(getFingerprint()) +
+                " Buffered Image: " + keyframeData;
     }
 
     public KeyFrame(Double timestamp, BufferedImage keyframeData, long id) {
@@ -64,4 +226,23 @@ public class KeyFrame {
         this.keyframeData = keyframeData;
         this.id = id;
     }
+
+    /**
+     * Creates a keyframe of which only the fingerprint is known (e.g. one loaded from a FingerprintCache)
+     */
+    public KeyFrame(Double timestamp, long fingerprint, long id) {
+        this.timestamp = timestamp;
+        this.fingerprint = fingerprint;
+        this.fingerprinted = true;
+        this.id = id;
+    }
+
+    /**
+     * Creates a view of a keyframe kept in a KeyFrameStore. Nothing is copied out of the store, and only the
+     * thumbnail of its image is available.
+     */
+    public KeyFrame(KeyFrameStore store, int index) {
+        this.store = store;
+        this.storeIndex = index;
+    }
 }
@@ -0,0 +1,182 @@
+package com.LegMeat.rbo.Backend;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * KeyFrameStore keeps the keyframes of a single video in a compact, packed form: ids, timestamps and fingerprints in
+ * primitive arrays (one array per field rather than one object per keyframe), and a small grayscale thumbnail of each
+ * keyframe packed one after another in a single off-heap buffer.
+ *
+ * A full resolution keyframe is only held while it's being added, so the memory used by a video grows with the size
+ * of the thumbnails rather than the resolution of the video. See ScanOptions.setCompactStorage.
+ */
+public class KeyFrameStore {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int thumbnailWidth;
+    private final int thumbnailHeight;
+    private final int thumbnailBytes; // size of a single thumbnail
+    private int size = 0;
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private double[] timestamps = new double[INITIAL_CAPACITY];
+    private long[] fingerprints = new long[INITIAL_CAPACITY];
+    private ByteBuffer thumbnails;
+
+    public KeyFrameStore(int thumbnailWidth, int thumbnailHeight) {
+        this.thumbnailWidth = thumbnailWidth;
+        this.thumbnailHeight = thumbnailHeight;
+        this.thumbnailBytes = thumbnailWidth * thumbnailHeight;
+        this.thumbnails = ByteBuffer.allocateDirect(INITIAL_CAPACITY * thumbnailBytes);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getThumbnailWidth() {
+        return thumbnailWidth;
+    }
+
+    public int getThumbnailHeight() {
+        return thumbnailHeight;
+    }
+
+    public long getId(int index) {
+        return ids[index];
+    }
+
+    public double getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    public long getFingerprint(int index) {
+        return fingerprints[index];
+    }
+
+    /**
+     * Bytes held by the store (arrays and thumbnails)
+     */
+    public long getMemoryUsage() {
+        return (long) ids.length * (Long.BYTES * 2 + Double.BYTES) + thumbnails.capacity();
+    }
+
+    /**
+     * Adds a keyframe. Its fingerprint is computed from the full image, then only a thumbnail of it is kept.
+     * @return index of the keyframe in the store
+     */
+    public int add(double timestamp, long id, BufferedImage image) {
+        if (size == ids.length) {
+            grow(size * 2);
+        }
+        ids[size] = id;
+        timestamps[size] = timestamp;
+        fingerprints[size] = Fingerprint.dHash(image);
+        writeThumbnail(image, size * thumbnailBytes);
+        return size++;
+    }
+
+    /**
+     * Whether two stored keyframes have exactly the same thumbnail
+     */
+    public boolean thumbnailEquals(int index, KeyFrameStore other, int otherIndex) {
+        return thumbnailMatches(index, other, otherIndex, 0);
+    }
+
+    /**
+     * Whether two stored thumbnails are the same, allowing each pixel to be off by the given amount on average
+     * @param tolerance mean absolute difference allowed per pixel (0 to 255)
+     */
+    public boolean thumbnailMatches(int index, KeyFrameStore other, int otherIndex, double tolerance) {
+        if (thumbnailWidth != other.thumbnailWidth || thumbnailHeight != other.thumbnailHeight) {
+            return false;
+        }
+        long limit = (long) (tolerance * thumbnailBytes);
+        return FrameDistance.sad(thumbnails, index * thumbnailBytes, other.thumbnails, otherIndex * thumbnailBytes,
+                thumbnailBytes, limit) <= limit;
+    }
+
+    /**
+     * Copies a stored thumbnail into a grayscale image
+     */
+    public BufferedImage getThumbnail(int index) {
+        BufferedImage image = new BufferedImage(thumbnailWidth, thumbnailHeight, BufferedImage.TYPE_BYTE_GRAY);
+        thumbnailSlice(index).get(((DataBufferByte) image.getRaster().getDataBuffer()).getData());
+        return image;
+    }
+
+    /**
+     * Frees the space reserved for keyframes which were never added. Called once a video has been read.
+     */
+    public void trimToSize() {
+        if (size < ids.length) {
+            grow(size);
+        }
+    }
+
+    private ByteBuffer thumbnailSlice(int index) {
+        return thumbnails.slice(index * thumbnailBytes, thumbnailBytes);
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        fingerprints = Arrays.copyOf(fingerprints, capacity);
+        ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(1, capacity * thumbnailBytes));
+        grown.put(thumbnails.slice(0, size * thumbnailBytes));
+        thumbnails = grown;
+    }
+
+    /**
+     * Shrinks the image to the thumbnail size (each thumbnail pixel being the average brightness of the pixels it
+     * covers), writing it to the thumbnail buffer. Every pixel of the image is read once, a row at a time.
+     */
+    private void writeThumbnail(BufferedImage image, int offset) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long[] sums = new long[thumbnailBytes];
+        int[] counts = new int[thumbnailBytes];
+        int[] cellOfColumn = new int[width];
+        for (int x = 0; x < width; x++) {
+            cellOfColumn[x] = (int) ((long) x * thumbnailWidth / width);
+        }
+        byte[] pixels = null;
+        int bytesPerPixel = 0;
+        if (image.getRaster().getParent() == null && image.getRaster().getDataBuffer() instanceof DataBufferByte) {
+            if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+                bytesPerPixel = 1;
+            } else if (image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+                bytesPerPixel = 3;
+            }
+            pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        }
+        int[] row = bytesPerPixel == 0 ? new int[width] : null;
+        for (int y = 0; y < height; y++) {
+            int rowCell = (int) ((long) y * thumbnailHeight / height) * thumbnailWidth;
+            if (bytesPerPixel == 0) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+            }
+            int pixel = y * width * bytesPerPixel;
+            for (int x = 0; x < width; x++) {
+                int cell = rowCell + cellOfColumn[x];
+                if (bytesPerPixel == 1) {
+                    sums[cell] += pixels[pixel] & 0xFF;
+                } else if (bytesPerPixel == 3) {
+                    int b = pixels[pixel] & 0xFF;
+                    int g = pixels[pixel + 1] & 0xFF;
+                    int r = pixels[pixel + 2] & 0xFF;
+                    sums[cell] += (r * 299 + g * 587 + b * 114) / 1000;
+                } else {
+                    sums[cell] += Fingerprint.luma(row[x]);
+                }
+                counts[cell]++;
+                pixel += bytesPerPixel;
+            }
+        }
+        for (int cell = 0; cell < thumbnailBytes; cell++) {
+            thumbnails.put(offset + cell, (byte) (counts[cell] == 0 ? 0 : sums[cell] / counts[cell]));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.LegMeat.rbo.Backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * LibraryScanner finds every video in a folder, and optionally in every folder beneath it. Folders are listed in
+ * parallel, and files are filtered cheaply (first by extension, then by the first few bytes of the file) so ffprobe
+ * and ffmpeg are only ever run on files which really look like videos.
+ */
+public class LibraryScanner {
+    private final int threads;
+    private final AtomicInteger skippedFiles = new AtomicInteger();
+
+    /**
+     * @param threads folders listed (and files checked) at once
+     */
+    public LibraryScanner(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Finds the videos in a folder
+     * @param recursive whether to look through every folder beneath it too (symbolic links aren't followed)
+     * @return the videos, sorted by path so the order never depends on which folder was listed first
+     */
+    public ArrayList<File> scan(File root, boolean recursive) {
+        skippedFiles.set(0);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            ArrayList<File> videos = pool.invoke(new FolderScan(root, recursive));
+            videos.sort(Comparator.comparing(File::getPath));
+            return videos;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Number of files the last scan skipped (not videos, or not a supported format)
+     */
+    public int getSkippedFiles() {
+        return skippedFiles.get();
+    }
+
+    /**
+     * Whether a file looks like a supported video, going by its extension and first few bytes
+     */
+    public static boolean isVideo(File file) {
+        FileType fileType = FileType.fromFileName(file.getName());
+        if (fileType == null || !file.isFile()) {
+            return false;
+        }
+        byte[] header = new byte[FileType.HEADER_LENGTH];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int length = in.readNBytes(header, 0, header.length);
+            return fileType.matchesHeader(header, length);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Lists a single folder, forking a scan of each folder inside it
+     */
+    private final class FolderScan extends RecursiveTask<ArrayList<File>> {
+        private final File folder;
+        private final boolean recursive;
+
+        private FolderScan(File folder, boolean recursive) {
+            this.folder = folder;
+            this.recursive = recursive;
+        }
+
+        @Override
+        protected ArrayList<File> compute() {
+            ArrayList<File> videos = new ArrayList<>();
+            File[] children = folder.listFiles();
+            if (children == null) {
+                return videos;
+            }
+            List<FolderScan> subfolders = new ArrayList<>();
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    if (recursive && !Files.isSymbolicLink(child.toPath())) {
+                        FolderScan scan = new FolderScan(child, true);
+                        scan.fork();
+                        subfolders.add(scan);
+                    }
+                } else if (isVideo(child)) {
+                    videos.add(child);
+                } else {
+                    skippedFiles.incrementAndGet();
+                    Log.verbose(() -> "Skipped " + child.getPath() + " (not a supported video).");
+                }
+            }
+            for (FolderScan scan : subfolders) {
+                videos.addAll(scan.join());
+            }
+            return videos;
+        }
+    }
+}
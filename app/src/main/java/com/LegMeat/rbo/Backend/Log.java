@@ -0,0 +1,32 @@
+package com.LegMeat.rbo.Backend;
+
+import java.util.function.Supplier;
+
+/**
+ * Log decides what's printed to the console. Per-frame and per-comparison messages are only printed (or even built)
+ * when verbose logging is switched on, keeping them off the hot paths otherwise.
+ */
+public final class Log {
+    private static volatile boolean verbose = false;
+
+    private Log() {
+    }
+
+    public static boolean isVerbose() {
+        return verbose;
+    }
+
+    public static void setVerbose(boolean verbose) {
+        Log.verbose = verbose;
+    }
+
+    /**
+     * Prints a detailed message, only if verbose logging is on
+     * @param message builds the message (not called at all otherwise)
+     */
+    public static void verbose(Supplier<String> message) {
+        if (verbose) {
+            System.out.println(message.get());
+        }
+    }
+}
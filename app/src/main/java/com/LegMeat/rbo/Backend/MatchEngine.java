@@ -0,0 +1,17 @@
+package com.LegMeat.rbo.Backend;
+
+/**
+ * MatchEngine dictates how overlapping videos are found
+ */
+public enum MatchEngine {
+    KEYFRAMES, // match the fingerprints of decoded keyframes (see FingerprintIndex)
+    AUDIO, // only match the audio tracks, decoding no video at all (see AudioIndex)
+    AUDIO_PREFILTER; // match the audio tracks first, then only decode and match the keyframes of videos which overlap
+
+    /**
+     * Whether the audio of every video is read
+     */
+    public boolean usesAudio() {
+        return this != KEYFRAMES;
+    }
+}
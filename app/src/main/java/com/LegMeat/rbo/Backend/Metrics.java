@@ -0,0 +1,169 @@
+package com.LegMeat.rbo.Backend;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics gathers timers and counters for a run: how long each stage took (in total and per file), and counts such
+ * as frames decoded or processes spawned. Every stage is also recorded as a JFR event (see StageEvent). Recording is
+ * cheap and thread safe, so it's always on.
+ */
+public class Metrics {
+    private static final Metrics GLOBAL = new Metrics();
+
+    /**
+     * What a video goes through during a run
+     */
+    public enum Stage {
+        PROBE,
+        DECODE,
+        FINGERPRINT,
+        MATCH,
+        CUT;
+    }
+
+    /**
+     * Things counted during a run
+     */
+    public enum Counter {
+        FRAMES_DECODED,
+        CORRUPTED_FRAMES,
+        BYTES_SKIPPED, // non-image bytes skipped in PNG pipes
+        PROCESSES_SPAWNED,
+        CACHE_HITS;
+    }
+
+    private final LongAdder[] stageNanos = newAdders(Stage.values().length);
+    private final LongAdder[] counters = newAdders(Counter.values().length);
+    private final ConcurrentHashMap<String, long[]> fileNanos = new ConcurrentHashMap<>();
+
+    /**
+     * Times a stage of a single file, keyed by its absolute path so files of the same name in different folders are
+     * kept apart. Use with try-with-resources.
+     */
+    public final class Timer implements AutoCloseable {
+        private final Stage stage;
+        private final String file;
+        private final long start = System.nanoTime();
+        private final StageEvent event = new StageEvent();
+
+        private Timer(Stage stage, String file) {
+            this.stage = stage;
+            this.file = file;
+            event.begin();
+        }
+
+        @Override
+        public void close() {
+            long nanos = System.nanoTime() - start;
+            stageNanos[stage.ordinal()].add(nanos);
+            long[] perStage = fileNanos.computeIfAbsent(file, k -> new long[Stage.values().length]);
+            synchronized (perStage) {
+                perStage[stage.ordinal()] += nanos;
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.stage = stage.name();
+                event.file = file;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Metrics of the whole program
+     */
+    public static Metrics global() {
+        return GLOBAL;
+    }
+
+    public Timer time(Stage stage, String file) {
+        return new Timer(stage, file);
+    }
+
+    public void increment(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    public void add(Counter counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+    }
+
+    public long getCount(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    /**
+     * Total time spent in a stage, across every file (and thread)
+     */
+    public long getNanos(Stage stage) {
+        return stageNanos[stage.ordinal()].sum();
+    }
+
+    /**
+     * Time spent on a single file in a stage
+     */
+    public long getNanos(String file, Stage stage) {
+        long[] perStage = fileNanos.get(file);
+        if (perStage == null) {
+            return 0;
+        }
+        synchronized (perStage) {
+            return perStage[stage.ordinal()];
+        }
+    }
+
+    /**
+     * Keyframes decoded per second of decode stage time
+     */
+    public double getFramesPerSecond() {
+        long nanos = getNanos(Stage.DECODE);
+        return nanos == 0 ? 0 : getCount(Counter.FRAMES_DECODED) / (nanos / 1e9);
+    }
+
+    public void reset() {
+        for (LongAdder adder : stageNanos) {
+            adder.reset();
+        }
+        for (LongAdder adder : counters) {
+            adder.reset();
+        }
+        fileNanos.clear();
+    }
+
+    /**
+     * End of run summary: total time of each stage, counters, and the slowest file of each stage
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder("Run summary:");
+        for (Stage stage : Stage.values()) {
+            summary.append(String.format("%n  %-12s %10.1f ms", stage, getNanos(stage) / 1e6));
+            String slowestFile = null;
+            long slowestNanos = 0;
+            for (Map.Entry<String, long[]> entry : fileNanos.entrySet()) {
+                long nanos = getNanos(entry.getKey(), stage);
+                if (nanos > slowestNanos) {
+                    slowestNanos = nanos;
+                    slowestFile = entry.getKey();
+                }
+            }
+            if (slowestFile != null) {
+                summary.append(String.format("  (slowest: %s, %.1f ms)", slowestFile, slowestNanos / 1e6));
+            }
+        }
+        for (Counter counter : Counter.values()) {
+            summary.append(String.format("%n  %-18s %d", counter, getCount(counter)));
+        }
+        summary.append(String.format("%n  FRAMES_PER_SECOND  %.1f", getFramesPerSecond()));
+        return summary.toString();
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
@@ -0,0 +1,97 @@
+package com.LegMeat.rbo.Backend;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * OutputStrategy dictates how a video with no cut point is placed in the output directory when copying (rather than
+ * overwriting). Nothing about such a video changes, so its bytes are placed as they are, under its own file name, and
+ * only videos which are actually trimmed are run through ffmpeg.
+ *
+ * Each strategy falls back on the next one down when it can't be used (a hard link across file systems, or on a file
+ * system without them), and every strategy but REMUX keeps the original's last modified time. A hard link shares its
+ * bytes with the original, so editing one in place edits both.
+ */
+public enum OutputStrategy {
+    HARD_LINK, // a second name for the original file, so no bytes are written at all (same file system only)
+    TRANSFER, // copied by FileChannel.transferTo, which the operating system can do without passing through the JVM
+    COPY, // copied by Files.copy
+    REMUX; // stream copied into a new mkv by ffmpeg, like a trimmed video (the only choice before the others)
+
+    /**
+     * Places a copy of the source at the target, through this strategy or the ones after it. The copy is written
+     * next to the target first and only moved into place once complete, so a crash never leaves a partial file.
+     * @return the strategy which placed the file
+     * @throws IOException if none of the byte-for-byte strategies could place the file
+     */
+    public OutputStrategy place(Path source, Path target) throws IOException {
+        if (this == REMUX) {
+            throw new IllegalStateException("Remuxing is done by ffmpeg (see Video.cut).");
+        }
+        if (Files.exists(target) && Files.isSameFile(source, target)) {
+            // already linked by an earlier run
+            return this;
+        }
+        Path partialPath = target.resolveSibling(target.getFileName() + Video.PARTIAL_EXTENSION);
+        Files.deleteIfExists(partialPath);
+        try {
+            switch (this) {
+                case HARD_LINK:
+                    Files.createLink(partialPath, source);
+                    break;
+                case TRANSFER:
+                    transfer(source, partialPath);
+                    break;
+                default:
+                    Files.copy(source, partialPath, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+            if (this != HARD_LINK) {
+                // the copy ends when the original did, so it keeps its place on the RecordingTimeline
+                Files.setLastModifiedTime(partialPath, Files.getLastModifiedTime(source));
+            }
+            moveIntoPlace(partialPath, target);
+            return this;
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            Files.deleteIfExists(partialPath);
+            if (this == COPY) {
+                throw e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e);
+            }
+            OutputStrategy fallback = values()[ordinal() + 1];
+            Log.verbose(() -> "Could not place " + target.getFileName() + " by " + this + " (" + e.getMessage() +
+                    "), falling back on " + fallback + ".");
+            return fallback.place(source, target);
+        }
+    }
+
+    /**
+     * Copies the whole file through FileChannel.transferTo, which may move fewer bytes than asked each call
+     */
+    private static void transfer(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long transferred = in.transferTo(position, size - position, out);
+                if (transferred == 0 && position >= in.size()) {
+                    // the file was cut short while being copied
+                    throw new IOException("File shrank while being copied.");
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    private static void moveIntoPlace(Path partialPath, Path target) throws IOException {
+        try {
+            Files.move(partialPath, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(partialPath, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
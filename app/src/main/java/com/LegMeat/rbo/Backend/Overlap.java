@@ -0,0 +1,51 @@
+package com.LegMeat.rbo.Backend;
+
+/**
+ * Overlap represents the first matching keyframe pair found between a lead video and another video
+ */
+public class Overlap {
+    private final Video leadVideo;
+    private final Video secondaryVideo;
+    private final double leadTimestamp; // timestamp of the matching keyframe in the lead video
+    private final double secondaryTimestamp; // timestamp of the matching keyframe in the secondary video
+
+    public Overlap(Video leadVideo, Video secondaryVideo, double leadTimestamp, double secondaryTimestamp) {
+        this.leadVideo = leadVideo;
+        this.secondaryVideo = secondaryVideo;
+        this.leadTimestamp = leadTimestamp;
+        this.secondaryTimestamp = secondaryTimestamp;
+    }
+
+    public Video getLeadVideo() {
+        return leadVideo;
+    }
+
+    public Video getSecondaryVideo() {
+        return secondaryVideo;
+    }
+
+    public double getLeadTimestamp() {
+        return leadTimestamp;
+    }
+
+    public double getSecondaryTimestamp() {
+        return secondaryTimestamp;
+    }
+
+    /**
+     * Every overlap is found twice (once from each video). Only the lead video's side counts: the matching frame is
+     * later (or at the same point) in the lead video than in the secondary video. See Video.findOverlap.
+     */
+    public boolean isLeadOverlap() {
+        return leadTimestamp >= secondaryTimestamp;
+    }
+
+    /**
+     * Point in the secondary video where the lead video ends: the matching keyframe's place in the secondary video,
+     * plus the rest of the lead video after it. The first match isn't always the secondary video's first keyframe
+     * (e.g. when its opening frames are blank or ignored as too common), so its timestamp counts too.
+     */
+    public double getCutPoint() {
+        return secondaryTimestamp + leadVideo.getDuration() - leadTimestamp;
+    }
+}
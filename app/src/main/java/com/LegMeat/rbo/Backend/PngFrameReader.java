@@ -0,0 +1,78 @@
+package com.LegMeat.rbo.Backend;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+
+/**
+ * PngFrameReader reads the PNG keyframes ffmpeg writes to an "image2pipe" pipe.
+ *
+ * Piping with ffmpeg can cause a LOT of problems. This searches for the magic bytes representing the header of a
+ * complete png keyframe, and skips all interim bytes, as these must be erroneous (either unwanted feedback from ffmpeg
+ * [which may vary with version] into stdout, corrupted data, or errors that have managed to find their way into the
+ * input stream). ImageIO is very strict and quite poor at skipping polluted data, so won't recognise the stdout as one
+ * image otherwise.
+ */
+public class PngFrameReader {
+    private static final byte[] PNG_MAGIC_BYTES = {(byte) 0x89, (byte) 0x50, (byte) 0x4E, (byte) 0x47, (byte) 0x0D,
+            (byte) 0x0A, (byte) 0x1A, (byte) 0x0A};
+
+    private final PushbackInputStream stdout;
+    private BufferedImage image;
+    private long skippedBytes = 0;
+
+    public PngFrameReader(InputStream input) {
+        this.stdout = new PushbackInputStream(input, PNG_MAGIC_BYTES.length);
+    }
+
+    /**
+     * The last frame read, or null if the last frame was corrupt
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Total number of non-image bytes skipped so far
+     */
+    public long getSkippedBytes() {
+        return skippedBytes;
+    }
+
+    /**
+     * Reads the next frame. If the frame is corrupt, getImage returns null afterwards.
+     * @return false once the pipe has ended (trailing non-image bytes are ignored)
+     * @throws IOException if the pipe itself fails
+     */
+    public boolean readFrame() throws IOException {
+        // Search for magic bytes
+        int possibleMagicBytesRead = 0;
+        while (possibleMagicBytesRead != PNG_MAGIC_BYTES.length) {
+            int possibleMagicByte = stdout.read();
+            if (possibleMagicByte == -1) {
+                // Trailing bytes were non-image.
+                skippedBytes += possibleMagicBytesRead;
+                return false;
+            } else if ((byte) possibleMagicByte == PNG_MAGIC_BYTES[possibleMagicBytesRead]) {
+                possibleMagicBytesRead++;
+            } else if ((byte) possibleMagicByte == PNG_MAGIC_BYTES[0]) {
+                // a failed match can still be the start of the next header
+                skippedBytes += possibleMagicBytesRead;
+                possibleMagicBytesRead = 1;
+            } else {
+                skippedBytes += possibleMagicBytesRead + 1;
+                possibleMagicBytesRead = 0;
+            }
+        }
+        // unread to let ImageIO see the magic bytes too
+        stdout.unread(PNG_MAGIC_BYTES);
+        try {
+            image = ImageIO.read(stdout);
+        } catch (IOException e) {
+            image = null;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,193 @@
+package com.LegMeat.rbo.Backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProcessSupervisor runs every ffmpeg and ffprobe process of the program. It keeps the machine from being
+ * oversubscribed, by only letting a limited number of processes run at once (further processes wait their turn), and
+ * by giving each ffmpeg process a share of the cores ("-threads") instead of letting every process start a thread per
+ * core. Processes which time out or are cancelled are killed along with any processes they started.
+ */
+public class ProcessSupervisor {
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    private static final ProcessSupervisor GLOBAL = new ProcessSupervisor(Math.max(2, CORES / 2), 0);
+
+    private final Set<SupervisedProcess> running = ConcurrentHashMap.newKeySet();
+    private int maxProcesses;
+    private int threadsPerProcess;
+    private int admitted = 0; // processes started (or starting) which haven't exited yet
+
+    /**
+     * A process started by the supervisor
+     */
+    public static final class SupervisedProcess implements AutoCloseable {
+        private final Process process;
+        private final CompletableFuture<Integer> exit;
+
+        private SupervisedProcess(Process process) {
+            this.process = process;
+            this.exit = process.onExit().thenApply(Process::exitValue);
+        }
+
+        public Process getProcess() {
+            return process;
+        }
+
+        public InputStream getInputStream() {
+            return process.getInputStream();
+        }
+
+        public InputStream getErrorStream() {
+            return process.getErrorStream();
+        }
+
+        /**
+         * Completes with the exit value once the process exits
+         */
+        public CompletableFuture<Integer> onExit() {
+            return exit;
+        }
+
+        /**
+         * Waits for the process to exit, killing it if it takes too long
+         * @return whether the process exited by itself in time
+         */
+        public boolean waitFor(long timeoutMillis) throws InterruptedException {
+            if (process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            kill();
+            return false;
+        }
+
+        /**
+         * Only valid once the process has exited
+         */
+        public int exitValue() {
+            return process.exitValue();
+        }
+
+        /**
+         * Kills the process and every process it started, then waits for it to exit
+         */
+        public void kill() throws InterruptedException {
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.destroyForcibly().waitFor();
+        }
+
+        /**
+         * Kills the process (and every process it started) if it's still running, without waiting for it
+         */
+        @Override
+        public void close() {
+            if (process.isAlive()) {
+                process.descendants().forEach(ProcessHandle::destroyForcibly);
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    /**
+     * @param maxProcesses processes allowed to run at once
+     * @param threadsPerProcess threads each ffmpeg process may use. 0 shares the cores between maxProcesses.
+     */
+    public ProcessSupervisor(int maxProcesses, int threadsPerProcess) {
+        setLimits(maxProcesses, threadsPerProcess);
+    }
+
+    /**
+     * The supervisor used for every process of the program
+     */
+    public static ProcessSupervisor global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Changes the limits. Processes already running are left alone.
+     */
+    public synchronized void setLimits(int maxProcesses, int threadsPerProcess) {
+        this.maxProcesses = Math.max(1, maxProcesses);
+        this.threadsPerProcess = threadsPerProcess > 0 ? threadsPerProcess : Math.max(1, CORES / this.maxProcesses);
+        notifyAll();
+    }
+
+    public synchronized int getMaxProcesses() {
+        return maxProcesses;
+    }
+
+    public synchronized int getThreadsPerProcess() {
+        return threadsPerProcess;
+    }
+
+    public int getRunningCount() {
+        return running.size();
+    }
+
+    /**
+     * Starts a process once fewer than maxProcesses are running (waiting until then). ffmpeg processes are limited to
+     * threadsPerProcess threads.
+     */
+    public SupervisedProcess start(ProcessBuilder builder) throws IOException, InterruptedException {
+        List<String> command = builder.command();
+        if (!command.isEmpty() && command.get(0).equals("ffmpeg") && !command.contains("-threads")) {
+            ArrayList<String> limited = new ArrayList<>(command);
+            // before any input, so it applies to decoding
+            limited.addAll(1, List.of("-threads", String.valueOf(getThreadsPerProcess())));
+            builder.command(limited);
+        }
+        admit();
+        SupervisedProcess supervised;
+        try {
+            supervised = new SupervisedProcess(builder.start());
+        } catch (IOException | RuntimeException e) {
+            release();
+            throw e;
+        }
+        Metrics.global().increment(Metrics.Counter.PROCESSES_SPAWNED);
+        running.add(supervised);
+        supervised.onExit().whenComplete((exitValue, error) -> {
+            running.remove(supervised);
+            release();
+        });
+        return supervised;
+    }
+
+    /**
+     * Kills every running process (e.g. when the program is cancelled)
+     */
+    public void cancelAll() {
+        for (SupervisedProcess process : running) {
+            process.close();
+        }
+    }
+
+    /**
+     * Timeout for a process working through a whole file, growing with the size of the file
+     * @param baseSeconds timeout of an empty file
+     * @param secondsPerGigabyte extra time allowed per gigabyte of the file
+     */
+    public static long scaledTimeout(File file, long baseSeconds, long secondsPerGigabyte) {
+        double gigabytes = file.length() / (1024.0 * 1024 * 1024);
+        return TimeUnit.SECONDS.toMillis(baseSeconds) + (long) (gigabytes * secondsPerGigabyte * 1000);
+    }
+
+    private synchronized void admit() throws InterruptedException {
+        while (admitted >= maxProcesses) {
+            wait();
+        }
+        admitted++;
+    }
+
+    private synchronized void release() {
+        admitted--;
+        notifyAll();
+    }
+}
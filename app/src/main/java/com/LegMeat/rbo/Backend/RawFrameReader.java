@@ -0,0 +1,82 @@
+package com.LegMeat.rbo.Backend;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * RawFrameReader reads fixed size "rawvideo" frames from an ffmpeg pipe. Every frame is exactly width * height *
+ * bytes per pixel long, so frames are read in whole frame chunks into a single reused buffer. There's no image
+ * format to decode and nothing to resynchronise on.
+ */
+public class RawFrameReader {
+    private final ReadableByteChannel channel;
+    private final ByteBuffer frame;
+    private final int width;
+    private final int height;
+    private final ExtractionMode mode;
+
+    /**
+     * @param input the stdout of the ffmpeg process
+     * @param direct whether to read into a direct (off-heap) buffer, skipping a copy inside the channel
+     */
+    public RawFrameReader(InputStream input, int width, int height, ExtractionMode mode, boolean direct) {
+        this.channel = Channels.newChannel(input);
+        this.width = width;
+        this.height = height;
+        this.mode = mode;
+        int frameSize = width * height * mode.getBytesPerPixel();
+        this.frame = direct ? ByteBuffer.allocateDirect(frameSize) : ByteBuffer.allocate(frameSize);
+    }
+
+    /**
+     * The last frame read. Only valid until the next call of readFrame, as the buffer is reused.
+     */
+    public ByteBuffer getFrame() {
+        return frame;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Reads the next whole frame into the buffer
+     * @return false once the pipe has ended
+     * @throws IOException if the pipe ended part of the way through a frame (the final frame is cut off)
+     */
+    public boolean readFrame() throws IOException {
+        frame.clear();
+        while (frame.hasRemaining()) {
+            if (channel.read(frame) == -1) {
+                if (frame.position() == 0) {
+                    return false;
+                }
+                throw new IOException("Pipe ended " + frame.position() + " bytes into a frame.");
+            }
+        }
+        frame.flip();
+        return true;
+    }
+
+    /**
+     * Copies the last frame read into a new image, so it can be kept after the buffer is reused
+     */
+    public BufferedImage toImage() {
+        int imageType = mode == ExtractionMode.RAW_GRAY ? BufferedImage.TYPE_BYTE_GRAY :
+                BufferedImage.TYPE_3BYTE_BGR;
+        BufferedImage image = new BufferedImage(width, height, imageType);
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        frame.get(pixels);
+        frame.rewind();
+        return image;
+    }
+}
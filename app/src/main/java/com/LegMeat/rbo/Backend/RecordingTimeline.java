@@ -0,0 +1,119 @@
+package com.LegMeat.rbo.Backend;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * RecordingTimeline places every video on a timeline of when it was recorded, so only videos recorded at around the
+ * same time are matched against each other. A video is assumed to have been recorded from (last modified - duration)
+ * to last modified, as recorders keep writing to a file until the recording ends.
+ *
+ * Last modified times can't always be trusted (e.g. videos which were copied or extracted all at once), in which
+ * case the timeline is marked unreliable and every pair of videos is allowed to overlap.
+ */
+public class RecordingTimeline {
+    private static final Comparator<Video> BY_START = Comparator.comparingDouble(RecordingTimeline::start);
+
+    private final double slack; // seconds windows may be apart and still be allowed to overlap
+    private final ArrayList<Video> videos = new ArrayList<>(); // sorted by the start of their window
+    private final HashMap<Long, Integer> videosPerSecond = new HashMap<>(); // videos last modified in each second
+    private int mostPerSecond = 0; // most videos last modified in the same second
+    private int invalidVideos = 0; // videos without a duration or a believable last modified time
+    private double longestDuration = 0;
+    private boolean reliable = true;
+
+    /**
+     * @param slack seconds two recording windows may be apart and still be allowed to overlap (covers clock and
+     *              file system inaccuracy)
+     */
+    public RecordingTimeline(List<Video> videos, double slack) {
+        this.slack = slack;
+        for (Video video : videos) {
+            add(video);
+        }
+    }
+
+    /**
+     * Adds a video to the timeline (e.g. one which has just finished recording)
+     */
+    public void add(Video video) {
+        int position = Collections.binarySearch(videos, video, BY_START);
+        videos.add(position < 0 ? -position - 1 : position, video);
+        long lastModified = video.lastModified();
+        long latest = System.currentTimeMillis() + 24 * 60 * 60 * 1000L;
+        if (video.getDuration() == null || lastModified <= 0 || lastModified > latest) {
+            invalidVideos++;
+        } else {
+            longestDuration = Math.max(longestDuration, video.getDuration());
+        }
+        mostPerSecond = Math.max(mostPerSecond, videosPerSecond.merge(lastModified / 1000, 1, Integer::sum));
+        // many videos "finishing" in the same second were most likely copied, not recorded
+        reliable = invalidVideos == 0 && mostPerSecond <= Math.max(2, videos.size() / 4);
+    }
+
+    /**
+     * Whether the last modified times look like recording times. If not, every pair of videos may overlap.
+     */
+    public boolean isReliable() {
+        return reliable;
+    }
+
+    /**
+     * Whether two videos could overlap, i.e. their recording windows intersect (always true if the timeline is
+     * unreliable)
+     */
+    public boolean couldOverlap(Video videoOne, Video videoTwo) {
+        if (!reliable) {
+            return true;
+        }
+        return end(videoTwo) >= start(videoOne) - slack && start(videoTwo) <= end(videoOne) + slack;
+    }
+
+    /**
+     * Earliest last modified time (in seconds) of a video which could overlap the given one, or -infinity if the
+     * timeline is unreliable
+     */
+    public double earliestOverlappingEnd(Video video) {
+        return reliable ? start(video) - slack : Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Latest last modified time (in seconds) of a video which could overlap the given one, or infinity if the
+     * timeline is unreliable
+     */
+    public double latestOverlappingEnd(Video video) {
+        return reliable ? end(video) + slack + longestDuration : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Number of pairs of videos which could overlap, found by sweeping along the timeline
+     */
+    public long countCandidatePairs() {
+        if (!reliable) {
+            return (long) videos.size() * (videos.size() - 1) / 2;
+        }
+        long pairs = 0;
+        for (int i = 0; i < videos.size(); i++) {
+            // videos are sorted by start, so once one starts after this one ends, none of the later ones overlap
+            for (int j = i + 1; j < videos.size() && start(videos.get(j)) <= end(videos.get(i)) + slack; j++) {
+                pairs++;
+            }
+        }
+        return pairs;
+    }
+
+    private static double start(Video video) {
+        double duration = video.getDuration() == null ? 0 : video.getDuration();
+        return end(video) - duration;
+    }
+
+    /**
+     * When a video finished recording, in seconds
+     */
+    static double end(Video video) {
+        return video.lastModified() / 1000.0;
+    }
+}
@@ -0,0 +1,405 @@
+package com.LegMeat.rbo.Backend;
+
+import java.io.File;
+
+/**
+ * ScanOptions holds the user's preferences for how a Directory is read. The defaults are tuned to the number of cores
+ * of the machine.
+ */
+public class ScanOptions {
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+    private int probeThreads = Math.max(1, CORES / 4); // ffprobe calls are short, so need few threads
+    private int decodeThreads = Math.max(1, CORES / 2); // ffmpeg decoding is itself multithreaded
+    private int fingerprintThreads = Math.max(1, CORES / 4);
+    private int queueCapacity = Math.max(2, CORES / 2); // videos allowed to wait between two stages
+    private int cutThreads = Math.max(1, CORES / 2); // cuts are disk bound stream copies
+    private OutputStrategy uncutStrategy = OutputStrategy.HARD_LINK; // how uncut videos are copied over
+    private int shardWorkers = 0; // worker processes videos are read in (see ShardedIngestion). 0 reads them here.
+    private boolean recursive = false; // also read the videos in every folder beneath the directory
+    private int scanThreads = Math.max(2, CORES); // folders listed at once (see LibraryScanner)
+    private int maxProcesses = Math.max(2, CORES / 2); // ffmpeg/ffprobe processes run at once (see ProcessSupervisor)
+    private int processThreads = 0; // threads per ffmpeg process. 0 shares the cores between maxProcesses.
+    private ExtractionMode extractionMode = ExtractionMode.PNG;
+    private MatchEngine matchEngine = MatchEngine.KEYFRAMES;
+    private boolean singlePass = true; // read keyframes, timestamps and duration in one ffmpeg pass per video
+    private boolean streaming = false; // stop reading a video once its overlap is found (needs single pass)
+    private boolean windowed = false; // only read the keyframes at the start and end of a video (needs single pass)
+    private double headWindow = 120; // seconds at the start of a video read in windowed mode
+    private double tailWindow = 120; // seconds at the end of a video still read after stopping early, or windowed
+    private int frameWidth = 0; // size raw frames are scaled down to by ffmpeg. 0 keeps the video's own size.
+    private int frameHeight = 0;
+    private boolean directBuffers = false; // read raw frames into direct (off-heap) buffers
+    private boolean cacheEnabled = true; // remember fingerprints between runs (see FingerprintCache)
+    private File cacheDirectory = null; // where the fingerprint cache is kept. null keeps it next to the folder.
+    private int matchDistance = 0; // bits keyframe fingerprints may differ by and still match (0 = identical)
+    private double stopListShare = 1; // keyframes in more than this share of the videos are ignored (1 = off)
+    private int stopListPerVideo = 20; // keyframes repeated more often within a video are ignored (0 = off)
+    private int lowInformationThreshold = 8; // brightness spread below which a keyframe is ignored (see Fingerprint)
+    private boolean timelinePruning = true; // only match videos recorded around the same time (see RecordingTimeline)
+    private double timelineSlack = 60; // seconds recording windows may be apart and still be matched
+    private boolean compactStorage = false; // keep only a small thumbnail of each keyframe (see KeyFrameStore)
+    private int thumbnailWidth = 32;
+    private int thumbnailHeight = 18;
+    private boolean verbose = false; // print per-frame and per-video detail (see Log)
+    private boolean journalEnabled = true; // record the job's progress so it can be resumed (see JobJournal)
+    private boolean planOnly = false; // work out the cut plan, but leave the cutting to a later job
+
+    public int getProbeThreads() {
+        return probeThreads;
+    }
+
+    public void setProbeThreads(int probeThreads) {
+        this.probeThreads = Math.max(1, probeThreads);
+    }
+
+    public int getDecodeThreads() {
+        return decodeThreads;
+    }
+
+    public void setDecodeThreads(int decodeThreads) {
+        this.decodeThreads = Math.max(1, decodeThreads);
+    }
+
+    public int getFingerprintThreads() {
+        return fingerprintThreads;
+    }
+
+    public void setFingerprintThreads(int fingerprintThreads) {
+        this.fingerprintThreads = Math.max(1, fingerprintThreads);
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    public int getCutThreads() {
+        return cutThreads;
+    }
+
+    public void setCutThreads(int cutThreads) {
+        this.cutThreads = Math.max(1, cutThreads);
+    }
+
+    public ExtractionMode getExtractionMode() {
+        return extractionMode;
+    }
+
+    public void setExtractionMode(ExtractionMode extractionMode) {
+        this.extractionMode = extractionMode;
+    }
+
+    public OutputStrategy getUncutStrategy() {
+        return uncutStrategy;
+    }
+
+    /**
+     * Chooses how videos with no cut point are placed in the output directory when not overwriting. HARD_LINK writes
+     * no bytes at all where it can, falling back on TRANSFER and then COPY. REMUX runs every video through ffmpeg.
+     */
+    public void setUncutStrategy(OutputStrategy uncutStrategy) {
+        this.uncutStrategy = uncutStrategy;
+    }
+
+    public MatchEngine getMatchEngine() {
+        return matchEngine;
+    }
+
+    /**
+     * Chooses how overlaps are found. AUDIO only reads the audio tracks, which is far cheaper than decoding keyframes
+     * but needs the recordings to share their audio. AUDIO_PREFILTER reads the audio first, then only decodes the
+     * keyframes of videos whose audio overlaps another video's.
+     */
+    public void setMatchEngine(MatchEngine matchEngine) {
+        this.matchEngine = matchEngine;
+    }
+
+    public boolean isSinglePass() {
+        return singlePass;
+    }
+
+    public void setSinglePass(boolean singlePass) {
+        this.singlePass = singlePass;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Matches keyframes against the videos already read while they're decoded, and stops decoding a video once it's
+     * found to overlap one of them (only the last tailWindow seconds are read after that). Assumes overlaps only
+     * happen at the start and end of videos, as is the case for recordings of the same session.
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public boolean isWindowed() {
+        return windowed;
+    }
+
+    /**
+     * Only decodes the keyframes in the first headWindow and last tailWindow seconds of each video, seeking straight
+     * to the tail and skipping every non-keyframe in the decoder. Like streaming, assumes overlaps only happen at the
+     * start and end of videos, so the middle of a long recording is never decoded at all.
+     */
+    public void setWindowed(boolean windowed) {
+        this.windowed = windowed;
+    }
+
+    public double getHeadWindow() {
+        return headWindow;
+    }
+
+    public void setHeadWindow(double headWindow) {
+        this.headWindow = Math.max(0, headWindow);
+    }
+
+    public double getTailWindow() {
+        return tailWindow;
+    }
+
+    public void setTailWindow(double tailWindow) {
+        this.tailWindow = Math.max(0, tailWindow);
+    }
+
+    public int getFrameWidth() {
+        return frameWidth;
+    }
+
+    public int getFrameHeight() {
+        return frameHeight;
+    }
+
+    /**
+     * Makes ffmpeg scale raw frames down before they're piped over (0 x 0 keeps the video's own size)
+     */
+    public void setFrameSize(int frameWidth, int frameHeight) {
+        this.frameWidth = Math.max(0, frameWidth);
+        this.frameHeight = Math.max(0, frameHeight);
+    }
+
+    public boolean isScaled() {
+        return frameWidth > 0 && frameHeight > 0;
+    }
+
+    public boolean isDirectBuffers() {
+        return directBuffers;
+    }
+
+    public void setDirectBuffers(boolean directBuffers) {
+        this.directBuffers = directBuffers;
+    }
+
+    public boolean isCacheEnabled() {
+        return cacheEnabled;
+    }
+
+    public void setCacheEnabled(boolean cacheEnabled) {
+        this.cacheEnabled = cacheEnabled;
+    }
+
+    public File getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public void setCacheDirectory(File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public int getMatchDistance() {
+        return matchDistance;
+    }
+
+    /**
+     * Lets keyframes match when their fingerprints differ by at most the given number of bits (of 64). Small values
+     * (up to around 10) catch re-encoded or slightly different recordings of the same moment.
+     */
+    public void setMatchDistance(int matchDistance) {
+        this.matchDistance = Math.max(0, matchDistance);
+    }
+
+    public double getStopListShare() {
+        return stopListShare;
+    }
+
+    public int getStopListPerVideo() {
+        return stopListPerVideo;
+    }
+
+    /**
+     * Ignores keyframes which are too common to tell recordings apart, such as loading screens and menus (see
+     * FingerprintIndex.setStopList)
+     * @param stopListShare largest share of the videos (0 to 1) a keyframe may appear in. 1 (the default) never ignores
+     *                      any: in a small library, a moment recorded by most clips is exactly the overlap to find.
+     * @param stopListPerVideo most times a keyframe may repeat within a single video. 0 never ignores any.
+     */
+    public void setStopList(double stopListShare, int stopListPerVideo) {
+        this.stopListShare = Math.max(0, Math.min(1, stopListShare));
+        this.stopListPerVideo = Math.max(0, stopListPerVideo);
+    }
+
+    public int getLowInformationThreshold() {
+        return lowInformationThreshold;
+    }
+
+    /**
+     * Ignores near-uniform keyframes (black frames, fades), whose brightest and darkest parts are less than the given
+     * brightness (0 to 255) apart. 0 only ignores completely blank keyframes.
+     */
+    public void setLowInformationThreshold(int lowInformationThreshold) {
+        this.lowInformationThreshold = Math.max(0, Math.min(255, lowInformationThreshold));
+    }
+
+    public boolean isTimelinePruning() {
+        return timelinePruning;
+    }
+
+    public void setTimelinePruning(boolean timelinePruning) {
+        this.timelinePruning = timelinePruning;
+    }
+
+    public double getTimelineSlack() {
+        return timelineSlack;
+    }
+
+    public void setTimelineSlack(double timelineSlack) {
+        this.timelineSlack = Math.max(0, timelineSlack);
+    }
+
+    public boolean isCompactStorage() {
+        return compactStorage;
+    }
+
+    public void setCompactStorage(boolean compactStorage) {
+        this.compactStorage = compactStorage;
+    }
+
+    public int getThumbnailWidth() {
+        return thumbnailWidth;
+    }
+
+    public int getThumbnailHeight() {
+        return thumbnailHeight;
+    }
+
+    /**
+     * Sets the size compactly stored keyframes are shrunk to
+     */
+    public void setThumbnailSize(int thumbnailWidth, int thumbnailHeight) {
+        this.thumbnailWidth = Math.max(1, thumbnailWidth);
+        this.thumbnailHeight = Math.max(1, thumbnailHeight);
+    }
+
+    public int getShardWorkers() {
+        return shardWorkers;
+    }
+
+    /**
+     * Splits the reading of the videos between the given number of worker processes on this machine, each with its
+     * own heap and share of the cores (see ShardedIngestion). 0 or 1 reads every video in this process.
+     */
+    public void setShardWorkers(int shardWorkers) {
+        this.shardWorkers = Math.max(0, shardWorkers);
+    }
+
+    public boolean isRecursive() {
+        return recursive;
+    }
+
+    /**
+     * Reads the videos of every folder beneath the directory too. Every video is matched against every other, so
+     * overlapping recordings are found even when they were saved to different folders.
+     */
+    public void setRecursive(boolean recursive) {
+        this.recursive = recursive;
+    }
+
+    public int getScanThreads() {
+        return scanThreads;
+    }
+
+    public void setScanThreads(int scanThreads) {
+        this.scanThreads = Math.max(1, scanThreads);
+    }
+
+    public int getMaxProcesses() {
+        return maxProcesses;
+    }
+
+    public void setMaxProcesses(int maxProcesses) {
+        this.maxProcesses = Math.max(1, maxProcesses);
+    }
+
+    public int getProcessThreads() {
+        return processThreads;
+    }
+
+    public void setProcessThreads(int processThreads) {
+        this.processThreads = Math.max(0, processThreads);
+    }
+
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    public boolean isJournalEnabled() {
+        return journalEnabled;
+    }
+
+    /**
+     * Records what's read, the cut plan and each finished cut in a JobJournal, so a job which was stopped carries on
+     * where it stopped. The journal is kept next to the fingerprint cache, and deleted once every video is cut.
+     */
+    public void setJournalEnabled(boolean journalEnabled) {
+        this.journalEnabled = journalEnabled;
+    }
+
+    public boolean isPlanOnly() {
+        return planOnly;
+    }
+
+    /**
+     * Only reads the videos and records the cut plan in the journal, without cutting anything. A later job (without
+     * planOnly) picks the plan up from the journal and only does the cutting.
+     */
+    public void setPlanOnly(boolean planOnly) {
+        this.planOnly = planOnly;
+    }
+
+    /**
+     * Describes the options that change the fingerprints (or which keyframes are read), so fingerprints made with
+     * other options aren't reused
+     */
+    public String getFingerprintSettings() {
+        // streamed and windowed videos are missing the keyframes in the middle
+        String keyFrames = "";
+        if (windowed && singlePass) {
+            keyFrames = " windowed, head " + headWindow + ", tail " + tailWindow;
+        } else if (streaming && singlePass) {
+            keyFrames = " streamed, tail " + tailWindow;
+        }
+        // low-information keyframes are given a fingerprint of their own
+        String lowInformation = lowInformationThreshold > 0 ? ", low information " + lowInformationThreshold : "";
+        return extractionMode + " " + frameWidth + "x" + frameHeight + keyFrames + lowInformation;
+    }
+
+    /**
+     * Description of every option which decides which videos match (and so the cut plan), on top of the fingerprint
+     * settings. A JobJournal's plan is only reused if these are unchanged.
+     */
+    public String getMatchSettings() {
+        String timeline = timelinePruning ? "timeline slack " + timelineSlack : "no timeline";
+        return matchEngine + ", distance " + matchDistance + ", stop-list " + stopListShare + "/" + stopListPerVideo +
+                ", " + timeline;
+    }
+}
@@ -0,0 +1,50 @@
+package com.LegMeat.rbo.Backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+/**
+ * ShardWorker is the entry point of a worker process started by ShardedIngestion. It reads a single shard of videos
+ * and writes what it read to an index segment (a FingerprintCache file), which the coordinating process merges.
+ *
+ * Arguments: file listing the shard's videos (one path per line), worker options (see ShardedIngestion), segment
+ * file to write.
+ */
+public final class ShardWorker {
+    private ShardWorker() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 3) {
+            System.err.println("Usage: ShardWorker <video list> <options> <segment>");
+            System.exit(2);
+        }
+        try {
+            ScanOptions options = ShardedIngestion.readOptions(Paths.get(args[1]));
+            Log.setVerbose(options.isVerbose());
+            Fingerprint.setLowInformationThreshold(options.getLowInformationThreshold());
+            ProcessSupervisor.global().setLimits(options.getMaxProcesses(), options.getProcessThreads());
+            ArrayList<File> files = new ArrayList<>();
+            for (String path : Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+                if (!path.isEmpty()) {
+                    files.add(new File(path));
+                }
+            }
+            // the segment starts empty, so every video read is added to it
+            FingerprintCache segment = new FingerprintCache(new File(args[2]), options.getFingerprintSettings());
+            ArrayList<Video> videos = new IngestionPipeline(options, segment).run(files,
+                    new FingerprintIndex(options.getMatchDistance()));
+            segment.save();
+            Log.verbose(() -> "Shard " + args[2] + " read " + videos.size() + " out of " + files.size() +
+                    " videos.");
+            System.exit(0);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Shard worker failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.LegMeat.rbo.Backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * ShardedIngestion splits the reading of many videos between several worker processes (separate JVMs) on this
+ * machine. Each worker reads its shard of the videos with its own IngestionPipeline (see ShardWorker) and writes
+ * what it read to an index segment, a file in the FingerprintCache format. The segments are then merged back here,
+ * where the videos are matched as usual.
+ *
+ * Each worker has its own heap, so the decoded keyframes of one shard never put pressure on the garbage collector of
+ * another, and the machine's ffmpeg processes and threads are shared out between the workers.
+ */
+public class ShardedIngestion {
+    private final ScanOptions options;
+    private final int workers;
+
+    /**
+     * @param workers number of worker processes (shards)
+     */
+    public ShardedIngestion(ScanOptions options, int workers) {
+        this.options = options;
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * Reads every file in the worker processes
+     * @return everything the workers read, merged into a single (unsaved) cache. Files a worker failed to read are
+     * missing from it.
+     */
+    public FingerprintCache run(List<File> files) throws IOException {
+        String settings = options.getFingerprintSettings();
+        Path shardDirectory = Files.createTempDirectory("rbod-shards");
+        FingerprintCache merged = new FingerprintCache(shardDirectory.resolve("merged").toFile(), settings);
+        ArrayList<List<File>> shards = split(files, workers);
+        ArrayList<Process> processes = new ArrayList<>();
+        try {
+            ScanOptions workerOptions = shareOptions(options, shards.size());
+            Path optionsPath = shardDirectory.resolve("options.properties");
+            try (Writer writer = Files.newBufferedWriter(optionsPath, StandardCharsets.UTF_8)) {
+                toProperties(workerOptions).store(writer, "options of every shard");
+            }
+            ArrayList<Path> segments = new ArrayList<>();
+            ArrayList<Long> deadlines = new ArrayList<>();
+            for (int i = 0; i < shards.size(); i++) {
+                Path listPath = shardDirectory.resolve("shard-" + i + ".txt");
+                Path segmentPath = shardDirectory.resolve("shard-" + i + FingerprintCache.CACHE_EXTENSION);
+                ArrayList<String> paths = new ArrayList<>();
+                for (File file : shards.get(i)) {
+                    paths.add(file.getAbsolutePath());
+                }
+                Files.write(listPath, paths, StandardCharsets.UTF_8);
+                ProcessBuilder pbWorker = new ProcessBuilder(workerCommand(listPath, optionsPath, segmentPath));
+                pbWorker.inheritIO();
+                processes.add(pbWorker.start());
+                segments.add(segmentPath);
+                deadlines.add(System.currentTimeMillis() + shardTimeout(shards.get(i)));
+            }
+            System.out.println("Reading " + files.size() + " videos in " + shards.size() + " worker processes...");
+            for (int i = 0; i < processes.size(); i++) {
+                Process process = processes.get(i);
+                long remaining = Math.max(0, deadlines.get(i) - System.currentTimeMillis());
+                if (!process.waitFor(remaining, TimeUnit.MILLISECONDS)) {
+                    // a hung worker saves nothing, so the pipeline reads its whole shard
+                    destroy(process);
+                    System.out.println("Worker " + (i + 1) + " timed out, so its videos are read here instead.");
+                } else if (process.exitValue() != 0) {
+                    System.out.println("Worker " + (i + 1) + " failed, so its unread videos are read here instead.");
+                }
+                // a worker which failed part way still saved nothing, or a complete segment
+                FingerprintCache segment = new FingerprintCache(segments.get(i).toFile(), settings);
+                segment.load();
+                for (FingerprintCache.Entry entry : segment.getEntries()) {
+                    merged.put(entry);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Process cancelled by user.");
+        } finally {
+            for (Process process : processes) {
+                destroy(process);
+            }
+            deleteDirectory(shardDirectory);
+        }
+        return merged;
+    }
+
+    /**
+     * Splits the files into shards of about the same total size, largest files first, so every worker finishes at
+     * around the same time. Each shard keeps the files in their given order.
+     */
+    static ArrayList<List<File>> split(List<File> files, int shardCount) {
+        int count = Math.max(1, Math.min(shardCount, files.size()));
+        ArrayList<Integer> bySize = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            bySize.add(i);
+        }
+        bySize.sort(Comparator.comparingLong((Integer i) -> files.get(i).length()).reversed());
+        long[] shardBytes = new long[count];
+        int[] shardOf = new int[files.size()];
+        for (int i : bySize) {
+            int smallest = 0;
+            for (int shard = 1; shard < count; shard++) {
+                if (shardBytes[shard] < shardBytes[smallest]) {
+                    smallest = shard;
+                }
+            }
+            shardOf[i] = smallest;
+            shardBytes[smallest] += files.get(i).length();
+        }
+        ArrayList<List<File>> shards = new ArrayList<>();
+        for (int shard = 0; shard < count; shard++) {
+            shards.add(new ArrayList<>());
+        }
+        for (int i = 0; i < files.size(); i++) {
+            shards.get(shardOf[i]).add(files.get(i));
+        }
+        return shards;
+    }
+
+    /**
+     * Longest a worker may take over its shard: the time each of its videos may take to probe and decode one after
+     * the other (see Video), plus a minute for the worker's JVM to start and save its segment
+     */
+    private static long shardTimeout(List<File> shard) {
+        long timeout = TimeUnit.MINUTES.toMillis(1);
+        for (File file : shard) {
+            timeout += ProcessSupervisor.scaledTimeout(file, 15, 15) + ProcessSupervisor.scaledTimeout(file, 60, 180);
+        }
+        return timeout;
+    }
+
+    private static void destroy(Process process) {
+        if (process.isAlive()) {
+            // the worker's own ffmpeg processes first, as they'd outlive it
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.destroyForcibly();
+        }
+    }
+
+    /**
+     * Options of a single worker: the same fingerprint settings, with the machine's threads and ffmpeg processes
+     * shared out between the workers. The threads per ffmpeg process are worked out from the whole machine's
+     * process limit first, as a worker would otherwise share every core between its own few processes.
+     */
+    private static ScanOptions shareOptions(ScanOptions options, int workers) {
+        ScanOptions shared = fromProperties(toProperties(options));
+        int processThreads = options.getProcessThreads() > 0 ? options.getProcessThreads() :
+                Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, options.getMaxProcesses()));
+        shared.setProcessThreads(processThreads);
+        shared.setProbeThreads(options.getProbeThreads() / workers);
+        shared.setDecodeThreads(options.getDecodeThreads() / workers);
+        shared.setFingerprintThreads(options.getFingerprintThreads() / workers);
+        shared.setQueueCapacity(options.getQueueCapacity() / workers);
+        shared.setMaxProcesses(options.getMaxProcesses() / workers);
+        return shared;
+    }
+
+    /**
+     * Command starting a worker on the same Java runtime, class path and memory settings as this process
+     */
+    private static List<String> workerCommand(Path listPath, Path optionsPath, Path segmentPath) {
+        ArrayList<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            // debuggers and agents would clash over their ports and files
+            if (!argument.startsWith("-agentlib") && !argument.startsWith("-javaagent") &&
+                    !argument.startsWith("-Xrunjdwp") && !argument.startsWith("-Xdebug")) {
+                command.add(argument);
+            }
+        }
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), ShardWorker.class.getName(),
+                listPath.toString(), optionsPath.toString(), segmentPath.toString()));
+        return command;
+    }
+
+    /**
+     * The options which decide how a worker reads its videos, as properties handed over to the worker
+     */
+    static Properties toProperties(ScanOptions options) {
+        Properties properties = new Properties();
+        properties.setProperty("probeThreads", String.valueOf(options.getProbeThreads()));
+        properties.setProperty("decodeThreads", String.valueOf(options.getDecodeThreads()));
+        properties.setProperty("fingerprintThreads", String.valueOf(options.getFingerprintThreads()));
+        properties.setProperty("queueCapacity", String.valueOf(options.getQueueCapacity()));
+        properties.setProperty("maxProcesses", String.valueOf(options.getMaxProcesses()));
+        properties.setProperty("processThreads", String.valueOf(options.getProcessThreads()));
+        properties.setProperty("extractionMode", options.getExtractionMode().name());
+        properties.setProperty("singlePass", String.valueOf(options.isSinglePass()));
+        properties.setProperty("streaming", String.valueOf(options.isStreaming()));
+        properties.setProperty("windowed", String.valueOf(options.isWindowed()));
+        properties.setProperty("headWindow", String.valueOf(options.getHeadWindow()));
+        properties.setProperty("tailWindow", String.valueOf(options.getTailWindow()));
+        properties.setProperty("frameWidth", String.valueOf(options.getFrameWidth()));
+        properties.setProperty("frameHeight", String.valueOf(options.getFrameHeight()));
+        properties.setProperty("directBuffers", String.valueOf(options.isDirectBuffers()));
+        properties.setProperty("matchDistance", String.valueOf(options.getMatchDistance()));
+        properties.setProperty("lowInformationThreshold", String.valueOf(options.getLowInformationThreshold()));
+        properties.setProperty("verbose", String.valueOf(options.isVerbose()));
+        return properties;
+    }
+
+    static ScanOptions fromProperties(Properties properties) {
+        ScanOptions options = new ScanOptions();
+        options.setProbeThreads(Integer.parseInt(properties.getProperty("probeThreads")));
+        options.setDecodeThreads(Integer.parseInt(properties.getProperty("decodeThreads")));
+        options.setFingerprintThreads(Integer.parseInt(properties.getProperty("fingerprintThreads")));
+        options.setQueueCapacity(Integer.parseInt(properties.getProperty("queueCapacity")));
+        options.setMaxProcesses(Integer.parseInt(properties.getProperty("maxProcesses")));
+        options.setProcessThreads(Integer.parseInt(properties.getProperty("processThreads")));
+        options.setExtractionMode(ExtractionMode.valueOf(properties.getProperty("extractionMode")));
+        options.setSinglePass(Boolean.parseBoolean(properties.getProperty("singlePass")));
+        options.setStreaming(Boolean.parseBoolean(properties.getProperty("streaming")));
+        options.setWindowed(Boolean.parseBoolean(properties.getProperty("windowed")));
+        options.setHeadWindow(Double.parseDouble(properties.getProperty("headWindow")));
+        options.setTailWindow(Double.parseDouble(properties.getProperty("tailWindow")));
+        options.setFrameSize(Integer.parseInt(properties.getProperty("frameWidth")),
+                Integer.parseInt(properties.getProperty("frameHeight")));
+        options.setDirectBuffers(Boolean.parseBoolean(properties.getProperty("directBuffers")));
+        options.setMatchDistance(Integer.parseInt(properties.getProperty("matchDistance")));
+        options.setLowInformationThreshold(Integer.parseInt(properties.getProperty("lowInformationThreshold")));
+        options.setVerbose(Boolean.parseBoolean(properties.getProperty("verbose")));
+        return options;
+    }
+
+    static ScanOptions readOptions(Path optionsPath) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(optionsPath, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return fromProperties(properties);
+    }
+
+    private static void deleteDirectory(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            System.out.println("Could not delete shard files in " + directory + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.LegMeat.rbo.Backend;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event recorded for every stage a video goes through (see Metrics), so runs can be looked at in a flight
+ * recording
+ */
+@Name("com.LegMeat.rbo.Stage")
+@Label("Video Stage")
+@Category("RBOD")
+@Description("A single stage (probe, decode, fingerprint, match or cut) of a single video")
+class StageEvent extends jdk.jfr.Event {
+    @Label("Stage")
+    String stage;
+
+    @Label("File")
+    String file;
+}
@@ -0,0 +1,69 @@
+package com.LegMeat.rbo.Backend;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * SIMD kernels of FrameDistance, through the Vector API. Only loaded (by FrameDistance) when the jdk.incubator.vector
+ * module is available.
+ *
+ * Bytes are unsigned samples, but the Vector API only compares signed bytes, so both inputs have their top bit
+ * flipped first (which keeps their order), and |a - b| is then max - min. The differences are widened to ints a
+ * quarter of a vector at a time before being summed, so they never overflow.
+ */
+final class VectorFrameDistance implements FrameDistance.Kernel {
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+    // a quarter of a byte vector widened to ints has the same bit size as the byte vector
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED.withShape(BYTES.vectorShape());
+    private static final int CHECK_EVERY = 8; // vectors summed between checks against the limit
+
+    @Override
+    public long sad(ByteBuffer one, int offsetOne, ByteBuffer two, int offsetTwo, int length, long limit) {
+        return distance(one, offsetOne, two, offsetTwo, length, limit, false);
+    }
+
+    @Override
+    public long ssd(ByteBuffer one, int offsetOne, ByteBuffer two, int offsetTwo, int length, long limit) {
+        return distance(one, offsetOne, two, offsetTwo, length, limit, true);
+    }
+
+    private static long distance(ByteBuffer one, int offsetOne, ByteBuffer two, int offsetTwo, int length,
+                                 long limit, boolean squared) {
+        int vectorLength = BYTES.length();
+        int vectorEnd = BYTES.loopBound(length);
+        IntVector sum = IntVector.zero(INTS);
+        long distance = 0;
+        int i = 0;
+        while (i < vectorEnd) {
+            int blockEnd = Math.min(vectorEnd, i + CHECK_EVERY * vectorLength);
+            for (; i < blockEnd; i += vectorLength) {
+                ByteVector a = ByteVector.fromByteBuffer(BYTES, one, offsetOne + i, ByteOrder.nativeOrder())
+                        .lanewise(VectorOperators.XOR, (byte) 0x80);
+                ByteVector b = ByteVector.fromByteBuffer(BYTES, two, offsetTwo + i, ByteOrder.nativeOrder())
+                        .lanewise(VectorOperators.XOR, (byte) 0x80);
+                ByteVector difference = a.max(b).sub(a.min(b)); // unsigned, 0 to 255
+                for (int part = 0; part < 4; part++) {
+                    IntVector widened = ((IntVector) difference.convert(VectorOperators.B2I, part))
+                            .lanewise(VectorOperators.AND, 0xFF);
+                    sum = sum.add(squared ? widened.mul(widened) : widened);
+                }
+            }
+            // a block of squared differences is at most CHECK_EVERY * 255^2 per lane, so the lanes never overflow
+            distance += sum.reduceLanesToLong(VectorOperators.ADD);
+            sum = IntVector.zero(INTS);
+            if (distance > limit) {
+                return distance;
+            }
+        }
+        for (; i < length; i++) {
+            int difference = (one.get(offsetOne + i) & 0xFF) - (two.get(offsetTwo + i) & 0xFF);
+            distance += squared ? difference * difference : Math.abs(difference);
+        }
+        return distance;
+    }
+}
@@ -3,20 +3,24 @@ package com.LegMeat.rbo.Backend;
 import com.LegMeat.rbo.Exceptions.ExternalCommandException;
 import com.LegMeat.rbo.Exceptions.InvalidFileException;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 
 
 public class Video extends File {
+    // extension of output videos which ffmpeg hasn't finished writing yet
+    public static final String PARTIAL_EXTENSION = ".partial";
     private String fileName;
     private FileType fileType;
     private Double duration;
@@ -26,11 +30,31 @@ public class Video extends File {
     private Double cutPoint = -1.0; // where to cut secondary video from. -1 if not a secondary video.
     private Video secondaryVideo = null; // dictates the closest overlapping video
     private boolean corrupted = false; // dictates if a video is corrupt
+    private ScanOptions options; // how the video is read
+    private KeyFrameStore keyFrameStore = null; // holds the keyframes when they're compactly stored
+    private AudioFingerprint audioFingerprint = null; // only read when matching audio (see MatchEngine)
+    private boolean streamed = false; // read while matching against the index (see readSinglePass)
+    private int checkedKeyFrames = 0; // keyframes streaming has matched against the index so far
+    private int settledAt = -1; // keyframe which settled the overlap when streaming, -1 if none did
 
     public ArrayList<KeyFrame> getKeyFrames() {
         return keyFrames;
     }
 
+    /**
+     * @return the store holding the video's keyframes, or null if they aren't compactly stored
+     */
+    public KeyFrameStore getKeyFrameStore() {
+        return keyFrameStore;
+    }
+
+    /**
+     * @return the fingerprint of the video's audio, or null if it wasn't read (or the video has no audio)
+     */
+    public AudioFingerprint getAudioFingerprint() {
+        return audioFingerprint;
+    }
+
     public void displayKeyFrames() {
         for (KeyFrame keyFrame : keyFrames) {
             System.out.println(keyFrame.toString());
@@ -97,97 +121,167 @@ public class Video extends File {
      *  used by cut and copyCut to create a new video file, cut at the cut point
      *  Uses a boolean to decide whether to overwrite the cuts (cut) or to just copy (copy cut)
      */
-   private void trimmedCopy(String outputAbsolutePath, boolean overwrite) throws IOException {
-       // Cut command
-       String[] mpegCommand = {"ffmpeg", "-y", "-ss", String.valueOf(this.cutPoint), "-i", this.getAbsolutePath(),
-               "-map", "0", "-c", "copy", outputAbsolutePath};
-       try {
-           ProcessBuilder pbMpeg = new ProcessBuilder(mpegCommand);
-           // redirect both error and stdout to null device (stdout unnecessary here and will only hang)
-           redirectToNullDevice(pbMpeg, true);
-           redirectToNullDevice(pbMpeg, false);
-           Process process = pbMpeg.start();
-           boolean finished = process.waitFor(1, TimeUnit.MINUTES);
-           if (!finished) {
-               throw new InvalidFileException("File is either too large or corrupt and timed out.");
-           } else {
-               if (process.exitValue() != 0) {
-                   throw new ExternalCommandException("Unable to cut video. Ensure ffmpeg is " +
-                           "installed to system path and has write permissions.");
-               }
-           }
-           if (overwrite) {
-               try {
-                   Path outPutPath = Paths.get(outputAbsolutePath);
-                   Path originalPath = Paths.get(this.getAbsolutePath());
-                   Files.move(outPutPath, originalPath, StandardCopyOption.REPLACE_EXISTING);
-               } catch (IOException e) {
-                   throw new IOException(e.getMessage());
-               }
-           }
-       } catch (SecurityException e) {
-           throw new ExternalCommandException("Unable to cut video. Program denied security permissions.");
-       } catch (UnsupportedOperationException e) {
-           throw new ExternalCommandException("Unable to cut video. Operating system unsupported.");
-       } catch (IOException e) {
-           throw new IOException(e.getMessage());
-       } catch (InterruptedException e) {
-           throw new InterruptedIOException("Process cancelled by user.");
-       }
-   }
+    private void trimmedCopy(String outputAbsolutePath, boolean overwrite) throws IOException {
+        Path outputPath = overwrite ? Paths.get(this.getAbsolutePath()) : Paths.get(outputAbsolutePath);
+        streamCopy(this.cutPoint, outputPath);
+    }
 
     /**
-     * Cuts the video by its cut point, can overwrite or just copy the result to a new directory
+     * Stream copies the video (without re-encoding) to the output path, optionally starting from a cut point.
+     * ffmpeg writes to a partial file next to the output, which is only moved into place once it's complete, so a
+     * crash mid-copy never leaves a half-written video behind, or in place of the original when overwriting.
+     * @param startPoint where to start the copy from, or null to copy the whole video
+     */
+    private void streamCopy(Double startPoint, Path outputPath) throws IOException {
+        Path partialPath = outputPath.resolveSibling(outputPath.getFileName() + PARTIAL_EXTENSION);
+        ArrayList<String> mpegCommand = new ArrayList<>(List.of("ffmpeg", "-y"));
+        if (startPoint != null) {
+            mpegCommand.addAll(List.of("-ss", String.valueOf(startPoint)));
+        }
+        // the partial file's extension doesn't tell ffmpeg the format, so it's given explicitly (output is mkv)
+        mpegCommand.addAll(List.of("-i", this.getAbsolutePath(), "-map", "0", "-c", "copy", "-f", "matroska",
+                partialPath.toString()));
+        ProcessBuilder pbMpeg = new ProcessBuilder(mpegCommand);
+        // redirect both error and stdout to null device (stdout unnecessary here and will only hang)
+        redirectToNullDevice(pbMpeg, true);
+        redirectToNullDevice(pbMpeg, false);
+        // closing kills ffmpeg if the copy is cancelled, before its partial file is deleted
+        try (ProcessSupervisor.SupervisedProcess process = ProcessSupervisor.global().start(pbMpeg)) {
+            boolean finished = process.waitFor(copyTimeout());
+            if (!finished) {
+                Files.deleteIfExists(partialPath);
+                throw new InvalidFileException("File is either too large or corrupt and timed out.");
+            } else if (process.exitValue() != 0) {
+                Files.deleteIfExists(partialPath);
+                throw new ExternalCommandException("Unable to cut video. Ensure ffmpeg is " +
+                        "installed to system path and has write permissions.");
+            }
+            // the copy ends when the original did, so it keeps its place on the RecordingTimeline
+            Files.setLastModifiedTime(partialPath, Files.getLastModifiedTime(this.toPath()));
+            try {
+                Files.move(partialPath, outputPath, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(partialPath, outputPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (SecurityException e) {
+            throw new ExternalCommandException("Unable to cut video. Program denied security permissions.");
+        } catch (UnsupportedOperationException e) {
+            throw new ExternalCommandException("Unable to cut video. Operating system unsupported.");
+        } catch (InterruptedException e) {
+            Files.deleteIfExists(partialPath);
+            throw new InterruptedIOException("Process cancelled by user.");
+        }
+    }
+
+    /**
+     * Cuts the video by its cut point, can overwrite or just copy the result to a new directory. Videos with no cut
+     * point are hard linked or copied over as they are (see OutputStrategy).
      * @throws ExternalCommandException
-     * @throws InvalidFileException
+     * @throws InvalidFileException if the video has no cut point (it's still copied over when not overwriting)
      */
     public void cut(String newPath, boolean overwrite) throws ExternalCommandException, InvalidFileException, IOException {
-        String outputAbsolutePath = newPath + "\\" + this.fileName.substring(0, this.fileName.length()-3) + "_cut.mkv";
-        // if we're copying (not overwriting) to a new directory, we need to make a copy of all non-trimmed videos
-        if (this.cutPoint == -1.0 && !overwrite) {
-            // Just copy the video over if it has no cutPoint (overwriting suspended, no creating a new directory
-            // with the cut state of the old directory).
-            String[] mpegCommand = {"ffmpeg","-i", this.getAbsolutePath(), "-map", "0", "-c", "copy", outputAbsolutePath};
-            try {
-                ProcessBuilder pbMpeg = new ProcessBuilder(mpegCommand);
-                // redirect both error and stdout to null device (stdout unnecessary here and will only hang)
-                redirectToNullDevice(pbMpeg, true);
-                redirectToNullDevice(pbMpeg, false);
-                Process process = pbMpeg.start();
-                boolean finished = process.waitFor(1, TimeUnit.MINUTES);
-                if (!finished) {
-                    throw new InvalidFileException("File is either too large or corrupt and timed out.");
-                } else {
-                    if (process.exitValue() != 0) {
-                        throw new ExternalCommandException("Unable to copy video. Ensure ffmpeg is " +
-                                "installed to system path and has write permissions.");
-                    }
-                }
-            } catch(SecurityException e){
-                throw new ExternalCommandException("Unable to cut video. Program denied security permissions.");
-            } catch(UnsupportedOperationException e){
-                throw new ExternalCommandException("Unable to cut video. Operating system unsupported.");
-            } catch(IOException e){
-                throw new IOException(e.getMessage());
-            } catch(InterruptedException e){
-                System.out.println("Process cancelled by user.");
+        cut(newPath, overwrite, OutputStrategy.HARD_LINK);
+    }
+
+    /**
+     * Cuts the video by its cut point, can overwrite or just copy the result to a new directory
+     * @param uncutStrategy how a video with no cut point is placed in the new directory when not overwriting
+     * @throws ExternalCommandException
+     * @throws InvalidFileException if the video has no cut point (it's still copied over when not overwriting)
+     */
+    public void cut(String newPath, boolean overwrite, OutputStrategy uncutStrategy)
+            throws ExternalCommandException, InvalidFileException, IOException {
+        if (this.cutPoint == -1.0) {
+            // if we're copying (not overwriting) to a new directory, we need to make a copy of all non-trimmed videos
+            if (!overwrite) {
+                // Just copy the video over if it has no cutPoint (overwriting suspended, no creating a new directory
+                // with the cut state of the old directory).
+                copyUncut(newPath, uncutStrategy);
             }
+            // when overwriting, an uncut video is left exactly as it is
             throw new InvalidFileException("No CutPoint yet.");
         } else {
             // trimmedCopy either makes a new video and doesn't overwrite, or it makes a new video and then overwrites
             // depending on the user's preference
-            try {
-              trimmedCopy(outputAbsolutePath, overwrite);
-            } catch (ExternalCommandException e) {
-                throw new ExternalCommandException(e.getMessage());
-            } catch (InterruptedIOException e) {
-                throw new InterruptedIOException(e.getMessage());
-            } catch (IOException e) {
-                throw new IOException(e.getMessage());
+            trimmedCopy(cutOutputPath(newPath), overwrite);
+        }
+    }
+
+    /**
+     * Places the whole video, unchanged, in a new directory. Only remuxing goes through ffmpeg (into a "_cut.mkv" like
+     * a trimmed video); every other strategy keeps the video's own file name and bytes.
+     * @return the strategy which placed the video (a later one than asked for if the asked one couldn't be used)
+     */
+    public OutputStrategy copyUncut(String newPath, OutputStrategy strategy) throws IOException {
+        if (strategy == OutputStrategy.REMUX) {
+            streamCopy(null, Paths.get(cutOutputPath(newPath)));
+            return strategy;
+        }
+        return strategy.place(this.toPath(), Paths.get(newPath, this.fileName));
+    }
+
+    private String cutOutputPath(String newPath) {
+        return Paths.get(newPath, this.fileName.substring(0, this.fileName.length() - 3) + "_cut.mkv").toString();
+    }
+
+    /**
+     * Decodes the single frame shown at a timestamp, seeking straight to it rather than reading the video from the
+     * start, for previewing (e.g. a cut point). Nothing about the frame is kept by the video.
+     * @param width width the frame is scaled down to (keeping its aspect ratio), or 0 to keep the video's own size
+     * @return the frame, or null if the video has no frame there
+     */
+    public BufferedImage grabFrame(double timestamp, int width) throws ExternalCommandException, InvalidFileException {
+        double seekPoint = Math.max(0, timestamp);
+        if (duration != null) {
+            // a seek past the last frame decodes nothing
+            seekPoint = Math.min(seekPoint, Math.max(0, duration - 0.1));
+        }
+        ArrayList<String> mpegCommand = new ArrayList<>(List.of("ffmpeg", "-loglevel", "fatal", "-nostats",
+                "-hide_banner", "-ss", String.valueOf(seekPoint), "-i", this.getAbsolutePath(), "-frames:v", "1",
+                "-an"));
+        if (width > 0) {
+            mpegCommand.addAll(List.of("-vf", "scale=" + width + ":-2"));
+        }
+        mpegCommand.addAll(List.of("-pix_fmt", "rgb24", "-f", "image2pipe", "-c:v", "png", "-"));
+        ProcessBuilder pbMpeg = new ProcessBuilder(mpegCommand);
+        redirectToNullDevice(pbMpeg, true);
+        try (ProcessSupervisor.SupervisedProcess process = ProcessSupervisor.global().start(pbMpeg)) {
+            PngFrameReader reader = new PngFrameReader(process.getInputStream());
+            BufferedImage frame = reader.readFrame() ? reader.getImage() : null;
+            if (!process.waitFor(probeTimeout())) {
+                throw new InvalidFileException("File is either too large or corrupt and timed out.");
             }
+            return frame;
+        } catch (IOException e) {
+            throw new InvalidFileException("Unable to read frame at " + timestamp + ". File corrupt.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InvalidFileException("Process cancelled by user.");
         }
     }
 
+    /**
+     * Timeout of a pass decoding the video's keyframes (see ProcessSupervisor.scaledTimeout)
+     */
+    private long decodeTimeout() {
+        return ProcessSupervisor.scaledTimeout(this, 60, 180);
+    }
+
+    /**
+     * Timeout of a quick ffprobe call, which only reads the start of the video
+     */
+    private long probeTimeout() {
+        return ProcessSupervisor.scaledTimeout(this, 15, 15);
+    }
+
+    /**
+     * Timeout of a stream copy, which is bound by the speed of the disk
+     */
+    private long copyTimeout() {
+        return ProcessSupervisor.scaledTimeout(this, 30, 60);
+    }
+
     /**
      * Used during "image2pipe" commands to redirect all errors messages to wherever the null device is depending
      * on a user's operating system.
@@ -220,10 +314,9 @@ public class Video extends File {
     private void addKeyFrameTimestamps() throws ExternalCommandException, InvalidFileException {
         String[] probeCommand = {"ffprobe", "-loglevel", "fatal", "-skip_frame", "nokey", "-select_streams",
                 "v:0", "-show_entries", "frame=pts_time", "-of", "csv", this.getAbsolutePath()};
-        try {
-            ProcessBuilder pbProbe = new ProcessBuilder(probeCommand);
-            redirectToNullDevice(pbProbe, true);
-            Process process = pbProbe.start();
+        ProcessBuilder pbProbe = new ProcessBuilder(probeCommand);
+        redirectToNullDevice(pbProbe, true);
+        try (ProcessSupervisor.SupervisedProcess process = ProcessSupervisor.global().start(pbProbe)) {
             Scanner reader = new Scanner(process.getInputStream()).useDelimiter("[frame|,]");
             while (reader.hasNext()) {
                 String sTimestamp;
@@ -232,7 +325,9 @@ public class Video extends File {
                     this.keyFrameTimeStamps.add(timestamp);
                 }
             }
-            if (process.exitValue() != 0) {
+            if (!process.waitFor(decodeTimeout())) {
+                throw new InvalidFileException("File is either too large or corrupt and timed out.");
+            } else if (process.exitValue() != 0) {
                 throw new ExternalCommandException("Unable to extract key frame timestamps. Ensure ffprobe is " +
                         "installed to system path.");
             }
@@ -243,10 +338,16 @@ public class Video extends File {
             throw new ExternalCommandException("Unable to extract key frame timestamps. Operating system unsupported.");
         } catch (IOException e) {
             throw new InvalidFileException("Unable to extract key frame timestamps. File corrupt.");
+        } catch (InterruptedException e) {
+            throw new InvalidFileException("Process cancelled by user.");
         }
     }
 
     private void addAllKeyFrames() throws ExternalCommandException, InvalidFileException {
+        if (options.getExtractionMode().isRaw()) {
+            addAllRawKeyFrames();
+            return;
+        }
         // Adds all keyframes into the perpetual
         String[] mpegCommand = {"ffmpeg", "-loglevel", "fatal", "-nostats", "-hide_banner", "-probesize", "32",
                 "-analyzeduration", "0", "-i", this.getAbsolutePath(), "-vf",
@@ -254,114 +355,240 @@ public class Video extends File {
                 "image2pipe", "-c:v", "png", "-"};
         // May use this attribute later to determine corruption of a video
         int corruptedKeyFrames = 0;
-        try {
-            ProcessBuilder pbMpeg = new ProcessBuilder(mpegCommand);
-            redirectToNullDevice(pbMpeg, true);
-            Process process = pbMpeg.start();
+        ProcessBuilder pbMpeg = new ProcessBuilder(mpegCommand);
+        redirectToNullDevice(pbMpeg, true);
+        // closing kills ffmpeg if reading stops early (e.g. on a missing timestamp), so it can't hang on a full pipe
+        try (ProcessSupervisor.SupervisedProcess process = ProcessSupervisor.global().start(pbMpeg)) {
 
-            // attempt to generate keyframe objects
-            PushbackInputStream stdout = new PushbackInputStream(process.getInputStream(), 8);
-            BufferedImage keyFrame;
+            // attempt to generate keyframe objects (see PngFrameReader for how polluted pipes are dealt with)
+            PngFrameReader reader = new PngFrameReader(process.getInputStream());
             int keyFrameId = 1;
-            byte[] pngMagicBytes = {(byte)0x89,(byte) 0x50,(byte) 0x4E,(byte)0x47,(byte) 0x0D,(byte)0x0A,
-                    (byte)0x1A,(byte) 0x0A};
-            byte[] buffer = new byte[8];
-
-            // Piping with ffmpeg can cause a LOT of problems. This highly complex, but robust code searches for the
-            // magic bytes representing the header of a complete png keyframe, and deletes all interim bytes, as these
-            // must be erroneous (either unwanted feedback from ffmpeg [which may vary with version] into stdout,
-            // corrupted data, or errors that have managed to find their way into the input stream). IOFile is very
-            // strict and quite poor at skipping polluted data, so won't recognise the stdout as one image otherwise.
-            System.out.println("Attempting to read " + keyFrameTimeStamps.size() + " key frames...");
-            while (true) {
-                try {
-                    // check if the process has finished
-                    if (!process.isAlive()) {
-                        if (process.exitValue() == 0) { // the process has exited after reading final keyframe
-                            break;
-                        } else if (process.exitValue() != 0) { // the process has exited due to an error
-                            throw new ExternalCommandException("Unable to extract key keyFrame. Ensure ffmpeg is " +
-                                    "installed to system path and file is not corrupt.");
-                        }
-                    } else {
-                        // repeatedly attempt to read keyFrame (keyFrame could be corrupt or polluted)
-                        System.out.println("Reading key frame " + keyFrameId + "...");
-                        while (true) {
-                            // Search for magic bytes
-                            int possibleMagicBytesRead = 0;
-                            int possibleMagicByte = 0;
-                            int skippedBytes = 0;
-                            try {
-                                while (possibleMagicBytesRead!= 8 && !Thread.currentThread().isInterrupted()) {
-                                    possibleMagicByte = stdout.read();
-                                    if ((byte) possibleMagicByte == pngMagicBytes[possibleMagicBytesRead]) {
-                                        buffer[possibleMagicBytesRead] = (byte) possibleMagicByte;
-                                        possibleMagicBytesRead++;
-                                    } else if (possibleMagicByte == -1) {
-                                            System.out.println("Trailing bytes were non-image.");
-                                            break;
-                                    } else {
-                                        possibleMagicBytesRead = 0;
-                                        skippedBytes++;
-                                    }
-                                }
-                                System.out.println("Skipped " + skippedBytes + " non-image byte(s).");
-                            } catch (IOException e) {
-                                System.out.println("Keyframe " + keyFrameId +  "corrupted.");
-                                corruptedKeyFrames++;
+            Log.verbose(() -> "Attempting to read " + keyFrameTimeStamps.size() + " key frames...");
+            try {
+                while (reader.readFrame()) {
+                    if (keyFrameId > keyFrameTimeStamps.size()) {
+                        throw new InvalidFileException("File does not contain a timestamp for each keyframe.");
+                    }
+                    addKeyFrame(keyFrameTimeStamps.get(keyFrameId - 1), reader.getImage(), keyFrameId);
+                    if (reader.getImage() == null) {
+                        corruptedKeyFrames++;
+                    }
+                    keyFrameId++;
+                }
+            } catch (IOException e) {
+                logCutOffKeyFrame(keyFrameId);
+                corruptedKeyFrames++;
+            }
+            Metrics.global().add(Metrics.Counter.BYTES_SKIPPED, reader.getSkippedBytes());
+            Log.verbose(() -> "Skipped " + reader.getSkippedBytes() + " non-image byte(s).");
+            // Check to ensure the process has finished in time. The timeout grows with the size of the video.
+            boolean finished = process.waitFor(decodeTimeout());
+            if (!finished) {
+                throw new InvalidFileException("File is either too large or corrupt and timed out.");
+            } else {
+                if (process.exitValue() != 0) {
+                    throw new ExternalCommandException("Ensure ffmpeg is installed to system path, and file is not" +
+                            "so corrupt that it cannot be read.");
+                } else {
+                    int corrupted = corruptedKeyFrames;
+                    Log.verbose(() -> "Successfully read " + keyFrameTimeStamps.size() + " key frames (" +
+                            corrupted + " corrupted).");
+                }
+            }
+        } catch (IOException e) {
+            throw new InvalidFileException("Catastrophic error occurred. File is corrupt.");
+        } catch (InterruptedException e) {
+            System.out.println("Process cancelled by user.");
+        }
+    }
+
+    /**
+     * Adds a keyframe to the video. Corrupt keyframes (no image) are kept as nulls, so keyframe ids still line up.
+     */
+    private void addKeyFrame(Double timestamp, BufferedImage image, int keyFrameId) {
+        Metrics.global().increment(Metrics.Counter.FRAMES_DECODED);
+        if (image != null && options.isCompactStorage()) {
+            // only a thumbnail of the image is kept (see KeyFrameStore)
+            if (keyFrameStore == null) {
+                keyFrameStore = new KeyFrameStore(options.getThumbnailWidth(), options.getThumbnailHeight());
+            }
+            this.keyFrames.add(new KeyFrame(keyFrameStore, keyFrameStore.add(timestamp, keyFrameId, image)));
+            Log.verbose(() -> "Keyframe " + keyFrameId + " (" + timestamp + "s) successfully added.");
+        } else if (image != null) {
+            this.keyFrames.add(new KeyFrame(timestamp, image, keyFrameId));
+            Log.verbose(() -> "Keyframe " + keyFrameId + " (" + timestamp + "s) successfully added.");
+        } else {
+            Metrics.global().increment(Metrics.Counter.CORRUPTED_FRAMES);
+            Log.verbose(() -> "Keyframe " + keyFrameId + " corrupted.");
+            this.keyFrames.add(null);
+        }
+    }
+
+    /**
+     * Counts a keyframe cut off by the end of the pipe as corrupted
+     */
+    private void logCutOffKeyFrame(int keyFrameId) {
+        Metrics.global().increment(Metrics.Counter.CORRUPTED_FRAMES);
+        Log.verbose(() -> "Keyframe " + keyFrameId + " corrupted.");
+    }
+
+    /**
+     * Reads the keyframes, their timestamps and the duration of the video in a single ffmpeg pass, instead of
+     * the separate ffprobe calls of addKeyFrameTimestamps and findDuration. ffmpeg's showinfo filter logs the pts
+     * time of every keyframe it outputs, and the input's duration, to the error stream (see FrameInfoReader). Each
+     * keyframe is paired with the timestamp logged for it by the same ffmpeg process.
+     *
+     * When streaming, each keyframe is matched against the videos before this one as it comes off the pipe. Once one
+     * could be the overlap of this video with a lead video, the rest of the video isn't needed to place it as a
+     * secondary video, so ffmpeg is killed and only the tail of the video (which later clips may overlap) is read.
+     * @param matchAgainst index to match against while streaming, or null to read every keyframe
+     * @param earlierVideosInserted whether every video before this one has been inserted into the index
+     */
+    private void readSinglePass(FingerprintIndex matchAgainst, BooleanSupplier earlierVideosInserted)
+            throws ExternalCommandException, InvalidFileException {
+        streamed = matchAgainst != null;
+        boolean settled = extractKeyFrames(List.of("-i", this.getAbsolutePath()), matchAgainst,
+                earlierVideosInserted);
+        if (settled) {
+            double tailWindow = options.getTailWindow();
+            Log.verbose(() -> "Overlap found, skipping to the last " + tailWindow + " seconds of " + fileName);
+            // keyframes read before the earlier videos were all inserted may have gone past the one which settled it
+            keyFrames.subList(settledAt + 1, keyFrames.size()).clear();
+            keyFrameTimeStamps.subList(Math.min(settledAt + 1, keyFrameTimeStamps.size()),
+                    keyFrameTimeStamps.size()).clear();
+            extractKeyFrames(List.of("-sseof", "-" + tailWindow, "-i", this.getAbsolutePath()), null, null);
+            trimToSettled();
+        }
+    }
+
+    /**
+     * Reads only the keyframes at the start and end of the video, where it can overlap other videos. The head is read
+     * up to headWindow seconds in, then ffmpeg seeks straight to the last tailWindow seconds (the middle isn't even
+     * demuxed). Non-keyframes are skipped by the decoder itself ("-skip_frame nokey"), rather than being decoded and
+     * then thrown away by the select filter, so only keyframes are ever decoded.
+     */
+    private void readWindows() throws ExternalCommandException, InvalidFileException {
+        String path = this.getAbsolutePath();
+        double headWindow = options.getHeadWindow();
+        double tailWindow = options.getTailWindow();
+        extractKeyFrames(List.of("-skip_frame", "nokey", "-t", String.valueOf(headWindow), "-i", path), null,
+                null);
+        if (this.duration == null || this.duration <= headWindow) {
+            return;
+        }
+        if (this.duration > headWindow + tailWindow) {
+            extractKeyFrames(List.of("-skip_frame", "nokey", "-sseof", "-" + tailWindow, "-i", path), null, null);
+        } else {
+            // the windows meet, so the rest of the video is read from where the head ended
+            extractKeyFrames(List.of("-skip_frame", "nokey", "-ss", String.valueOf(headWindow), "-i", path), null,
+                    null);
+        }
+    }
+
+    /**
+     * Runs a single ffmpeg pass over the video, adding each keyframe (and its timestamp) as it's read. Keyframes at
+     * or before the last keyframe already read are skipped, so a pass over the tail never repeats frames.
+     * @param inputOptions ffmpeg options up to and including the input
+     * @param matchAgainst index each keyframe is matched against, or null
+     * @param earlierVideosInserted whether every video before this one has been inserted into the index
+     * @return whether ffmpeg was stopped early, because a keyframe matched the index
+     */
+    private boolean extractKeyFrames(List<String> inputOptions, FingerprintIndex matchAgainst,
+                                     BooleanSupplier earlierVideosInserted)
+            throws ExternalCommandException, InvalidFileException {
+        ExtractionMode mode = options.getExtractionMode();
+        String filter = "select='eq(pict_type,I)'";
+        if (mode.isRaw() && options.isScaled()) {
+            filter += ",scale=" + options.getFrameWidth() + ":" + options.getFrameHeight();
+        }
+        filter += ",showinfo";
+        ArrayList<String> mpegCommand = new ArrayList<>(List.of("ffmpeg", "-nostdin", "-hide_banner", "-nostats",
+                "-loglevel", "info"));
+        mpegCommand.addAll(inputOptions);
+        // every pass keeps the input's timestamps (rather than ones from its seek point, or from zero when it doesn't
+        // seek), and FrameInfoReader takes the input's start time off them, so passes over a video always agree
+        mpegCommand.addAll(List.of("-copyts", "-vf", filter, "-vsync", "0", "-an"));
+        if (mode.isRaw()) {
+            mpegCommand.addAll(List.of("-pix_fmt", mode.getPixelFormat(), "-f", "rawvideo", "-"));
+        } else {
+            mpegCommand.addAll(List.of("-pix_fmt", "rgb24", "-f", "image2pipe", "-c:v", "png", "-"));
+        }
+        int corruptedKeyFrames = 0;
+        boolean settled = false;
+        double lastTimestamp = keyFrameTimeStamps.isEmpty() ? Double.NEGATIVE_INFINITY :
+                keyFrameTimeStamps.get(keyFrameTimeStamps.size() - 1);
+        ProcessBuilder pbMpeg = new ProcessBuilder(mpegCommand);
+        // closing kills ffmpeg if reading stops early (e.g. on a missing timestamp), so it can't hang on a full pipe
+        try (ProcessSupervisor.SupervisedProcess process = ProcessSupervisor.global().start(pbMpeg)) {
+            FrameInfoReader info = new FrameInfoReader(process.getErrorStream());
+            Thread infoThread = new Thread(info, "ffmpeg-info-" + fileName);
+            infoThread.setDaemon(true);
+            infoThread.start();
+
+            int keyFrameId = keyFrames.size() + 1;
+            try {
+                if (mode.isRaw()) {
+                    int[] frameSize = options.isScaled() ?
+                            new int[] {options.getFrameWidth(), options.getFrameHeight()} : info.awaitFrameSize();
+                    if (frameSize != null) {
+                        RawFrameReader reader = new RawFrameReader(process.getInputStream(), frameSize[0],
+                                frameSize[1], mode, options.isDirectBuffers());
+                        while (!settled && reader.readFrame()) {
+                            Double timestamp = info.takeTimestamp();
+                            if (timestamp == null) {
+                                throw new InvalidFileException("File does not contain a timestamp for each keyframe.");
+                            } else if (timestamp > lastTimestamp) {
+                                this.keyFrameTimeStamps.add(timestamp);
+                                addKeyFrame(timestamp, reader.toImage(), keyFrameId);
                                 keyFrameId++;
-                                break;
+                                settled = settlesOverlap(info, matchAgainst, earlierVideosInserted);
                             }
-                            // break again (out of external loop) if trailing post-magic-bytes are non-image
-                            if (possibleMagicByte == -1) {
-                                break;
-                            } else if (possibleMagicBytesRead == 8) {
-                                try {
-                                    // unread to let ImageIO see the magic bytes too
-                                    stdout.unread(buffer, 0, possibleMagicBytesRead);
-                                    keyFrame = ImageIO.read(stdout);
-                                    if (keyFrame != null) {
-                                        try {
-                                            this.keyFrames.add(new KeyFrame(keyFrameTimeStamps.get(keyFrameId-1),
-                                                    keyFrame, keyFrameId));
-                                            System.out.println("Keyframe " + keyFrameId + " Successfully added!.");
-                                            System.out.println("Keyframe timestamp: " +
-                                                    keyFrameTimeStamps.get(keyFrameId-1));
-                                            keyFrameId++;
-                                        } catch (IndexOutOfBoundsException e) {
-                                            throw new InvalidFileException("File does not contain a " +
-                                                    "timestamp for each keyframe.");
-                                        }
-                                    } else {
-                                        System.out.println("Keyframe " + keyFrameId + "corrupted.");
-                                        this.keyFrames.add(null);
-                                        corruptedKeyFrames++;
-                                        keyFrameId++;
-                                    }
-                                } catch (IOException e) {
-                                    System.out.println("Keyframe " + keyFrameId +  "corrupted.");
-                                    this.keyFrames.add(null);
-                                    corruptedKeyFrames++;
-                                    keyFrameId++;
-                                }
+                        }
+                    }
+                } else {
+                    PngFrameReader reader = new PngFrameReader(process.getInputStream());
+                    while (!settled && reader.readFrame()) {
+                        Double timestamp = info.takeTimestamp();
+                        if (timestamp == null) {
+                            throw new InvalidFileException("File does not contain a timestamp for each keyframe.");
+                        } else if (timestamp > lastTimestamp) {
+                            this.keyFrameTimeStamps.add(timestamp);
+                            addKeyFrame(timestamp, reader.getImage(), keyFrameId);
+                            if (reader.getImage() == null) {
+                                corruptedKeyFrames++;
                             }
+                            keyFrameId++;
+                            settled = settlesOverlap(info, matchAgainst, earlierVideosInserted);
                         }
                     }
-                } catch (IllegalThreadStateException e) {
-                    throw new InvalidFileException("Catastrophic error occurred. File is corrupt.");
+                    Metrics.global().add(Metrics.Counter.BYTES_SKIPPED, reader.getSkippedBytes());
                 }
+            } catch (IOException e) {
+                logCutOffKeyFrame(keyFrameId);
+                corruptedKeyFrames++;
             }
-            // Check to ensure the process has finished in time. Large timeout time, as some large videos may take a
-            // while to process.
-            boolean finished = process.waitFor(3, TimeUnit.MINUTES);
-            if (!finished) {
-                throw new InvalidFileException("File is either too large or corrupt and timed out.");
+            if (settled) {
+                // nothing else is needed from this pass, so ffmpeg (and anything it started) is stopped
+                process.kill();
             } else {
-                if (process.exitValue() != 0) {
+                boolean finished = process.waitFor(decodeTimeout());
+                if (!finished) {
+                    throw new InvalidFileException("File is either too large or corrupt and timed out.");
+                } else if (process.exitValue() != 0) {
                     throw new ExternalCommandException("Ensure ffmpeg is installed to system path, and file is not" +
                             "so corrupt that it cannot be read.");
+                }
+            }
+            infoThread.join(TimeUnit.SECONDS.toMillis(15));
+            int corrupted = corruptedKeyFrames;
+            Log.verbose(() -> "Successfully read " + keyFrames.size() + " key frames (" + corrupted +
+                    " corrupted).");
+            if (this.duration == null) {
+                if (info.getDuration() != null) {
+                    this.duration = info.getDuration();
                 } else {
-                    System.out.println("Successfully read " + keyFrameTimeStamps.size() + " key frames.");
+                    // not every container states its duration, so fall back on ffprobe
+                    findDuration();
                 }
             }
         } catch (IOException e) {
@@ -369,6 +596,167 @@ public class Video extends File {
         } catch (InterruptedException e) {
             System.out.println("Process cancelled by user.");
         }
+        return settled;
+    }
+
+    /**
+     * Whether a keyframe read so far settles this video's overlap: a video before it has the same keyframe at the same
+     * point or later, so could be this video's lead video. Keyframes are only matched once every video before this
+     * one is in the index (and no later video can be), so where reading stops never depends on which video happened
+     * to finish reading first. Keyframes still unmatched once the pass is over are matched by settleStreamedOverlap.
+     * @param info log of the pass, giving the duration early (which places the video on the index's timeline)
+     */
+    private boolean settlesOverlap(FrameInfoReader info, FingerprintIndex matchAgainst,
+                                   BooleanSupplier earlierVideosInserted) {
+        if (matchAgainst == null) {
+            return false;
+        }
+        if (this.duration == null) {
+            this.duration = info.getDuration();
+        }
+        return earlierVideosInserted.getAsBoolean() && findSettlingKeyFrame(matchAgainst);
+    }
+
+    /**
+     * Matches the keyframes not matched yet against the index, in order, stopping at the first which settles the
+     * overlap (see settlesOverlap)
+     */
+    private boolean findSettlingKeyFrame(FingerprintIndex index) {
+        while (checkedKeyFrames < keyFrames.size()) {
+            KeyFrame keyFrame = keyFrames.get(checkedKeyFrames);
+            checkedKeyFrames++;
+            if (keyFrame != null && index.couldLead(this, keyFrame.getFingerprint(), keyFrame.getTimestamp())) {
+                settledAt = checkedKeyFrames - 1;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops the keyframes after the one which settled the overlap, other than those in the last tailWindow seconds.
+     * Leaves the video with the keyframes a stopped read followed by a read of the tail gives, however it was read.
+     */
+    private void trimToSettled() {
+        double tailStart = this.duration == null ? Double.NEGATIVE_INFINITY :
+                this.duration - options.getTailWindow();
+        boolean hasTimestamps = keyFrameTimeStamps.size() == keyFrames.size();
+        ArrayList<KeyFrame> kept = new ArrayList<>(keyFrames.subList(0, settledAt + 1));
+        ArrayList<Double> keptTimestamps = hasTimestamps ?
+                new ArrayList<>(keyFrameTimeStamps.subList(0, settledAt + 1)) : keyFrameTimeStamps;
+        for (int i = settledAt + 1; i < keyFrames.size(); i++) {
+            KeyFrame keyFrame = keyFrames.get(i);
+            if (keyFrame != null && keyFrame.getTimestamp() >= tailStart) {
+                kept.add(keyFrame);
+                if (hasTimestamps) {
+                    keptTimestamps.add(keyFrameTimeStamps.get(i));
+                }
+            }
+        }
+        keyFrames = kept;
+        keyFrameTimeStamps = keptTimestamps;
+    }
+
+    /**
+     * Insert stage when streaming: matches the keyframes read before every earlier video was inserted (see
+     * settlesOverlap) against the index, which now holds exactly the videos before this one. If one settles the
+     * overlap, the keyframes a stopped read wouldn't have given are dropped.
+     */
+    void settleStreamedOverlap(FingerprintIndex index) {
+        if (streamed && settledAt < 0 && findSettlingKeyFrame(index)) {
+            trimToSettled();
+        }
+    }
+
+    /**
+     * Finds the width and height of the video's frames with ffprobe. Only needed for raw frames that aren't scaled,
+     * as the size of every frame in the pipe has to be known up front.
+     */
+    private int[] findFrameSize() throws ExternalCommandException, InvalidFileException {
+        String[] probeCommand = {"ffprobe", "-v", "error", "-select_streams", "v:0", "-show_entries",
+                "stream=width,height", "-of", "csv=p=0:s=x", this.getAbsolutePath()};
+        ProcessBuilder pbProbe = new ProcessBuilder(probeCommand);
+        redirectToNullDevice(pbProbe, true);
+        try (ProcessSupervisor.SupervisedProcess process = ProcessSupervisor.global().start(pbProbe)) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            String line = reader.readLine();
+            boolean finished = process.waitFor(probeTimeout());
+            if (!finished) {
+                throw new InvalidFileException("File is either too large or corrupt and timed out.");
+            } else if (process.exitValue() != 0 || line == null) {
+                throw new ExternalCommandException("Unable to find frame size. Ensure ffprobe is installed to " +
+                        "system path.");
+            }
+            String[] size = line.trim().split("x");
+            return new int[] {Integer.parseInt(size[0]), Integer.parseInt(size[1])};
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new InvalidFileException("Unable to find frame size. File corrupt.");
+        } catch (IOException e) {
+            throw new InvalidFileException("Catastrophic error occurred. File is corrupt.");
+        } catch (InterruptedException e) {
+            throw new InvalidFileException("Process cancelled by user.");
+        }
+    }
+
+    /**
+     * Reads every keyframe as a fixed size raw frame (see RawFrameReader) rather than as a PNG. ffmpeg can also
+     * scale the frames down and make them grayscale first, depending on the ScanOptions.
+     */
+    private void addAllRawKeyFrames() throws ExternalCommandException, InvalidFileException {
+        ExtractionMode mode = options.getExtractionMode();
+        int width;
+        int height;
+        String filter = "select='eq(pict_type,I)'";
+        if (options.isScaled()) {
+            width = options.getFrameWidth();
+            height = options.getFrameHeight();
+            filter += ",scale=" + width + ":" + height;
+        } else {
+            int[] frameSize = findFrameSize();
+            width = frameSize[0];
+            height = frameSize[1];
+        }
+        String[] mpegCommand = {"ffmpeg", "-loglevel", "fatal", "-nostats", "-hide_banner", "-probesize", "32",
+                "-analyzeduration", "0", "-i", this.getAbsolutePath(), "-vf", filter, "-vsync", "0", "-an",
+                "-pix_fmt", mode.getPixelFormat(), "-f", "rawvideo", "-"};
+        int corruptedKeyFrames = 0;
+        ProcessBuilder pbMpeg = new ProcessBuilder(mpegCommand);
+        redirectToNullDevice(pbMpeg, true);
+        // closing kills ffmpeg if reading stops early (e.g. on a missing timestamp), so it can't hang on a full pipe
+        try (ProcessSupervisor.SupervisedProcess process = ProcessSupervisor.global().start(pbMpeg)) {
+            RawFrameReader reader = new RawFrameReader(process.getInputStream(), width, height, mode,
+                    options.isDirectBuffers());
+            Log.verbose(() -> "Attempting to read " + keyFrameTimeStamps.size() + " key frames...");
+            int keyFrameId = 1;
+            try {
+                while (reader.readFrame()) {
+                    if (keyFrameId > keyFrameTimeStamps.size()) {
+                        throw new InvalidFileException("File does not contain a timestamp for each keyframe.");
+                    }
+                    addKeyFrame(keyFrameTimeStamps.get(keyFrameId - 1), reader.toImage(), keyFrameId);
+                    keyFrameId++;
+                }
+            } catch (IOException e) {
+                // final frame was cut off
+                logCutOffKeyFrame(keyFrameId);
+                corruptedKeyFrames++;
+            }
+            boolean finished = process.waitFor(decodeTimeout());
+            if (!finished) {
+                throw new InvalidFileException("File is either too large or corrupt and timed out.");
+            } else if (process.exitValue() != 0) {
+                throw new ExternalCommandException("Ensure ffmpeg is installed to system path, and file is not" +
+                        "so corrupt that it cannot be read.");
+            } else {
+                int corrupted = corruptedKeyFrames;
+                Log.verbose(() -> "Successfully read " + keyFrames.size() + " key frames (" + corrupted +
+                        " corrupted).");
+            }
+        } catch (IOException e) {
+            throw new InvalidFileException("Catastrophic error occurred. File is corrupt.");
+        } catch (InterruptedException e) {
+            System.out.println("Process cancelled by user.");
+        }
     }
 
     private void findDuration() {
@@ -376,11 +764,10 @@ public class Video extends File {
         // file type metadata contains it)
         String[] probeCommand = {"ffprobe", "-v", "error", "-show_entries", "format=duration", "-of",
                 "default=noprint_wrappers=1:nokey=1", this.getAbsolutePath()};
-        try {
-            // we don't redirect to null device here, as for some reason the command output arrives through the
-            // error stream
-            ProcessBuilder pbProbe = new ProcessBuilder(probeCommand);
-            Process process = pbProbe.start();
+        // we don't redirect to null device here, as for some reason the command output arrives through the
+        // error stream
+        ProcessBuilder pbProbe = new ProcessBuilder(probeCommand);
+        try (ProcessSupervisor.SupervisedProcess process = ProcessSupervisor.global().start(pbProbe)) {
             // Output duration
             BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
             try {
@@ -390,7 +777,7 @@ public class Video extends File {
                 throw new InvalidFileException("File is corrupt.");
             }
             // Check to ensure the process has finished in time. Short timeout time, as shouldn't be long process.
-            boolean finished = process.waitFor(15, TimeUnit.SECONDS);
+            boolean finished = process.waitFor(probeTimeout());
             if (!finished) {
                 throw new InvalidFileException("File is either too large or corrupt and timed out.");
             } else {
@@ -398,7 +785,7 @@ public class Video extends File {
                     throw new ExternalCommandException("Ensure ffmpeg is installed to system path, and file is not" +
                             "so corrupt that it cannot be read.");
                 } else {
-                    System.out.println("Successfully read " + keyFrameTimeStamps.size() + " key frames.");
+                    Log.verbose(() -> "Successfully read the duration of " + fileName + ".");
                 }
             }
         } catch (IOException e) {
@@ -420,10 +807,11 @@ public class Video extends File {
         for (KeyFrame frameVidTwo: videoTwo.getKeyFrames()) {
             boolean found = false;
             for (KeyFrame frameVidOne : this.keyFrames) {
-                if (frameVidOne.equals(frameVidTwo)) {
-                    // Cut point is lead video duration, subtract lead video overlap time
-                    cutPoint = this.duration - frameVidOne.getTimestamp();
-                    System.out.println("Cut point at: " + cutPoint);
+                if (frameVidOne.matches(frameVidTwo, options.getMatchDistance())) {
+                    // where the lead video ends in the second video (see Overlap.getCutPoint)
+                    cutPoint = frameVidTwo.getTimestamp() + this.duration - frameVidOne.getTimestamp();
+                    double point = cutPoint;
+                    Log.verbose(() -> "Cut point at: " + point);
                     found = true;
                     break;
                 }
@@ -440,6 +828,16 @@ public class Video extends File {
      * @param givenSecondaryVideo The new secondary video to update the new (or old one)
      */
     public void updateSecondaryVideo(Video givenSecondaryVideo) {
+        updateSecondaryVideo(givenSecondaryVideo, findCutPoint(givenSecondaryVideo));
+    }
+
+    /**
+     * updates the secondary video with an already known cut point (e.g. one found through a FingerprintIndex), so
+     * the keyframes don't need comparing again
+     * @param givenSecondaryVideo The new secondary video to update the new (or old one)
+     * @param givenCutPoint where the new secondary video needs to be cut from
+     */
+    public void updateSecondaryVideo(Video givenSecondaryVideo, double givenCutPoint) {
         if (secondaryVideo != null) {
             // update attributes of old secondary video
             Video oldSecondaryVideo = this.secondaryVideo;
@@ -447,7 +845,7 @@ public class Video extends File {
         }
         // update new secondary video
         this.secondaryVideo = givenSecondaryVideo;
-        this.secondaryVideo.setCutPoint(findCutPoint(givenSecondaryVideo));
+        this.secondaryVideo.setCutPoint(givenCutPoint);
     }
 
     /**
@@ -460,7 +858,7 @@ public class Video extends File {
     public Double findOverlap(Video videoTwo) {
         for (KeyFrame frameVidTwo: videoTwo.getKeyFrames()) {
             for (KeyFrame frameVidOne : this.keyFrames) {
-                if (frameVidOne.equals(frameVidTwo)) {
+                if (frameVidOne.matches(frameVidTwo, options.getMatchDistance())) {
                     // For every overlap there are two reported overlaps (vid 1 overlapping vid 2 and vice versa). We
                     // only care about the lead videos overlap (non-lead will be 0). There was a cascading delete bug
                     // when the program was run twice, but this is because when the videos are cut, the non-lead
@@ -477,13 +875,13 @@ public class Video extends File {
         return -1.0;
     }
 
-    public Video(String fileName, String filePath) {
-        super(filePath);
-        this.fileName = fileName;
-        try{
-            this.fileType = FileType.valueOf(fileName.substring(fileName.length() - 3).toUpperCase());
-        } catch (IllegalArgumentException e){
-            throw new InvalidFileException("Invalid file type.");
+    /**
+     * Probe stage: reads the keyframe timestamps and duration of the video with ffprobe
+     */
+    void probe() {
+        if (options.isSinglePass()) {
+            // the timestamps and duration are read along with the keyframes instead
+            return;
         }
         try {
             addKeyFrameTimestamps();
@@ -491,15 +889,186 @@ public class Video extends File {
             e.getMessage();
         }
         try {
-           addAllKeyFrames();
-        } catch(InvalidFileException| ExternalCommandException e) {
+            findDuration();
+        } catch (InvalidFileException | ExternalCommandException e) {
             e.getMessage();
         }
+    }
+
+    /**
+     * Decode stage: reads every keyframe of the video with ffmpeg. Needs the timestamps found by probe.
+     */
+    void decode() {
+        decode(null, null);
+    }
+
+    /**
+     * Decode stage, matching keyframes against the index as they're read when streaming (see readSinglePass)
+     * @param matchAgainst index the videos before this one are inserted into, or null to read every keyframe
+     * @param earlierVideosInserted whether every video before this one has been inserted into the index
+     */
+    void decode(FingerprintIndex matchAgainst, BooleanSupplier earlierVideosInserted) {
         try {
-            findDuration();
-        } catch (InvalidFileException | ExternalCommandException e) {
+            if (options.isSinglePass() && options.isWindowed()) {
+                readWindows();
+            } else if (options.isSinglePass()) {
+                readSinglePass(options.isStreaming() ? matchAgainst : null, earlierVideosInserted);
+            } else {
+                addAllKeyFrames();
+            }
+        } catch(InvalidFileException| ExternalCommandException e) {
             e.getMessage();
         }
+        if (keyFrameStore != null) {
+            // the store holds the timestamps of the read keyframes from here on
+            keyFrameStore.trimToSize();
+            keyFrameTimeStamps = new ArrayList<>();
+        }
+    }
 
+    /**
+     * Decode stage when matching audio: reads the audio track as low sample rate mono samples straight into an
+     * AudioFingerprint, without decoding any video
+     */
+    void readAudio() {
+        ProcessBuilder pbMpeg = new ProcessBuilder("ffmpeg", "-v", "error", "-i", this.getAbsolutePath(), "-vn",
+                "-ac", "1", "-ar", String.valueOf(AudioFingerprint.SAMPLE_RATE), "-f", "s16le", "-");
+        redirectToNullDevice(pbMpeg, true);
+        try (ProcessSupervisor.SupervisedProcess process = ProcessSupervisor.global().start(pbMpeg)) {
+            AudioFingerprint audio = AudioFingerprint.read(new BufferedInputStream(process.getInputStream()));
+            boolean finished = process.waitFor(decodeTimeout());
+            // a video without audio makes ffmpeg fail, and is left without an audio fingerprint
+            if (finished && process.exitValue() == 0) {
+                this.audioFingerprint = audio;
+                Log.verbose(() -> "Successfully read " + audio.getDuration() + "s of audio.");
+            }
+        } catch (IOException e) {
+            Log.verbose(() -> "Could not read the audio of " + fileName + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            System.out.println("Process cancelled by user.");
+        }
+        if (this.duration == null) {
+            try {
+                findDuration();
+            } catch (InvalidFileException | ExternalCommandException e) {
+                e.getMessage();
+            }
+        }
+    }
+
+    /**
+     * Fingerprint stage: computes the fingerprint of every decoded keyframe up front, so matching never has to
+     */
+    void fingerprintKeyFrames() {
+        for (KeyFrame keyFrame : keyFrames) {
+            if (keyFrame != null) {
+                keyFrame.getFingerprint();
+            }
+        }
+    }
+
+    /**
+     * Fills the video with what was remembered about it in a FingerprintCache, instead of reading it with ffmpeg
+     */
+    void loadFromCache(FingerprintCache.Entry entry) {
+        this.duration = entry.getDuration();
+        for (int i = 0; i < entry.getKeyFrameCount(); i++) {
+            this.keyFrameTimeStamps.add(entry.getTimestamp(i));
+            this.keyFrames.add(new KeyFrame(entry.getTimestamp(i), entry.getFingerprint(i), entry.getId(i)));
+        }
+    }
+
+    /**
+     * Fills the video with the audio remembered about it in an AudioCache, instead of reading it with ffmpeg
+     */
+    void loadAudioFromCache(AudioCache.Entry entry) {
+        this.duration = entry.getDuration();
+        this.audioFingerprint = entry.getAudioFingerprint();
+    }
+
+    /**
+     * What an AudioCache should remember about the video's audio, or null if it couldn't be read
+     */
+    AudioCache.Entry toAudioCacheEntry() {
+        if (corrupted || duration == null) {
+            return null;
+        }
+        int[] frames = null;
+        if (audioFingerprint != null) {
+            frames = new int[audioFingerprint.length()];
+            for (int i = 0; i < frames.length; i++) {
+                frames[i] = audioFingerprint.getFrame(i);
+            }
+        }
+        return new AudioCache.Entry(this.getAbsolutePath(), this.length(), this.lastModified(), duration, frames);
+    }
+
+    /**
+     * Creates a FingerprintCache entry of everything read from the video
+     * @return the entry, or null if the video wasn't read properly (so it's read again next time)
+     */
+    FingerprintCache.Entry toCacheEntry() {
+        if (corrupted || duration == null) {
+            return null;
+        }
+        int keyFrameCount = 0;
+        for (KeyFrame keyFrame : keyFrames) {
+            if (keyFrame != null) {
+                keyFrameCount++;
+            }
+        }
+        long[] ids = new long[keyFrameCount];
+        double[] timestamps = new double[keyFrameCount];
+        long[] fingerprints = new long[keyFrameCount];
+        int i = 0;
+        for (KeyFrame keyFrame : keyFrames) {
+            if (keyFrame != null) {
+                ids[i] = keyFrame.getId();
+                timestamps[i] = keyFrame.getTimestamp();
+                fingerprints[i] = keyFrame.getFingerprint();
+                i++;
+            }
+        }
+        return new FingerprintCache.Entry(this.getAbsolutePath(), this.length(), this.lastModified(), duration, ids,
+                timestamps, fingerprints);
+    }
+
+    /**
+     * Creates a video from keyframes which are already known (e.g. synthetic keyframes), without reading the file
+     */
+    public Video(String fileName, String filePath, double duration, List<KeyFrame> keyFrames) {
+        this(fileName, filePath, new ScanOptions(), false);
+        this.duration = duration;
+        for (KeyFrame keyFrame : keyFrames) {
+            this.keyFrames.add(keyFrame);
+            this.keyFrameTimeStamps.add(keyFrame == null ? null : keyFrame.getTimestamp());
+        }
+    }
+
+    public Video(String fileName, String filePath) {
+        this(fileName, filePath, new ScanOptions(), true);
+    }
+
+    public Video(String fileName, String filePath, ScanOptions options) {
+        this(fileName, filePath, options, true);
+    }
+
+    /**
+     * @param read whether to read the video straight away. Unread videos are read stage by stage by the
+     *             IngestionPipeline instead.
+     */
+    Video(String fileName, String filePath, ScanOptions options, boolean read) {
+        super(filePath);
+        this.fileName = fileName;
+        this.options = options;
+        this.fileType = FileType.fromFileName(fileName);
+        if (this.fileType == null) {
+            throw new InvalidFileException("Invalid file type.");
+        }
+        if (read) {
+            probe();
+            decode();
+            fingerprintKeyFrames();
+        }
     }
 }
@@ -4,28 +4,53 @@
 package com.LegMeat.rbo.GUI;
 
 import com.LegMeat.rbo.Backend.Directory;
-import com.LegMeat.rbo.Backend.KeyFrame;
-import com.LegMeat.rbo.Backend.Video;
 import com.LegMeat.rbo.Exceptions.ExternalCommandException;
 import com.LegMeat.rbo.Exceptions.InvalidFileException;
 
-import java.awt.image.BufferedImage;
-import java.util.ArrayList;
+import javax.swing.SwingUtilities;
+import java.awt.GraphicsEnvironment;
 
 
 public class App {
+    private static final String USAGE = "Usage: App <recording folder> [--review] [--copy]\n" +
+            "  --review  check the overlapping videos found before cutting them\n" +
+            "  --copy    write cut videos to a new folder instead of overwriting them";
+
     public static void main(String[] args) {
+        String directoryPath = null;
+        boolean review = false;
+        boolean overwrite = true;
+        for (String arg : args) {
+            if (arg.equals("--review")) {
+                review = true;
+            } else if (arg.equals("--copy")) {
+                overwrite = false;
+            } else if (directoryPath == null && !arg.startsWith("--")) {
+                directoryPath = arg;
+            } else {
+                System.out.println(USAGE);
+                return;
+            }
+        }
+        if (directoryPath == null) {
+            System.out.println(USAGE);
+            return;
+        }
+        if (review && GraphicsEnvironment.isHeadless()) {
+            System.out.println("No display to review on, so the videos are cut straight away.");
+            review = false;
+        }
         try {
-            //Video testVid = new Video("Problem demonstration.mkv",
-                    // "C:\\Users\\OPGam\\Videos\\Solo Progressions\\Problem demonstration.mkv");
-            // testVid.displayKeyFrames();
-            Directory smallTestRecordingFolder = new Directory(
-                    "C:\\Users\\OPGam\\Videos\\Freshie to Self-Sufficency\\Rogue Misadventures");
-            // Directory regularRecordingFolder = new Directory(
-                  //  "C:\\Users\\OPGam\\Videos\\Roblox VR\\Misc Clips");
-            smallTestRecordingFolder.executeCuts(true);
+            Directory recordingFolder = new Directory(directoryPath);
+            if (review) {
+                boolean overwriteOriginals = overwrite;
+                SwingUtilities.invokeLater(() -> new ReviewWindow(recordingFolder, overwriteOriginals)
+                        .setVisible(true));
+            } else {
+                recordingFolder.executeCuts(overwrite);
+            }
         } catch (InvalidFileException | ExternalCommandException e){
-            e.getMessage();
+            System.out.println(e.getMessage());
         }
     }
 }
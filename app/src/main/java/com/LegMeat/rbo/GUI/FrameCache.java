@@ -0,0 +1,192 @@
+package com.LegMeat.rbo.GUI;
+
+import com.LegMeat.rbo.Backend.Log;
+import com.LegMeat.rbo.Backend.Video;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FrameCache holds the preview frames decoded for review, least recently used first, and never more than a set number
+ * of bytes of them. Frames are decoded on demand (see Video.grabFrame), so only the frames being looked at (and the
+ * ones prefetched for what's likely to be looked at next) are ever in memory.
+ *
+ * Frames asked for on screen are decoded on their own thread, ahead of any prefetching, so a long queue of prefetches
+ * never holds up the frame being looked at.
+ */
+public class FrameCache {
+    private final long maxBytes;
+    private final int frameWidth;
+    private final LinkedHashMap<String, BufferedImage> frames = new LinkedHashMap<>(16, 0.75f, true); // access order
+    private final HashMap<String, CompletableFuture<BufferedImage>> pending = new HashMap<>(); // frames being decoded
+    private final HashSet<String> prefetchOnly = new HashSet<>(); // pending frames nobody's waiting on yet
+    private final ThreadPoolExecutor onScreen = decoder("frame-decode");
+    private final ThreadPoolExecutor prefetch = decoder("frame-prefetch");
+    private long bytes = 0;
+
+    /**
+     * @param maxBytes most bytes of frames held at once
+     * @param frameWidth width every frame is scaled down to when decoded
+     */
+    public FrameCache(long maxBytes, int frameWidth) {
+        this.maxBytes = maxBytes;
+        this.frameWidth = frameWidth;
+    }
+
+    /**
+     * The frame of a video at a timestamp, decoded now if it isn't held already (even if it's queued for prefetching)
+     * @return the frame once decoded, or null if the video has no frame there (or can't be read)
+     */
+    public synchronized CompletableFuture<BufferedImage> get(Video video, double timestamp) {
+        String key = key(video, timestamp);
+        BufferedImage frame = frames.get(key);
+        if (frame != null) {
+            return CompletableFuture.completedFuture(frame);
+        }
+        CompletableFuture<BufferedImage> decoding = pending.get(key);
+        if (decoding == null) {
+            decoding = startDecoding(key);
+            schedule(onScreen, decoding, video, timestamp);
+        } else if (prefetchOnly.remove(key)) {
+            // whichever decode finishes first completes the frame, and the other is skipped
+            schedule(onScreen, decoding, video, timestamp);
+        }
+        return decoding;
+    }
+
+    /**
+     * Decodes the frame of a video at a timestamp in the background, unless it's held (or being decoded) already
+     */
+    public synchronized void prefetch(Video video, double timestamp) {
+        String key = key(video, timestamp);
+        if (frames.containsKey(key) || pending.containsKey(key)) {
+            return;
+        }
+        prefetchOnly.add(key);
+        schedule(prefetch, startDecoding(key), video, timestamp);
+    }
+
+    /**
+     * Drops every frame still waiting to be decoded, on screen or prefetched (e.g. once the pair they were for has
+     * been scrolled past). Whatever was waiting on them is given null.
+     */
+    public synchronized void cancelPending() {
+        onScreen.getQueue().clear();
+        prefetch.getQueue().clear();
+        dropPending();
+    }
+
+    /**
+     * Bytes of frames currently held
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Stops decoding (frames being decoded are dropped) and lets go of every frame
+     */
+    public synchronized void close() {
+        onScreen.shutdownNow();
+        prefetch.shutdownNow();
+        dropPending();
+        frames.clear();
+        bytes = 0;
+    }
+
+    private void dropPending() {
+        ArrayList<CompletableFuture<BufferedImage>> dropped = new ArrayList<>(pending.values());
+        pending.clear();
+        prefetchOnly.clear();
+        // a decode already running completes a dropped frame, which is then ignored (see put)
+        for (CompletableFuture<BufferedImage> decoding : dropped) {
+            decoding.complete(null);
+        }
+    }
+
+    private CompletableFuture<BufferedImage> startDecoding(String key) {
+        CompletableFuture<BufferedImage> decoding = new CompletableFuture<>();
+        pending.put(key, decoding);
+        decoding.thenAccept(decoded -> put(key, decoding, decoded));
+        return decoding;
+    }
+
+    private void schedule(ThreadPoolExecutor decoder, CompletableFuture<BufferedImage> decoding, Video video,
+                          double timestamp) {
+        try {
+            decoder.execute(() -> {
+                if (!decoding.isDone()) {
+                    decoding.complete(decode(video, timestamp));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // closed
+            decoding.complete(null);
+        }
+    }
+
+    private BufferedImage decode(Video video, double timestamp) {
+        try {
+            return video.grabFrame(timestamp, frameWidth);
+        } catch (RuntimeException e) {
+            Log.verbose(() -> "Unable to preview " + video.getFileName() + " at " + timestamp + "s: " +
+                    e.getMessage());
+            return null;
+        }
+    }
+
+    private synchronized void put(String key, CompletableFuture<BufferedImage> decoding, BufferedImage frame) {
+        if (pending.get(key) != decoding) {
+            // dropped while decoding
+            return;
+        }
+        pending.remove(key);
+        prefetchOnly.remove(key);
+        if (frame == null) {
+            return;
+        }
+        frames.put(key, frame);
+        bytes += sizeOf(frame);
+        Iterator<Map.Entry<String, BufferedImage>> leastRecent = frames.entrySet().iterator();
+        // the frame just decoded is kept even if it's larger than the whole cache on its own
+        while (bytes > maxBytes && frames.size() > 1) {
+            bytes -= sizeOf(leastRecent.next().getValue());
+            leastRecent.remove();
+        }
+    }
+
+    private static String key(Video video, double timestamp) {
+        // frames a millisecond apart are the same frame
+        return video.getAbsolutePath() + "@" + Math.round(timestamp * 1000);
+    }
+
+    /**
+     * Bytes held by an image's pixels
+     */
+    private static long sizeOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    /**
+     * A single daemon thread decoding one frame at a time, whose queue of frames can be cleared
+     */
+    private static ThreadPoolExecutor decoder(String name) {
+        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,268 @@
+package com.LegMeat.rbo.GUI;
+
+import com.LegMeat.rbo.Backend.CutReport;
+import com.LegMeat.rbo.Backend.CutResult;
+import com.LegMeat.rbo.Backend.Directory;
+import com.LegMeat.rbo.Backend.Overlap;
+import com.LegMeat.rbo.Backend.Video;
+
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.DefaultListModel;
+import javax.swing.ImageIcon;
+import javax.swing.JButton;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.GridLayout;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * ReviewWindow lists every pair of overlapping videos a Directory found, so they can be checked before anything is
+ * cut. For the selected pair it shows the frames the videos were matched on, and the secondary video around its cut
+ * point next to the end of the lead video. Frames are only decoded once a pair is selected (and the next pair's in the
+ * background), and are held in a FrameCache of a fixed size, so any number of pairs can be scrolled through.
+ */
+public class ReviewWindow extends JFrame {
+    private static final int FRAME_WIDTH = 320; // width frames are decoded at
+    private static final long CACHE_BYTES = 64L * 1024 * 1024; // most bytes of frames held at once
+    private static final int NEIGHBOURHOOD = 2; // seconds either side of the cut point shown
+
+    private final Directory directory;
+    private final boolean overwrite; // whether cut videos replace the originals (see App's --copy)
+    private final FrameCache frameCache = new FrameCache(CACHE_BYTES, FRAME_WIDTH);
+    private final DefaultListModel<Overlap> pairs = new DefaultListModel<>();
+    private final JList<Overlap> pairList = new JList<>(pairs);
+    private final ArrayList<JLabel> tiles = new ArrayList<>();
+    private final JLabel status = new JLabel();
+    private final JButton rejectButton = new JButton("Reject pair");
+    private final JButton cutButton = new JButton("Cut videos...");
+    private int shownPair = 0; // bumped on every selection, so frames of a pair scrolled past are never shown
+
+    /**
+     * A frame shown for the selected pair
+     */
+    private static class Tile {
+        private final String caption;
+        private final Video video;
+        private final double timestamp;
+
+        private Tile(String caption, Video video, double timestamp) {
+            this.caption = caption;
+            this.video = video;
+            this.timestamp = timestamp;
+        }
+    }
+
+    public ReviewWindow(Directory directory, boolean overwrite) {
+        super("Review overlaps - " + directory.getDirectoryFolder().getName());
+        this.directory = directory;
+        this.overwrite = overwrite;
+        for (Overlap overlap : directory.getLeadOverlaps()) {
+            pairs.addElement(overlap);
+        }
+
+        pairList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        pairList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                Overlap overlap = (Overlap) value;
+                String text = overlap.getSecondaryVideo().getFileName() + " continues " +
+                        overlap.getLeadVideo().getFileName() + " (cut at " + formatTime(overlap.getCutPoint()) + ")";
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        pairList.addListSelectionListener(event -> {
+            if (!event.getValueIsAdjusting()) {
+                showSelectedPair();
+            }
+        });
+
+        JPanel framePanel = new JPanel(new GridLayout(2, 3, 8, 8));
+        for (int i = 0; i < 6; i++) {
+            JLabel tile = new JLabel("", SwingConstants.CENTER);
+            tile.setVerticalTextPosition(SwingConstants.BOTTOM);
+            tile.setHorizontalTextPosition(SwingConstants.CENTER);
+            tile.setPreferredSize(new Dimension(FRAME_WIDTH + 16, FRAME_WIDTH * 9 / 16 + 48));
+            tile.setBorder(BorderFactory.createEtchedBorder());
+            tiles.add(tile);
+            framePanel.add(tile);
+        }
+
+        rejectButton.addActionListener(event -> rejectSelectedPair());
+        cutButton.addActionListener(event -> cutVideos());
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttons.add(rejectButton);
+        buttons.add(cutButton);
+        JPanel bottom = new JPanel(new BorderLayout());
+        bottom.setBorder(BorderFactory.createEmptyBorder(4, 8, 4, 8));
+        bottom.add(status, BorderLayout.CENTER);
+        bottom.add(buttons, BorderLayout.EAST);
+
+        JSplitPane split = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, new JScrollPane(pairList),
+                new JScrollPane(framePanel));
+        split.setDividerLocation(360);
+        getContentPane().add(split, BorderLayout.CENTER);
+        getContentPane().add(bottom, BorderLayout.SOUTH);
+
+        setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent event) {
+                frameCache.close();
+            }
+        });
+        pack();
+        setLocationRelativeTo(null);
+
+        if (pairs.isEmpty()) {
+            status.setText("No overlapping videos found.");
+            rejectButton.setEnabled(false);
+        } else {
+            pairList.setSelectedIndex(0);
+        }
+    }
+
+    /**
+     * Frames shown for a pair: the matched frames, the end of the lead video, and the secondary video around its cut
+     */
+    private static List<Tile> tilesOf(Overlap overlap) {
+        Video lead = overlap.getLeadVideo();
+        Video secondary = overlap.getSecondaryVideo();
+        double cutPoint = overlap.getCutPoint();
+        return List.of(
+                new Tile("Lead, matched at " + formatTime(overlap.getLeadTimestamp()), lead,
+                        overlap.getLeadTimestamp()),
+                new Tile("Secondary, matched at " + formatTime(overlap.getSecondaryTimestamp()), secondary,
+                        overlap.getSecondaryTimestamp()),
+                new Tile("Lead, last frame", lead, lead.getDuration()),
+                new Tile("Secondary, " + NEIGHBOURHOOD + "s before cut", secondary, cutPoint - NEIGHBOURHOOD),
+                new Tile("Secondary, at cut (" + formatTime(cutPoint) + ")", secondary, cutPoint),
+                new Tile("Secondary, " + NEIGHBOURHOOD + "s after cut", secondary, cutPoint + NEIGHBOURHOOD));
+    }
+
+    private void showSelectedPair() {
+        int pair = ++shownPair;
+        // frames still queued for the pair scrolled past would only hold up this one's
+        frameCache.cancelPending();
+        int index = pairList.getSelectedIndex();
+        if (index < 0) {
+            for (JLabel tile : tiles) {
+                tile.setIcon(null);
+                tile.setText("");
+            }
+            return;
+        }
+        List<Tile> shown = tilesOf(pairs.get(index));
+        for (int i = 0; i < shown.size(); i++) {
+            Tile tile = shown.get(i);
+            JLabel label = tiles.get(i);
+            label.setIcon(null);
+            label.setText("<html><center>" + tile.caption + "<br>Loading...</center></html>");
+            frameCache.get(tile.video, tile.timestamp).thenAccept(frame -> SwingUtilities.invokeLater(() -> {
+                if (pair != shownPair) {
+                    return;
+                }
+                label.setIcon(frame == null ? null : new ImageIcon(frame));
+                label.setText(frame == null ? "<html><center>" + tile.caption + "<br>No frame</center></html>" :
+                        tile.caption);
+                updateStatus();
+            }));
+        }
+        // the next pair is most likely looked at next
+        if (index + 1 < pairs.size()) {
+            for (Tile tile : tilesOf(pairs.get(index + 1))) {
+                frameCache.prefetch(tile.video, tile.timestamp);
+            }
+        }
+        updateStatus();
+    }
+
+    private void rejectSelectedPair() {
+        int index = pairList.getSelectedIndex();
+        if (index < 0) {
+            return;
+        }
+        directory.rejectOverlap(pairs.get(index));
+        pairs.remove(index);
+        if (pairs.isEmpty()) {
+            rejectButton.setEnabled(false);
+        } else {
+            pairList.setSelectedIndex(Math.min(index, pairs.size() - 1));
+        }
+        updateStatus();
+    }
+
+    /**
+     * Cuts the videos in the background by the pairs left, once confirmed
+     */
+    private void cutVideos() {
+        String destination = overwrite ? "overwriting the originals" : "copying them to a new folder";
+        int choice = JOptionPane.showConfirmDialog(this, "Cut the secondary videos of " + pairs.size() + " pairs, " +
+                destination + "?", "Cut videos", JOptionPane.OK_CANCEL_OPTION);
+        if (choice != JOptionPane.OK_OPTION) {
+            return;
+        }
+        rejectButton.setEnabled(false);
+        cutButton.setEnabled(false);
+        pairList.setEnabled(false);
+        frameCache.cancelPending();
+        status.setText("Cutting videos...");
+        new SwingWorker<ArrayList<CutReport>, Void>() {
+            @Override
+            protected ArrayList<CutReport> doInBackground() {
+                return directory.executeCuts(overwrite);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    int successes = 0;
+                    for (CutReport report : get()) {
+                        if (report.getResult() == CutResult.SUCCESS) {
+                            successes++;
+                        }
+                    }
+                    JOptionPane.showMessageDialog(ReviewWindow.this, "Successfully cut " + successes +
+                            " out of " + directory.getVideoList().size() + " videos.");
+                    dispose();
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() == null ? e : e.getCause();
+                    JOptionPane.showMessageDialog(ReviewWindow.this, "Unable to cut videos: " + cause.getMessage(),
+                            "Cut videos", JOptionPane.ERROR_MESSAGE);
+                    cutButton.setEnabled(true);
+                    rejectButton.setEnabled(!pairs.isEmpty());
+                    pairList.setEnabled(true);
+                    updateStatus();
+                }
+            }
+        }.execute();
+    }
+
+    private void updateStatus() {
+        status.setText(pairs.size() + " pairs to cut. Preview frames: " + frameCache.getBytes() / (1024 * 1024) +
+                " of " + CACHE_BYTES / (1024 * 1024) + " MB");
+    }
+
+    private static String formatTime(double seconds) {
+        int whole = (int) Math.max(0, seconds);
+        return String.format("%d:%02d.%d", whole / 60, whole % 60, (int) ((Math.max(0, seconds) - whole) * 10));
+    }
+}
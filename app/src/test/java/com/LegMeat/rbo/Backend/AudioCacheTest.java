@@ -0,0 +1,60 @@
+package com.LegMeat.rbo.Backend;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AudioCacheTest {
+    private static File video(Path folder, String name) throws IOException {
+        File file = folder.resolve(name).toFile();
+        Files.write(file.toPath(), new byte[10]);
+        return file;
+    }
+
+    @Test
+    void audioAndMissingAudioSurviveASaveAndLoad() throws IOException {
+        Path folder = Files.createTempDirectory("audio-cache");
+        File withAudio = video(folder, "one.mkv");
+        File silent = video(folder, "two.mkv");
+        File cacheFile = folder.resolve("cache").toFile();
+        AudioCache cache = new AudioCache(cacheFile);
+        cache.put(new AudioCache.Entry(withAudio.getAbsolutePath(), withAudio.length(), withAudio.lastModified(),
+                12.5, new int[] {7, -1, 0, Integer.MIN_VALUE}));
+        cache.put(new AudioCache.Entry(silent.getAbsolutePath(), silent.length(), silent.lastModified(), 3, null));
+        cache.save();
+
+        AudioCache loaded = new AudioCache(cacheFile);
+        loaded.load();
+        assertEquals(2, loaded.size());
+        AudioFingerprint audio = loaded.lookup(withAudio).getAudioFingerprint();
+        assertEquals(4, audio.length());
+        assertEquals(Integer.MIN_VALUE, audio.getFrame(3));
+        assertEquals(12.5, loaded.lookup(withAudio).getDuration());
+        // remembered as having no audio, so it isn't read again
+        assertNotNull(loaded.lookup(silent));
+        assertNull(loaded.lookup(silent).getAudioFingerprint());
+    }
+
+    @Test
+    void tornCacheIsThrownAway() throws IOException {
+        Path folder = Files.createTempDirectory("audio-cache");
+        File video = video(folder, "one.mkv");
+        File cacheFile = folder.resolve("cache").toFile();
+        AudioCache cache = new AudioCache(cacheFile);
+        cache.put(new AudioCache.Entry(video.getAbsolutePath(), video.length(), video.lastModified(), 1,
+                new int[100]));
+        cache.save();
+        byte[] bytes = Files.readAllBytes(cacheFile.toPath());
+        Files.write(cacheFile.toPath(), Arrays.copyOf(bytes, bytes.length - 3));
+
+        AudioCache loaded = new AudioCache(cacheFile);
+        loaded.load();
+        assertEquals(0, loaded.size());
+    }
+}
@@ -0,0 +1,111 @@
+package com.LegMeat.rbo.Backend;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AudioIndexTest {
+    /**
+     * Audio frames of a whole recording session, as if every moment sounded different
+     */
+    private static int[] session(int frames, long seed) {
+        Random random = new Random(seed);
+        int[] session = new int[frames];
+        for (int i = 0; i < frames; i++) {
+            session[i] = random.nextInt() | 1; // never silent
+        }
+        return session;
+    }
+
+    private static Video clip(String name, int[] frames) {
+        Video video = new Video(name, name, AudioFingerprint.getTimestamp(frames.length), List.of());
+        video.loadAudioFromCache(new AudioCache.Entry(name, 0, 0, video.getDuration(), frames));
+        return video;
+    }
+
+    private static AudioIndex indexOf(Video... videos) {
+        AudioIndex index = new AudioIndex();
+        for (Video video : videos) {
+            index.insert(video);
+        }
+        return index;
+    }
+
+    @Test
+    void findsWhereTheSecondaryStartsInTheLead() {
+        int[] session = session(3000, 1);
+        Video lead = clip("lead.mkv", Arrays.copyOfRange(session, 0, 2000));
+        Video secondary = clip("secondary.mkv", Arrays.copyOfRange(session, 1500, 3000));
+        AudioIndex index = indexOf(lead, secondary);
+
+        Overlap overlap = index.findLeadOverlap(secondary);
+        assertNotNull(overlap);
+        assertSame(lead, overlap.getLeadVideo());
+        assertEquals(AudioFingerprint.getTimestamp(1500), overlap.getLeadTimestamp(), 1e-9);
+        assertEquals(0.0, overlap.getSecondaryTimestamp());
+        // the lead starts before the secondary, so it isn't the secondary video of anything
+        assertNull(index.findLeadOverlap(lead));
+    }
+
+    @Test
+    void toleratesFramesWhichDifferByABit() {
+        int[] session = session(3000, 2);
+        int[] secondaryFrames = Arrays.copyOfRange(session, 1200, 3000);
+        Random random = new Random(3);
+        for (int i = 0; i < secondaryFrames.length; i++) {
+            // recordings rarely line up to the sample, so a few bits differ here and there
+            if (random.nextInt(4) == 0) {
+                secondaryFrames[i] ^= 1 << random.nextInt(32);
+            }
+        }
+        Video lead = clip("lead.mkv", Arrays.copyOfRange(session, 0, 2000));
+        Video secondary = clip("secondary.mkv", secondaryFrames);
+
+        Overlap overlap = indexOf(lead, secondary).findLeadOverlap(secondary);
+        assertNotNull(overlap);
+        assertEquals(AudioFingerprint.getTimestamp(1200), overlap.getLeadTimestamp(), 1e-9);
+    }
+
+    @Test
+    void unrelatedAudioDoesNotMatch() {
+        Video one = clip("one.mkv", session(2000, 4));
+        Video two = clip("two.mkv", session(2000, 5));
+        assertNull(indexOf(one, two).findLeadOverlap(two));
+    }
+
+    @Test
+    void silentTrackCannotBeToldByAudio() {
+        int[] session = session(3000, 7);
+        Video lead = clip("lead.mkv", Arrays.copyOfRange(session, 0, 2000));
+        // the same recording with its audio muted: every frame is silent
+        Video muted = clip("muted.mkv", new int[1500]);
+        int[] quietEnd = Arrays.copyOfRange(session, 0, 2000);
+        Arrays.fill(quietEnd, 1000, 2000, 0);
+        Video fadesOut = clip("fades out.mkv", quietEnd);
+
+        assertTrue(AudioIndex.canMatchByAudio(lead));
+        assertFalse(AudioIndex.canMatchByAudio(muted));
+        // a later video overlapping the silent end couldn't be found either
+        assertFalse(AudioIndex.canMatchByAudio(fadesOut));
+        assertNull(indexOf(lead, muted).findLeadOverlap(muted));
+    }
+
+    @Test
+    void earliestContinuationIsChosenForEachLead() {
+        int[] session = session(4000, 6);
+        Video lead = clip("lead.mkv", Arrays.copyOfRange(session, 0, 2000));
+        Video early = clip("early.mkv", Arrays.copyOfRange(session, 1000, 2500));
+        Video late = clip("late.mkv", Arrays.copyOfRange(session, 1800, 4000));
+        AudioIndex index = indexOf(lead, early, late);
+
+        List<Overlap> overlaps = index.findLeadOverlaps(List.of(lead, late, early));
+        Overlap ofLead = overlaps.stream().filter(overlap -> overlap.getLeadVideo() == lead).findFirst().orElse(null);
+        assertNotNull(ofLead);
+        assertSame(early, ofLead.getSecondaryVideo());
+        assertEquals(AudioFingerprint.getTimestamp(1000), ofLead.getLeadTimestamp(), 1e-9);
+    }
+}
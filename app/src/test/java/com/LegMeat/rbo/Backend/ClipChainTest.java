@@ -0,0 +1,53 @@
+package com.LegMeat.rbo.Backend;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClipChainTest {
+    private static Video video(String path) {
+        return new Video(new File(path).getName(), path, 60.0, List.of());
+    }
+
+    @Test
+    void concatListStartsEachLaterVideoAtItsInpoint() {
+        Video first = video("/recordings/clip 1.mkv");
+        Video second = video("/recordings/clip 2.mkv");
+        Video third = video("/recordings/clip 3.mkv");
+        ClipChain chain = new ClipChain();
+        chain.add(first, 0);
+        chain.add(second, 12.5);
+        chain.add(third, 3.0);
+
+        assertEquals("ffconcat version 1.0\n" +
+                "file '" + first.getAbsolutePath() + "'\n" +
+                "file '" + second.getAbsolutePath() + "'\n" +
+                "inpoint 12.5\n" +
+                "file '" + third.getAbsolutePath() + "'\n" +
+                "inpoint 3.0\n", chain.toConcatList());
+        assertEquals(3, chain.size());
+        assertSame(first, chain.getFirstVideo());
+    }
+
+    @Test
+    void singleQuotesInPathsAreEscaped() {
+        Video video = video("/recordings/it's live.mkv");
+        ClipChain chain = new ClipChain();
+        chain.add(video, 0);
+
+        String escaped = video.getAbsolutePath().replace("'", "'\\''");
+        assertTrue(escaped.contains("it'\\''s live.mkv"));
+        assertEquals("ffconcat version 1.0\nfile '" + escaped + "'\n", chain.toConcatList());
+    }
+
+    @Test
+    void descriptionNamesEveryVideo() {
+        ClipChain chain = new ClipChain();
+        chain.add(video("/recordings/a.mkv"), 0);
+        chain.add(video("/recordings/b.mkv"), 4.0);
+        assertEquals("a.mkv -> b.mkv (from 4.0s)", chain.toString());
+    }
+}
@@ -0,0 +1,133 @@
+package com.LegMeat.rbo.Backend;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FingerprintCacheTest {
+    private static final String SETTINGS = "PNG 64x36";
+
+    private static File video(Path folder, String name, int size) throws IOException {
+        File file = folder.resolve(name).toFile();
+        Files.write(file.toPath(), new byte[size]);
+        return file;
+    }
+
+    private static FingerprintCache.Entry entry(File file, int keyFrames) {
+        long[] ids = new long[keyFrames];
+        double[] timestamps = new double[keyFrames];
+        long[] fingerprints = new long[keyFrames];
+        for (int i = 0; i < keyFrames; i++) {
+            ids[i] = i + 1;
+            timestamps[i] = i * 2.5;
+            fingerprints[i] = 0x9E3779B97F4A7C15L * (i + 1);
+        }
+        return new FingerprintCache.Entry(file.getAbsolutePath(), file.length(), file.lastModified(), 61.25, ids,
+                timestamps, fingerprints);
+    }
+
+    private static FingerprintCache saved(Path folder, FingerprintCache.Entry... entries) throws IOException {
+        FingerprintCache cache = new FingerprintCache(folder.resolve("cache").toFile(), SETTINGS);
+        for (FingerprintCache.Entry entry : entries) {
+            cache.put(entry);
+        }
+        cache.save();
+        return cache;
+    }
+
+    @Test
+    void entriesSurviveASaveAndLoad() throws IOException {
+        Path folder = Files.createTempDirectory("fingerprint-cache");
+        File one = video(folder, "one.mkv", 10);
+        File two = video(folder, "two.mkv", 20);
+        FingerprintCache cache = saved(folder, entry(one, 3), entry(two, 0));
+
+        FingerprintCache loaded = new FingerprintCache(cache.getCacheFile(), SETTINGS);
+        loaded.load();
+        assertEquals(2, loaded.size());
+        FingerprintCache.Entry entry = loaded.lookup(one);
+        assertNotNull(entry);
+        assertEquals(61.25, entry.getDuration());
+        assertEquals(3, entry.getKeyFrameCount());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i + 1, entry.getId(i));
+            assertEquals(i * 2.5, entry.getTimestamp(i));
+            assertEquals(0x9E3779B97F4A7C15L * (i + 1), entry.getFingerprint(i));
+        }
+        assertEquals(0, loaded.lookup(two).getKeyFrameCount());
+    }
+
+    @Test
+    void modifiedVideosAreNotLookedUp() throws IOException {
+        Path folder = Files.createTempDirectory("fingerprint-cache");
+        File one = video(folder, "one.mkv", 10);
+        FingerprintCache cache = saved(folder, entry(one, 2));
+        Files.write(one.toPath(), new byte[11]);
+        assertNull(cache.lookup(one));
+    }
+
+    @Test
+    void cacheMadeWithOtherSettingsIsIgnored() throws IOException {
+        Path folder = Files.createTempDirectory("fingerprint-cache");
+        FingerprintCache cache = saved(folder, entry(video(folder, "one.mkv", 10), 2));
+        FingerprintCache loaded = new FingerprintCache(cache.getCacheFile(), "RAW_GRAY 64x36");
+        loaded.load();
+        assertEquals(0, loaded.size());
+    }
+
+    @Test
+    void tornCacheIsThrownAway() throws IOException {
+        Path folder = Files.createTempDirectory("fingerprint-cache");
+        FingerprintCache cache = saved(folder, entry(video(folder, "one.mkv", 10), 4),
+                entry(video(folder, "two.mkv", 20), 4));
+        byte[] bytes = Files.readAllBytes(cache.getCacheFile().toPath());
+        Files.write(cache.getCacheFile().toPath(), Arrays.copyOf(bytes, bytes.length - 5));
+
+        FingerprintCache loaded = new FingerprintCache(cache.getCacheFile(), SETTINGS);
+        loaded.load();
+        assertEquals(0, loaded.size());
+    }
+
+    @Test
+    void corruptKeyFrameCountIsRejected() throws IOException {
+        File one = video(Files.createTempDirectory("fingerprint-cache"), "one.mkv", 10);
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        FingerprintCache.writeEntry(new DataOutputStream(written), entry(one, 1));
+        byte[] bytes = written.toByteArray();
+        // the keyframe count sits right before the single keyframe (id, timestamp and fingerprint: 24 bytes)
+        ByteBuffer.wrap(bytes).putInt(bytes.length - 24 - Integer.BYTES, Integer.MAX_VALUE);
+        assertThrows(IllegalArgumentException.class, () -> FingerprintCache.readEntry(ByteBuffer.wrap(bytes)));
+        ByteBuffer.wrap(bytes).putInt(bytes.length - 24 - Integer.BYTES, -1);
+        assertThrows(IllegalArgumentException.class, () -> FingerprintCache.readEntry(ByteBuffer.wrap(bytes)));
+    }
+
+    @Test
+    void cacheWithACorruptEntryIsThrownAway() throws IOException {
+        Path folder = Files.createTempDirectory("fingerprint-cache");
+        FingerprintCache cache = saved(folder, entry(video(folder, "one.mkv", 10), 1));
+        byte[] bytes = Files.readAllBytes(cache.getCacheFile().toPath());
+        ByteBuffer.wrap(bytes).putInt(bytes.length - 24 - Integer.BYTES, Integer.MAX_VALUE);
+        Files.write(cache.getCacheFile().toPath(), bytes);
+
+        FingerprintCache loaded = new FingerprintCache(cache.getCacheFile(), SETTINGS);
+        loaded.load();
+        assertEquals(0, loaded.size());
+    }
+
+    @Test
+    void missingCacheLeavesItEmpty() throws IOException {
+        Path folder = Files.createTempDirectory("fingerprint-cache");
+        FingerprintCache cache = new FingerprintCache(folder.resolve("none").toFile(), SETTINGS);
+        cache.load();
+        assertEquals(0, cache.size());
+    }
+}
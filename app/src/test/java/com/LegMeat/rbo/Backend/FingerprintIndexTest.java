@@ -0,0 +1,148 @@
+package com.LegMeat.rbo.Backend;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FingerprintIndexTest {
+    private static final long NOW = System.currentTimeMillis() / 1000 * 1000;
+
+    /**
+     * A video of known keyframes, which finished recording the given number of seconds ago
+     * @param keyFrames timestamp and fingerprint of each keyframe, in pairs
+     */
+    private static Video video(Path folder, String name, double duration, long secondsAgo, double... keyFrames)
+            throws IOException {
+        File file = folder.resolve(name).toFile();
+        Files.write(file.toPath(), new byte[1]);
+        assertTrue(file.setLastModified(NOW - secondsAgo * 1000));
+        ArrayList<KeyFrame> frames = new ArrayList<>();
+        for (int i = 0; i < keyFrames.length; i += 2) {
+            frames.add(new KeyFrame(keyFrames[i], (long) keyFrames[i + 1], frames.size() + 1));
+        }
+        return new Video(name, file.getPath(), duration, frames);
+    }
+
+    /**
+     * A video of known keyframes, not backed by a file (so not on any timeline)
+     */
+    private static Video video(String name, double duration, double... keyFrames) {
+        ArrayList<KeyFrame> frames = new ArrayList<>();
+        for (int i = 0; i < keyFrames.length; i += 2) {
+            frames.add(new KeyFrame(keyFrames[i], (long) keyFrames[i + 1], frames.size() + 1));
+        }
+        return new Video(name, "/recordings/" + name, duration, frames);
+    }
+
+    private static FingerprintIndex indexOf(Video... videos) {
+        FingerprintIndex index = new FingerprintIndex();
+        for (Video video : videos) {
+            index.insert(video);
+        }
+        return index;
+    }
+
+    @Test
+    void earliestContinuationOfTheLeadIsChosen() {
+        Video lead = video("lead.mkv", 100, 10, 0xA, 60, 0xB, 80, 0xC);
+        Video late = video("late.mkv", 50, 0, 0xC);
+        Video early = video("early.mkv", 50, 0, 0xB, 20, 0xC);
+        FingerprintIndex index = indexOf(lead, late, early);
+
+        Overlap overlap = index.findEarliestOverlap(lead);
+        assertSame(early, overlap.getSecondaryVideo());
+        assertEquals(60.0, overlap.getLeadTimestamp());
+        assertEquals(40.0, overlap.getCutPoint());
+        // the lead starts before both, so leads neither of them the other way round
+        assertNull(index.findEarliestOverlap(late));
+    }
+
+    @Test
+    void cutPointCountsWhereTheMatchIsInTheSecondary() {
+        // the secondary's opening keyframe isn't in the lead, and the lead shows its matched frame twice
+        Video lead = video("lead.mkv", 100, 10, 0xA, 60, 0xB, 70, 0xB);
+        Video secondary = video("secondary.mkv", 50, 0, 0xF, 5, 0xB, 7, 0xA);
+        Overlap overlap = indexOf(lead, secondary).findEarliestOverlap(lead);
+
+        assertSame(secondary, overlap.getSecondaryVideo());
+        // the secondary's earliest matching keyframe, paired with the lead's earliest keyframe it matches
+        assertEquals(60.0, overlap.getLeadTimestamp());
+        assertEquals(5.0, overlap.getSecondaryTimestamp());
+        assertEquals(5 + 100 - 60.0, overlap.getCutPoint());
+        assertEquals(overlap.getCutPoint(), (double) lead.findCutPoint(secondary));
+    }
+
+    @Test
+    void tiesGoToTheVideoInsertedFirst() {
+        Video lead = video("lead.mkv", 100, 60, 0xB);
+        // named so that name order is the opposite of insertion order
+        Video b = video("b.mkv", 50, 0, 0xB);
+        Video a = video("a.mkv", 50, 0, 0xB);
+        FingerprintIndex index = indexOf(lead, b, a);
+
+        assertSame(b, index.findEarliestOverlap(lead).getSecondaryVideo());
+        List<Overlap> overlaps = index.findOverlaps(lead);
+        assertEquals(2, overlaps.size());
+        assertSame(b, overlaps.get(0).getSecondaryVideo());
+        assertSame(a, overlaps.get(1).getSecondaryVideo());
+    }
+
+    @Test
+    void matchesThePairwiseSearch() {
+        Random random = new Random(21);
+        for (int directory = 0; directory < 50; directory++) {
+            ArrayList<Video> videos = new ArrayList<>();
+            for (int v = 0; v < 6; v++) {
+                int count = 1 + random.nextInt(12);
+                double[] keyFrames = new double[count * 2];
+                for (int k = 0; k < count; k++) {
+                    keyFrames[2 * k] = k * 2.0;
+                    // few fingerprints, so videos share plenty of them (0 is never a fingerprint, see LOW_INFORMATION)
+                    keyFrames[2 * k + 1] = 1 + random.nextInt(8);
+                }
+                videos.add(video("video " + v + ".mkv", count * 2.0, keyFrames));
+            }
+            FingerprintIndex index = indexOf(videos.toArray(new Video[0]));
+            for (Video lead : videos) {
+                List<Overlap> overlaps = index.findOverlaps(lead);
+                for (Video other : videos) {
+                    if (other == lead) {
+                        continue;
+                    }
+                    Overlap found = overlaps.stream().filter(overlap -> overlap.getSecondaryVideo() == other)
+                            .findFirst().orElse(null);
+                    double expected = lead.findCutPoint(other);
+                    assertEquals(expected, found == null ? -1.0 : found.getCutPoint(), 1e-9,
+                            "directory " + directory + ", " + lead.getFileName() + " -> " + other.getFileName());
+                }
+            }
+        }
+    }
+
+    @Test
+    void couldLeadOnlyCountsVideosRecordedAroundTheSameTime() throws IOException {
+        Path folder = Files.createTempDirectory("fingerprint-index");
+        Video lead = video(folder, "lead.mkv", 60, 3600, 10, 0x11, 50, 0x22);
+        // another session, days earlier, showing the same menu frame a little later on
+        Video elsewhere = video(folder, "elsewhere.mkv", 60, 3 * 86400, 55, 0x22);
+        Video reading = video(folder, "reading.mkv", 60, 3600 - 50, 0, 0x22);
+        Video later = video(folder, "later.mkv", 60, 60, 0, 0x22);
+        FingerprintIndex index = indexOf(lead, elsewhere);
+
+        assertTrue(index.couldLead(later, 0x22, 0));
+        assertTrue(index.couldLead(reading, 0x22, 52));
+        index.setTimeline(new RecordingTimeline(List.of(lead, elsewhere), 60));
+        assertFalse(index.couldLead(later, 0x22, 0));
+        assertTrue(index.couldLead(reading, 0x22, 40));
+        // only the other session has the frame this late
+        assertFalse(index.couldLead(reading, 0x22, 52));
+    }
+}
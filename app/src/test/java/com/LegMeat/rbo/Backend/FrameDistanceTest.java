@@ -0,0 +1,96 @@
+package com.LegMeat.rbo.Backend;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameDistanceTest {
+    private final FrameDistance.Kernel scalar = new FrameDistance.ScalarKernel();
+    private final FrameDistance.Kernel vector = new VectorFrameDistance();
+
+    private static ByteBuffer randomBuffer(int length, Random random, boolean direct) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+        buffer.put(bytes).clear();
+        return buffer;
+    }
+
+    /**
+     * Distances worked out one byte at a time, without any early exit
+     */
+    private static long plainDistance(ByteBuffer one, int offsetOne, ByteBuffer two, int offsetTwo, int length,
+                                      boolean squared) {
+        long distance = 0;
+        for (int i = 0; i < length; i++) {
+            int difference = (one.get(offsetOne + i) & 0xFF) - (two.get(offsetTwo + i) & 0xFF);
+            distance += squared ? (long) difference * difference : Math.abs(difference);
+        }
+        return distance;
+    }
+
+    @Test
+    void vectorKernelMatchesScalarKernel() {
+        Random random = new Random(11);
+        // lengths around and between vector sizes, so the tail loop is covered too
+        for (int length : new int[] {0, 1, 15, 16, 17, 63, 64, 65, 255, 1000, 4096, 64 * 36 * 3 + 5}) {
+            for (boolean direct : new boolean[] {false, true}) {
+                int offsetOne = random.nextInt(8);
+                int offsetTwo = random.nextInt(8);
+                ByteBuffer one = randomBuffer(length + offsetOne, random, direct);
+                ByteBuffer two = randomBuffer(length + offsetTwo, random, direct);
+                long sad = plainDistance(one, offsetOne, two, offsetTwo, length, false);
+                long ssd = plainDistance(one, offsetOne, two, offsetTwo, length, true);
+                String name = "length " + length + (direct ? ", direct" : "");
+                assertEquals(sad, scalar.sad(one, offsetOne, two, offsetTwo, length, Long.MAX_VALUE), name);
+                assertEquals(sad, vector.sad(one, offsetOne, two, offsetTwo, length, Long.MAX_VALUE), name);
+                assertEquals(ssd, scalar.ssd(one, offsetOne, two, offsetTwo, length, Long.MAX_VALUE), name);
+                assertEquals(ssd, vector.ssd(one, offsetOne, two, offsetTwo, length, Long.MAX_VALUE), name);
+            }
+        }
+    }
+
+    @Test
+    void extremeBytesDoNotOverflow() {
+        int length = 1 << 16;
+        ByteBuffer zeros = ByteBuffer.allocate(length);
+        ByteBuffer full = ByteBuffer.allocate(length);
+        for (int i = 0; i < length; i++) {
+            full.put(i, (byte) 0xFF);
+        }
+        assertEquals(255L * length, vector.sad(zeros, 0, full, 0, length, Long.MAX_VALUE));
+        assertEquals(255L * 255 * length, vector.ssd(zeros, 0, full, 0, length, Long.MAX_VALUE));
+        assertEquals(255L * 255 * length, scalar.ssd(full, 0, zeros, 0, length, Long.MAX_VALUE));
+    }
+
+    @Test
+    void stopsEarlyOncePastTheLimit() {
+        Random random = new Random(12);
+        int length = 1 << 14;
+        ByteBuffer one = randomBuffer(length, random, false);
+        ByteBuffer two = randomBuffer(length, random, false);
+        long sad = plainDistance(one, 0, two, 0, length, false);
+        long ssd = plainDistance(one, 0, two, 0, length, true);
+        for (FrameDistance.Kernel kernel : new FrameDistance.Kernel[] {scalar, vector}) {
+            long limit = sad / 10;
+            long stopped = kernel.sad(one, 0, two, 0, length, limit);
+            assertTrue(stopped > limit, "distance past the limit");
+            assertTrue(stopped < sad, "stopped before the end");
+            assertTrue(kernel.ssd(one, 0, two, 0, length, ssd / 10) < ssd, "stopped before the end");
+            // a limit the frames stay within gives the full distance
+            assertEquals(sad, kernel.sad(one, 0, two, 0, length, sad));
+            assertEquals(ssd, kernel.ssd(one, 0, two, 0, length, ssd));
+        }
+    }
+
+    @Test
+    void identicalFramesAreZeroApart() {
+        byte[] frame = new byte[999];
+        new Random(13).nextBytes(frame);
+        assertEquals(0, FrameDistance.sad(frame, frame.clone(), Long.MAX_VALUE));
+        assertEquals(0, FrameDistance.ssd(frame, frame.clone(), 0));
+    }
+}
@@ -0,0 +1,58 @@
+package com.LegMeat.rbo.Backend;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameInfoReaderTest {
+    private static FrameInfoReader read(String log) {
+        FrameInfoReader reader = new FrameInfoReader(new ByteArrayInputStream(log.getBytes(StandardCharsets.UTF_8)));
+        reader.run();
+        return reader;
+    }
+
+    @Test
+    void readsDurationSizeAndTimestampsFromTheStart() throws InterruptedException {
+        FrameInfoReader reader = read("Input #0, matroska,webm, from 'clip.mkv':\n" +
+                "  Duration: 01:02:03.50, start: 1.400000, bitrate: 6000 kb/s\n" +
+                "  Stream #0:0: Video: h264 (High), yuv420p, 1920x1080, 60 fps\n" +
+                "[Parsed_showinfo_1 @ 0x5581] n:   0 pts:   1400 pts_time:1.4     duration:16 s:64x36 i:P iskey:1\n" +
+                "[Parsed_showinfo_1 @ 0x5581] n:   1 pts:   3400 pts_time:3.4     duration:16 s:64x36 i:P iskey:1\n");
+
+        assertEquals(3600 + 2 * 60 + 3.5, reader.getDuration(), 1e-9);
+        assertArrayEquals(new int[] {64, 36}, reader.awaitFrameSize());
+        // timestamps are from the start of the video, not the container's start time
+        assertEquals(0.0, reader.takeTimestamp(), 1e-9);
+        assertEquals(2.0, reader.takeTimestamp(), 1e-9);
+        assertNull(reader.takeTimestamp());
+    }
+
+    @Test
+    void startTimeIsReadWithoutADuration() throws InterruptedException {
+        FrameInfoReader reader = read("  Duration: N/A, start: 2.000000, bitrate: N/A\n" +
+                "[Parsed_showinfo_1 @ 0x5581] n:   0 pts:   5000 pts_time:5 s:32x18 \n");
+
+        assertNull(reader.getDuration());
+        assertEquals(3.0, reader.takeTimestamp(), 1e-9);
+    }
+
+    @Test
+    void frameWithoutAPtsKeepsItsPlace() throws InterruptedException {
+        FrameInfoReader reader = read("  Duration: 00:00:10.00, start: 0.000000, bitrate: 100 kb/s\n" +
+                "[Parsed_showinfo_1 @ 0x5581] n:   0 pts:NOPTS pts_time:NOPTS s:32x18 \n" +
+                "[Parsed_showinfo_1 @ 0x5581] n:   1 pts:   4000 pts_time:4 s:32x18 \n");
+
+        assertTrue(Double.isNaN(reader.takeTimestamp()));
+        assertEquals(4.0, reader.takeTimestamp(), 1e-9);
+    }
+
+    @Test
+    void noKeyFramesReportsNoFrameSize() throws InterruptedException {
+        FrameInfoReader reader = read("  Duration: 00:00:10.00, start: 0.000000, bitrate: 100 kb/s\n");
+        assertNull(reader.awaitFrameSize());
+        assertNull(reader.takeTimestamp());
+    }
+}
@@ -0,0 +1,70 @@
+package com.LegMeat.rbo.Backend;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HammingIndexTest {
+    /**
+     * A fingerprint with the given number of random bits flipped
+     */
+    private static long flip(long fingerprint, int bits, Random random) {
+        long flipped = fingerprint;
+        while (Long.bitCount(flipped ^ fingerprint) < bits) {
+            flipped ^= 1L << random.nextInt(Long.SIZE);
+        }
+        return flipped;
+    }
+
+    @Test
+    void findsExactlyTheFingerprintsWithinTheDistance() {
+        Random random = new Random(7);
+        HammingIndex index = new HammingIndex();
+        ArrayList<Long> stored = new ArrayList<>();
+        long query = random.nextLong();
+        // fingerprints at every distance from the query, including the ones just past each chunk boundary
+        for (int distance = 0; distance <= 20; distance++) {
+            for (int i = 0; i < 5; i++) {
+                stored.add(flip(query, distance, random));
+            }
+        }
+        for (int i = 0; i < 200; i++) {
+            stored.add(random.nextLong());
+        }
+        stored.forEach(index::add);
+
+        for (int maxDistance = 0; maxDistance <= 16; maxDistance++) {
+            HashSet<Long> expected = new HashSet<>();
+            for (long fingerprint : stored) {
+                if (Fingerprint.hammingDistance(query, fingerprint) <= maxDistance) {
+                    expected.add(fingerprint);
+                }
+            }
+            ArrayList<Long> found = index.search(query, maxDistance);
+            assertEquals(expected, new HashSet<>(found), "distance " + maxDistance);
+            assertEquals(expected.size(), found.size(), "each match only once, distance " + maxDistance);
+        }
+    }
+
+    @Test
+    void addingAStoredFingerprintAgainDoesNothing() {
+        HammingIndex index = new HammingIndex();
+        index.add(0x1234L);
+        index.add(0x1234L);
+        assertEquals(1, index.size());
+        assertEquals(1, index.search(0x1234L, 3).size());
+    }
+
+    @Test
+    void exactSearchOnlyFindsTheFingerprintItself() {
+        HammingIndex index = new HammingIndex();
+        index.add(0b1010L);
+        index.add(0b1011L);
+        assertEquals(1, index.search(0b1010L, 0).size());
+        assertTrue(index.search(0b1110_0000L, 0).isEmpty());
+    }
+}
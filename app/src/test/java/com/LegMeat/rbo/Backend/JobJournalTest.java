@@ -0,0 +1,186 @@
+package com.LegMeat.rbo.Backend;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JobJournalTest {
+    private static final String SETTINGS = "PNG 64x36 KEYFRAMES, distance 0";
+
+    private static Video video(Path folder, String name, int size) throws IOException {
+        File file = folder.resolve(name).toFile();
+        Files.write(file.toPath(), new byte[size]);
+        return new Video(name, file.getPath(), 60.0, List.of());
+    }
+
+    private static FingerprintCache.Entry entry(File file) {
+        return new FingerprintCache.Entry(file.getAbsolutePath(), file.length(), file.lastModified(), 60.0,
+                new long[] {1, 2}, new double[] {0, 2}, new long[] {0xABCDL, 0x1234L});
+    }
+
+    private static JobJournal loaded(File journalFile) {
+        JobJournal journal = new JobJournal(journalFile, SETTINGS);
+        journal.load();
+        return journal;
+    }
+
+    @Test
+    void recordsSurviveARestart() throws IOException {
+        Path folder = Files.createTempDirectory("job-journal");
+        Video lead = video(folder, "one.mkv", 10);
+        Video secondary = video(folder, "two.mkv", 20);
+        File journalFile = folder.resolve("journal").toFile();
+        JobJournal journal = new JobJournal(journalFile, SETTINGS);
+        journal.recordAnalysis(entry(lead));
+        journal.recordAnalysis(entry(secondary));
+        Overlap overlap = new Overlap(lead, secondary, 50.0, 4.0);
+        lead.setSecondaryVideo(secondary);
+        secondary.setCutPoint(overlap.getCutPoint());
+        HashMap<Video, Overlap> leadOverlaps = new HashMap<>();
+        leadOverlaps.put(lead, overlap);
+        journal.recordPlan(List.of(lead, secondary), leadOverlaps);
+        journal.close();
+
+        JobJournal resumed = loaded(journalFile);
+        assertEquals(2, resumed.getAnalysisCount());
+        assertEquals(0x1234L, resumed.lookup(secondary).getFingerprint(1));
+        assertTrue(resumed.hasPlanFor(List.of(lead, secondary)));
+        assertFalse(resumed.hasPlanFor(List.of(lead)));
+        JobJournal.PlannedCut cut = resumed.getPlannedCut(secondary);
+        assertEquals(lead.getAbsolutePath(), cut.getLeadPath());
+        assertEquals(50.0, cut.getLeadTimestamp());
+        assertEquals(4.0, cut.getSecondaryTimestamp());
+        assertNull(resumed.getPlannedCut(lead).getLeadPath());
+    }
+
+    @Test
+    void videoOverwrittenByItsCutIsStillFound() throws IOException {
+        Path folder = Files.createTempDirectory("job-journal");
+        Video video = video(folder, "one.mkv", 10);
+        File journalFile = folder.resolve("journal").toFile();
+        JobJournal journal = new JobJournal(journalFile, SETTINGS);
+        journal.recordAnalysis(entry(video));
+        Files.write(video.toPath(), new byte[5]);
+        journal.recordCut(new CutReport(video, CutResult.SUCCESS, ""));
+        journal.close();
+
+        JobJournal resumed = loaded(journalFile);
+        assertTrue(resumed.isCut(video));
+        FingerprintCache.Entry entry = resumed.lookup(video);
+        assertNotNull(entry);
+        assertEquals(5, entry.getSize());
+        assertEquals(2, entry.getKeyFrameCount());
+    }
+
+    @Test
+    void videoReplacedBeforeItsCutWasRecordedIsStillCut() throws IOException {
+        Path folder = Files.createTempDirectory("job-journal");
+        Video lead = video(folder, "one.mkv", 10);
+        Video secondary = video(folder, "two.mkv", 20);
+        File journalFile = folder.resolve("journal").toFile();
+        JobJournal journal = new JobJournal(journalFile, SETTINGS);
+        journal.recordAnalysis(entry(lead));
+        journal.recordAnalysis(entry(secondary));
+        journal.recordCutIntent(secondary);
+        // the cut is moved over the original (keeping its last modified time), then the job stops before recordCut
+        FileTime lastModified = Files.getLastModifiedTime(secondary.toPath());
+        Files.write(secondary.toPath(), new byte[5]);
+        Files.setLastModifiedTime(secondary.toPath(), lastModified);
+        journal.close();
+
+        JobJournal resumed = loaded(journalFile);
+        assertTrue(resumed.isCut(secondary));
+        assertFalse(resumed.isCut(lead));
+        FingerprintCache.Entry entry = resumed.lookup(secondary);
+        assertNotNull(entry);
+        assertEquals(5, entry.getSize());
+        assertEquals(2, entry.getKeyFrameCount());
+    }
+
+    @Test
+    void videoNotYetReplacedByItsCutIsCutAgain() throws IOException {
+        Path folder = Files.createTempDirectory("job-journal");
+        Video video = video(folder, "one.mkv", 10);
+        File journalFile = folder.resolve("journal").toFile();
+        JobJournal journal = new JobJournal(journalFile, SETTINGS);
+        journal.recordAnalysis(entry(video));
+        journal.recordCutIntent(video);
+        journal.close();
+
+        JobJournal resumed = loaded(journalFile);
+        assertFalse(resumed.isCut(video));
+        assertEquals(10, resumed.lookup(video).getSize());
+    }
+
+    @Test
+    void tornRecordIsDroppedAndAppendedOver() throws IOException {
+        Path folder = Files.createTempDirectory("job-journal");
+        Video one = video(folder, "one.mkv", 10);
+        Video two = video(folder, "two.mkv", 20);
+        Video three = video(folder, "three.mkv", 30);
+        File journalFile = folder.resolve("journal").toFile();
+        JobJournal journal = new JobJournal(journalFile, SETTINGS);
+        journal.recordAnalysis(entry(one));
+        long firstRecordEnd = journalFile.length();
+        journal.recordAnalysis(entry(two));
+        journal.close();
+        // a crash part way through writing the second record
+        byte[] bytes = Files.readAllBytes(journalFile.toPath());
+        Files.write(journalFile.toPath(), Arrays.copyOf(bytes, bytes.length - 7));
+
+        JobJournal resumed = loaded(journalFile);
+        assertEquals(1, resumed.getAnalysisCount());
+        assertNotNull(resumed.lookup(one));
+        assertNull(resumed.lookup(two));
+        assertEquals(firstRecordEnd, journalFile.length());
+        resumed.recordAnalysis(entry(three));
+        resumed.close();
+
+        JobJournal again = loaded(journalFile);
+        assertEquals(2, again.getAnalysisCount());
+        assertNotNull(again.lookup(three));
+    }
+
+    @Test
+    void recordFailingItsChecksumIsDropped() throws IOException {
+        Path folder = Files.createTempDirectory("job-journal");
+        Video one = video(folder, "one.mkv", 10);
+        Video two = video(folder, "two.mkv", 20);
+        File journalFile = folder.resolve("journal").toFile();
+        JobJournal journal = new JobJournal(journalFile, SETTINGS);
+        journal.recordAnalysis(entry(one));
+        journal.recordAnalysis(entry(two));
+        journal.close();
+        byte[] bytes = Files.readAllBytes(journalFile.toPath());
+        bytes[bytes.length - 10] ^= 0x01; // inside the last payload
+        Files.write(journalFile.toPath(), bytes);
+
+        JobJournal resumed = loaded(journalFile);
+        assertEquals(1, resumed.getAnalysisCount());
+        assertNotNull(resumed.lookup(one));
+    }
+
+    @Test
+    void journalMadeWithOtherSettingsIsDiscarded() throws IOException {
+        Path folder = Files.createTempDirectory("job-journal");
+        Video one = video(folder, "one.mkv", 10);
+        File journalFile = folder.resolve("journal").toFile();
+        JobJournal journal = new JobJournal(journalFile, SETTINGS);
+        journal.recordAnalysis(entry(one));
+        journal.close();
+
+        JobJournal other = new JobJournal(journalFile, "RAW_GRAY 64x36 KEYFRAMES, distance 0");
+        other.load();
+        assertEquals(0, other.getAnalysisCount());
+        assertFalse(journalFile.exists());
+    }
+}
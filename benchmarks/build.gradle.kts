@@ -0,0 +1,35 @@
+/*
+ * JMH benchmarks of the matching and decoding hot paths of the app.
+ *
+ * Run all benchmarks with ./gradlew :benchmarks:jmh (results are written to benchmarks/build/results/jmh).
+ * A recorded ffmpeg image2pipe capture can be benchmarked with -Prbod.pipeCapture=<path to capture>.
+ */
+
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    jmh(project(":app"))
+}
+
+java {
+    toolchain {
+        languageVersion = JavaLanguageVersion.of(17)
+    }
+}
+
+jmh {
+    jmhVersion = libs.versions.jmh.get()
+    resultFormat = "JSON"
+    // SIMD frame distance kernels (see FrameDistance, which falls back to plain loops without the module)
+    jvmArgsAppend.addAll(listOf("--add-modules", "jdk.incubator.vector"))
+    findProperty("rbod.pipeCapture")?.let { capture ->
+        jvmArgsAppend.add("-Drbod.pipeCapture=$capture")
+    }
+}
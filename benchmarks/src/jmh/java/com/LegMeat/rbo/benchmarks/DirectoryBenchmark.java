@@ -0,0 +1,87 @@
+package com.LegMeat.rbo.benchmarks;
+
+import com.LegMeat.rbo.Backend.Directory;
+import com.LegMeat.rbo.Backend.ScanOptions;
+import com.LegMeat.rbo.Backend.Video;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding the cut points of a whole directory of N synthetic videos: through the Directory's fingerprint index,
+ * against comparing every video with every other video as Directory used to
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DirectoryBenchmark {
+    @Param({"10", "50", "200"})
+    public int videoCount;
+
+    @Param({"300"})
+    public int keyFramesPerVideo;
+
+    private ArrayList<Video> videos;
+    private ScanOptions options;
+    private PrintStream console;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Directory logs every video and cut point
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        videos = SyntheticFrames.session(videoCount, keyFramesPerVideo, keyFramesPerVideo / 10);
+        options = new ScanOptions();
+        options.setCacheEnabled(false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(console);
+    }
+
+    @Benchmark
+    public Directory indexedCutPoints() {
+        return new Directory("synthetic", videos, options);
+    }
+
+    @Benchmark
+    public int pairwiseCutPoints() {
+        int cutPoints = 0;
+        for (Video video : videos) {
+            double earliestOverlap = 9999999999.0;
+            Video secondaryVideo = null;
+            for (Video video2 : videos) {
+                if (video != video2) {
+                    Double overlap = video.findOverlap(video2);
+                    if (overlap != -1.0 && overlap < earliestOverlap) {
+                        earliestOverlap = overlap;
+                        secondaryVideo = video2;
+                    }
+                }
+            }
+            if (secondaryVideo != null && video.findCutPoint(secondaryVideo) != -1.0) {
+                cutPoints++;
+            }
+        }
+        return cutPoints;
+    }
+}
@@ -0,0 +1,76 @@
+package com.LegMeat.rbo.benchmarks;
+
+import com.LegMeat.rbo.Backend.FrameDistance;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.DataBufferByte;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the frame distances (see FrameDistance) with SIMD instructions against the plain loop, over the whole of
+ * two different frames (no early exit)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameDistanceBenchmark {
+    @Param({"64x36", "320x180", "1280x720"})
+    public String resolution;
+
+    private ByteBuffer one;
+    private ByteBuffer two;
+    private int length;
+
+    @Setup
+    public void setUp() {
+        if (!FrameDistance.isVectorized()) {
+            throw new IllegalStateException("Vector API unavailable, run with --add-modules jdk.incubator.vector.");
+        }
+        String[] size = resolution.split("x");
+        int width = Integer.parseInt(size[0]);
+        int height = Integer.parseInt(size[1]);
+        one = pixels(width, height, 1);
+        two = pixels(width, height, 2);
+        length = one.capacity();
+    }
+
+    private static ByteBuffer pixels(int width, int height, long seed) {
+        DataBufferByte buffer = (DataBufferByte) SyntheticFrames.frame(width, height, seed).getRaster()
+                .getDataBuffer();
+        return ByteBuffer.wrap(buffer.getData());
+    }
+
+    @Benchmark
+    public long vectorSad() {
+        return FrameDistance.sad(one, 0, two, 0, length, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public long scalarSad() {
+        return FrameDistance.scalarSad(one, 0, two, 0, length, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public long vectorSsd() {
+        return FrameDistance.ssd(one, 0, two, 0, length, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public long scalarSsd() {
+        return FrameDistance.scalarSsd(one, 0, two, 0, length, Long.MAX_VALUE);
+    }
+}
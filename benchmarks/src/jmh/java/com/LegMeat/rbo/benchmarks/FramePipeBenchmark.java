@@ -0,0 +1,96 @@
+package com.LegMeat.rbo.benchmarks;
+
+import com.LegMeat.rbo.Backend.ExtractionMode;
+import com.LegMeat.rbo.Backend.PngFrameReader;
+import com.LegMeat.rbo.Backend.RawFrameReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading keyframes out of an ffmpeg pipe: PNG magic byte scanning plus ImageIO decoding (the image2pipe path),
+ * against reading fixed size raw frames.
+ *
+ * Runs on a recorded image2pipe capture if one is given with -Drbod.pipeCapture=path (e.g. the stdout of the
+ * ffmpeg command in Video.addAllKeyFrames saved to a file), otherwise on synthetic PNG frames with junk bytes between
+ * them, as a polluted pipe would have.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FramePipeBenchmark {
+    @Param({"1280x720"})
+    public String resolution;
+
+    @Param({"20"})
+    public int frameCount;
+
+    private byte[] pngCapture;
+    private byte[] rawCapture;
+    private int width;
+    private int height;
+
+    @Setup
+    public void setUp() throws IOException {
+        String[] size = resolution.split("x");
+        width = Integer.parseInt(size[0]);
+        height = Integer.parseInt(size[1]);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        for (int i = 0; i < frameCount; i++) {
+            BufferedImage frame = SyntheticFrames.frame(width, height, i);
+            ImageIO.write(frame, "png", png);
+            // non-image bytes between frames, which the reader has to skip over
+            png.write(new byte[] {0x00, 0x50, 0x4E, 0x47, (byte) 0x89, 0x50, 0x0A});
+            raw.write(((DataBufferByte) frame.getRaster().getDataBuffer()).getData());
+        }
+        rawCapture = raw.toByteArray();
+        String capturePath = System.getProperty("rbod.pipeCapture");
+        pngCapture = capturePath == null ? png.toByteArray() : Files.readAllBytes(Paths.get(capturePath));
+    }
+
+    @Benchmark
+    public int pngScanAndDecode(Blackhole blackhole) throws IOException {
+        PngFrameReader reader = new PngFrameReader(new ByteArrayInputStream(pngCapture));
+        int frames = 0;
+        while (reader.readFrame()) {
+            blackhole.consume(reader.getImage());
+            frames++;
+        }
+        return frames;
+    }
+
+    @Benchmark
+    public int rawFrames(Blackhole blackhole) throws IOException {
+        RawFrameReader reader = new RawFrameReader(new ByteArrayInputStream(rawCapture), width, height,
+                ExtractionMode.RAW_RGB, false);
+        int frames = 0;
+        while (reader.readFrame()) {
+            blackhole.consume(reader.toImage());
+            frames++;
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,63 @@
+package com.LegMeat.rbo.benchmarks;
+
+import com.LegMeat.rbo.Backend.Fingerprint;
+import com.LegMeat.rbo.Backend.KeyFrame;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of comparing two keyframes: by fingerprint (KeyFrame.equals), by every pixel (the optional confirmation),
+ * and of making a fingerprint in the first place
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyFrameEqualsBenchmark {
+    @Param({"640x360", "1280x720", "1920x1080"})
+    public String resolution;
+
+    private BufferedImage image;
+    private KeyFrame frame;
+    private KeyFrame identicalFrame;
+
+    @Setup
+    public void setUp() {
+        String[] size = resolution.split("x");
+        image = SyntheticFrames.frame(Integer.parseInt(size[0]), Integer.parseInt(size[1]), 1);
+        frame = new KeyFrame(0.0, image, 1);
+        // a separate copy, so the pixel comparison can't shortcut on the same image
+        identicalFrame = new KeyFrame(0.0, SyntheticFrames.copy(image), 2);
+        frame.getFingerprint();
+        identicalFrame.getFingerprint();
+    }
+
+    @Benchmark
+    public boolean fingerprintEquals() {
+        return frame.equals(identicalFrame);
+    }
+
+    @Benchmark
+    public boolean pixelEquals() {
+        return frame.pixelEquals(identicalFrame);
+    }
+
+    @Benchmark
+    public long fingerprint() {
+        return Fingerprint.dHash(image);
+    }
+}
@@ -0,0 +1,85 @@
+package com.LegMeat.rbo.benchmarks;
+
+import com.LegMeat.rbo.Backend.FingerprintIndex;
+import com.LegMeat.rbo.Backend.Overlap;
+import com.LegMeat.rbo.Backend.Video;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching a lead video against its secondary video: the nested keyframe loops of Video.findOverlap and
+ * Video.findCutPoint, against probing a FingerprintIndex
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OverlapBenchmark {
+    @Param({"100", "1000", "5000"})
+    public int keyFramesPerVideo;
+
+    private Video lead;
+    private Video secondary;
+    private FingerprintIndex index;
+    private PrintStream console;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // findCutPoint logs every cut point it finds
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        ArrayList<Video> videos = SyntheticFrames.session(2, keyFramesPerVideo, keyFramesPerVideo / 10);
+        lead = videos.get(0);
+        secondary = videos.get(1);
+        index = new FingerprintIndex();
+        index.insert(lead);
+        index.insert(secondary);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(console);
+    }
+
+    @Benchmark
+    public Double findOverlap() {
+        return lead.findOverlap(secondary);
+    }
+
+    @Benchmark
+    public Double findCutPoint() {
+        return lead.findCutPoint(secondary);
+    }
+
+    @Benchmark
+    public Overlap indexFindEarliestOverlap() {
+        return index.findEarliestOverlap(lead);
+    }
+
+    @Benchmark
+    public FingerprintIndex indexInsertAndFind() {
+        FingerprintIndex freshIndex = new FingerprintIndex();
+        freshIndex.insert(lead);
+        freshIndex.insert(secondary);
+        freshIndex.findEarliestOverlap(lead);
+        return freshIndex;
+    }
+}
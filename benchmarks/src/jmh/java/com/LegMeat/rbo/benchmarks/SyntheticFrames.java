@@ -0,0 +1,78 @@
+package com.LegMeat.rbo.benchmarks;
+
+import com.LegMeat.rbo.Backend.KeyFrame;
+import com.LegMeat.rbo.Backend.Video;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Generates the synthetic keyframes and videos the benchmarks run on, so no real recordings (or ffmpeg) are needed
+ */
+final class SyntheticFrames {
+    static final double KEYFRAME_INTERVAL = 2.0; // seconds between keyframes, as OBS records by default
+
+    private SyntheticFrames() {
+    }
+
+    /**
+     * A frame of random coloured blocks. The same seed always gives the same frame.
+     */
+    static BufferedImage frame(int width, int height, long seed) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        Random random = new Random(seed);
+        int blockSize = Math.max(1, width / 16);
+        byte[][] blockColours = new byte[(width / blockSize + 1) * (height / blockSize + 1)][3];
+        for (byte[] colour : blockColours) {
+            random.nextBytes(colour);
+        }
+        int blocksPerRow = width / blockSize + 1;
+        int offset = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                byte[] colour = blockColours[(y / blockSize) * blocksPerRow + x / blockSize];
+                pixels[offset++] = colour[0];
+                pixels[offset++] = colour[1];
+                pixels[offset++] = colour[2];
+            }
+        }
+        return image;
+    }
+
+    static BufferedImage copy(BufferedImage image) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+        copy.setData(image.getData());
+        return copy;
+    }
+
+    /**
+     * Fingerprint of a moment of a recording session (frames of the same moment in different videos are identical)
+     */
+    static long sceneFingerprint(long scene) {
+        long hash = scene * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 31;
+        hash *= 0xBF58476D1CE4E5B9L;
+        return hash ^ (hash >>> 29);
+    }
+
+    /**
+     * A session recorded as consecutive clips, each clip's last overlapFrames keyframes being the first keyframes of
+     * the next clip (the overlaps the program removes)
+     */
+    static ArrayList<Video> session(int videoCount, int keyFramesPerVideo, int overlapFrames) {
+        ArrayList<Video> videos = new ArrayList<>();
+        for (int v = 0; v < videoCount; v++) {
+            long firstScene = (long) v * (keyFramesPerVideo - overlapFrames);
+            ArrayList<KeyFrame> keyFrames = new ArrayList<>();
+            for (int k = 0; k < keyFramesPerVideo; k++) {
+                keyFrames.add(new KeyFrame(k * KEYFRAME_INTERVAL, sceneFingerprint(firstScene + k), k + 1));
+            }
+            String name = "clip" + v + ".mkv";
+            videos.add(new Video(name, name, keyFramesPerVideo * KEYFRAME_INTERVAL, keyFrames));
+        }
+        return videos;
+    }
+}
@@ -12,3 +12,4 @@ plugins {
 
 rootProject.name = "RBOD"
 include("app")
+include("benchmarks")